@@ -0,0 +1,61 @@
+#!/bin/bash
+
+# Netflix++ Chunk Size Benchmark
+# Regenera os chunks de um filme com vários tamanhos de chunk e mede o tempo de um
+# download "swarm" completo: todos os chunks pedidos em paralelo, repartidos pelos
+# servidores mesh indicados (um por peer).
+#
+# Uso: ./bench-chunk-size.sh <movieId> <adminToken> ["1 4 10 32" (MB)] [paralelo] [api_url] [mesh_urls]
+#   mesh_urls: lista separada por vírgulas (ex: http://peer1:9001,http://peer2:9001)
+
+MOVIE_ID="${1:?movieId em falta (id numérico do filme)}"
+TOKEN="${2:?token de admin em falta}"
+SIZES_MB="${3:-1 4 10 32}"
+PARALLEL="${4:-8}"
+API_URL="${5:-http://localhost:8080}"
+MESH_URLS="${6:-http://localhost:9001}"
+MESH_ID="movie_$MOVIE_ID"
+
+echo "📦 Netflix++ Chunk Size Benchmark"
+echo "================================="
+echo "Movie: $MOVIE_ID ($MESH_ID)"
+echo "Chunk sizes (MB): $SIZES_MB"
+echo "Parallel downloads: $PARALLEL"
+echo "Mesh servers: $MESH_URLS"
+echo ""
+
+IFS=',' read -r -a PEERS <<< "$MESH_URLS"
+
+printf "%-10s %8s %10s %10s %10s\n" "chunk" "chunks" "split(s)" "swarm(s)" "MB/s"
+
+for mb in $SIZES_MB; do
+    size=$((mb * 1024 * 1024))
+
+    start=$(date +%s.%N)
+    response=$(curl -s -X POST "$API_URL/api/admin/movies/$MOVIE_ID/chunks?chunkSize=$size" \
+        -H "Authorization: Bearer $TOKEN")
+    end=$(date +%s.%N)
+    split_time=$(awk -v s="$start" -v e="$end" 'BEGIN { printf "%.2f", e - s }')
+
+    count=$(echo "$response" | grep -o '"chunksGenerated":[0-9]*' | cut -d: -f2)
+    if [ -z "$count" ]; then
+        echo "❌ Split failed for ${mb}MB: $response"
+        exit 1
+    fi
+
+    # Chunk i é pedido ao peer i % nº de peers
+    start=$(date +%s.%N)
+    bytes=$(seq 0 $((count - 1)) | while read -r i; do
+                echo "${PEERS[$((i % ${#PEERS[@]}))]}/download?movieId=$MESH_ID&chunk=$i"
+            done | xargs -P "$PARALLEL" -I{} curl -s -o /dev/null -w "%{size_download}\n" "{}" \
+            | awk '{s+=$1} END {print s}')
+    end=$(date +%s.%N)
+
+    awk -v mb="$mb" -v c="$count" -v st="$split_time" -v b="$bytes" -v s="$start" -v e="$end" 'BEGIN {
+        t = e - s;
+        printf "%-10s %8d %10s %10.2f %10.1f\n", mb "MB", c, st, t, b / 1048576 / t
+    }'
+done
+
+echo ""
+echo "ℹ️  Para voltar ao tamanho adaptativo: POST $API_URL/api/admin/movies/$MOVIE_ID/chunks?force=true"
@@ -0,0 +1,69 @@
+#!/bin/bash
+
+# Netflix++ HLS Sign Benchmark
+# Mede assinaturas/s do endpoint /api/hls/sign (o mesmo pedido que o nginx faz em
+# auth_request por cada segmento). Duas passagens sobre os mesmos objetos:
+#   cold - cada objeto assinado pela primeira vez (assinatura V4; só é "cold" no primeiro
+#          run depois de arrancar o servidor ou de GCS_SIGNED_URL_CACHE_TTL_MS)
+#   warm - os mesmos objetos outra vez (cache de URLs assinados)
+# e a seguir o tempo de /api/hls/playlist (todos os segmentos assinados numa chamada).
+# Para comparar com a versão antiga, correr o script contra ela: ali as duas passagens
+# custam o mesmo (credenciais + cliente Storage criados em cada pedido).
+#
+# Uso: ./bench-hls-sign.sh <movieId> <token> [resolução] [segmentos] [paralelo] [api_url]
+
+MOVIE_ID="${1:?movieId em falta (id numérico do filme)}"
+TOKEN="${2:?token em falta (ID token do Firebase)}"
+RESOLUTION="${3:-1080p}"
+SEGMENTS="${4:-500}"
+PARALLEL="${5:-16}"
+API_URL="${6:-http://localhost:8080}"
+
+echo "🔏 Netflix++ HLS Sign Benchmark"
+echo "==============================="
+echo "Movie: $MOVIE_ID ($RESOLUTION), segments: $SEGMENTS, parallel: $PARALLEL"
+echo ""
+
+# Colors
+RED='\033[0;31m'
+GREEN='\033[0;32m'
+NC='\033[0m' # No Color
+
+status=$(curl -s -o /dev/null -w "%{http_code}" -H "Authorization: Bearer $TOKEN" \
+    "$API_URL/api/hls/sign?path=/hls/movies/$MOVIE_ID/$RESOLUTION/hls/index.m3u8")
+if [ "$status" != "200" ]; then
+    echo -e "${RED}❌ /api/hls/sign returned HTTP $status${NC}"
+    exit 1
+fi
+
+run_pass() {
+    local label=$1
+    local start end failed
+    start=$(date +%s.%N)
+    failed=$(seq 0 $((SEGMENTS - 1)) | while read -r i; do
+                 printf "%s/api/hls/sign?path=/hls/movies/%s/%s/hls/seg_%05d.ts\n" \
+                     "$API_URL" "$MOVIE_ID" "$RESOLUTION" "$i"
+             done | xargs -P "$PARALLEL" -I{} curl -s -o /dev/null -w "%{http_code}\n" \
+                 -H "Authorization: Bearer $TOKEN" "{}" \
+             | grep -vc '^200$')
+    end=$(date +%s.%N)
+    awk -v l="$label" -v n="$SEGMENTS" -v s="$start" -v e="$end" -v f="$failed" \
+        'BEGIN { t = e - s; printf "%-6s %8d %10.2f %12.1f %8d\n", l, n, t, n / t, f }'
+}
+
+printf "%-6s %8s %10s %12s %8s\n" "pass" "signs" "time(s)" "signs/s" "errors"
+run_pass "cold"
+run_pass "warm"
+
+# Modo batch: a playlist inteira assinada numa só chamada (1ª = assinar, 2ª = cache)
+echo ""
+printf "%-10s %8s %10s\n" "playlist" "HTTP" "time(s)"
+for label in first cached; do
+    read -r code t < <(curl -s -o /dev/null -w "%{http_code} %{time_total}\n" \
+        -H "Authorization: Bearer $TOKEN" \
+        "$API_URL/api/hls/playlist?movieId=$MOVIE_ID&resolution=$RESOLUTION")
+    printf "%-10s %8s %10s\n" "$label" "$code" "$t"
+done
+
+echo ""
+echo -e "${GREEN}✅ Done${NC} (cache stats: GET $API_URL/api/admin/metrics -> urlSigner)"
@@ -0,0 +1,45 @@
+#!/bin/bash
+
+# Netflix++ Mesh Download Benchmark
+# Mede o throughput de GET /download do mesh (chunk completo e pedidos Range).
+# Correr contra duas builds (antes/depois) com o mesmo chunk para comparar.
+#
+# Uso: ./bench-mesh-download.sh <movieId> [chunk] [pedidos] [paralelo] [base_url]
+
+MOVIE_ID="${1:?movieId em falta (ex: movie_1_1080p)}"
+CHUNK="${2:-0}"
+REQUESTS="${3:-50}"
+PARALLEL="${4:-4}"
+BASE_URL="${5:-http://localhost:9001}"
+URL="$BASE_URL/download?movieId=$MOVIE_ID&chunk=$CHUNK"
+
+echo "📦 Netflix++ Mesh Download Benchmark"
+echo "===================================="
+echo "URL: $URL"
+echo "Requests: $REQUESTS (parallel: $PARALLEL)"
+echo ""
+
+# Verificar que o chunk existe
+status=$(curl -s -o /dev/null -w "%{http_code}" "$URL")
+if [ "$status" != "200" ]; then
+    echo "❌ Chunk not available (HTTP $status)"
+    exit 1
+fi
+
+function run() {
+    local description=$1
+    shift
+    local start end bytes
+    start=$(date +%s.%N)
+    bytes=$(seq "$REQUESTS" | xargs -P "$PARALLEL" -I{} \
+        curl -s -o /dev/null -w "%{size_download}\n" "$@" "$URL" | awk '{s+=$1} END {print s}')
+    end=$(date +%s.%N)
+    awk -v d="$description" -v b="$bytes" -v s="$start" -v e="$end" -v n="$REQUESTS" 'BEGIN {
+        t = e - s;
+        printf "%-24s %8.2f MB in %6.2fs  %8.1f MB/s  %7.1f req/s\n", d, b / 1048576, t, b / 1048576 / t, n / t
+    }'
+}
+
+run "Full chunk"
+run "Range 1MB (head)" -H "Range: bytes=0-1048575"
+run "Range 64KB (tail)" -H "Range: bytes=-65536"
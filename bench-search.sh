@@ -0,0 +1,133 @@
+#!/bin/bash
+
+# Netflix++ Search Benchmark
+# Compara a latência da pesquisa antiga (SELECT ... LIKE '%q%' em title, description,
+# category e genre, ordenado por título) com /api/movies/search (índice invertido em
+# memória) com 10k e 100k filmes no catálogo.
+#
+# Os filmes sintéticos ("Bench ... b<n>") são inseridos diretamente na BD e removidos no
+# fim. Como não passam pela API, o servidor só os vê quando o snapshot do catálogo expira:
+# arrancar o servidor com CATALOG_CACHE_TTL_MS=1000 para o benchmark.
+#
+# Tempos médios por pesquisa, em ms:
+#   sql   - a query antiga corrida no cliente mysql (uma sessão por query, REPEAT vezes)
+#   index - GET /api/movies/search?q=...&limit=20 (inclui HTTP e serialização JSON)
+#
+# Uso: ./bench-search.sh ["10000 100000"] [repetições] [api_url]
+# Ligação à BD pelas mesmas variáveis do servidor: DB_HOST, DB_PORT, DB_NAME, DB_USER, DB_PASS
+
+SIZES="${1:-10000 100000}"
+REPEAT="${2:-20}"
+API_URL="${3:-http://localhost:8080}"
+MYSQL=(mysql -h "${DB_HOST:-localhost}" -P "${DB_PORT:-3306}" -u "${DB_USER:-admin}" \
+       -p"${DB_PASS:-admin}" -N -B "${DB_NAME:-netflixpp}")
+
+# Pesquisas como saem da caixa de pesquisa: prefixos, palavras inteiras, 2 termos, sem resultados
+QUERIES=("sha" "shadow" "shadow riv" "frontier" "thriller" "b4242" "zzzz")
+
+echo "🔎 Netflix++ Search Benchmark"
+echo "============================="
+echo "Catalog sizes: $SIZES, repetitions: $REPEAT"
+echo ""
+
+# Colors
+RED='\033[0;31m'
+GREEN='\033[0;32m'
+NC='\033[0m' # No Color
+
+if ! "${MYSQL[@]}" -e "SELECT 1" > /dev/null; then
+    echo -e "${RED}❌ Cannot connect to MariaDB${NC}"
+    exit 1
+fi
+
+cleanup() {
+    "${MYSQL[@]}" -e "DELETE FROM movies WHERE title LIKE 'Bench %'"
+}
+trap cleanup EXIT
+cleanup
+
+# Insere filmes sintéticos até haver $1 no total (numerados a partir de $2)
+seed() {
+    local total=$1 from=$2
+    "${MYSQL[@]}" -e "
+        SET SESSION max_recursive_iterations = $((total + 1));
+        INSERT INTO movies (title, description, category, genre, year, duration)
+        WITH RECURSIVE seq(n) AS (SELECT $from UNION ALL SELECT n + 1 FROM seq WHERE n < $total)
+        SELECT CONCAT('Bench ',
+                      ELT(1 + n % 12, 'Shadow', 'River', 'Night', 'Empire', 'Storm', 'Silent',
+                          'Iron', 'Golden', 'Lost', 'Crimson', 'Last', 'Frozen'), ' ',
+                      ELT(1 + (n DIV 12) % 12, 'Kingdom', 'Horizon', 'Protocol', 'Legacy', 'Harbor',
+                          'Echo', 'Frontier', 'Signal', 'Garden', 'Voyage', 'Machine', 'Promise'),
+                      ' b', n),
+               CONCAT('A story about the ',
+                      ELT(1 + (n DIV 144) % 8, 'river', 'empire', 'machine', 'garden', 'storm',
+                          'signal', 'harbor', 'voyage'),
+                      ' and the people who ', ELT(1 + n % 5, 'lost', 'found', 'built', 'burned', 'left'),
+                      ' it, told over ', 1 + n % 9, ' chapters.'),
+               ELT(1 + n % 6, 'Movie', 'Series', 'Documentary', 'Anime', 'Short', 'Special'),
+               ELT(1 + n % 8, 'Action', 'Drama', 'Comedy', 'Thriller', 'Horror', 'Romance',
+                   'Sci-Fi', 'Animation'),
+               1950 + n % 75, 80 + n % 60
+        FROM seq"
+}
+
+# Espera que o catálogo do servidor inclua o último filme inserido
+wait_for_catalog() {
+    local last=$1
+    for _ in $(seq 1 120); do
+        if curl -s "$API_URL/api/movies/search?q=b$last&limit=1" | grep -q '"id"'; then
+            return 0
+        fi
+        sleep 1
+    done
+    echo -e "${RED}❌ Server did not pick up the seeded movies (CATALOG_CACHE_TTL_MS?)${NC}"
+    exit 1
+}
+
+sql_ms() {
+    local term="%${1//\'/\'\'}%"
+    local start end
+    start=$(date +%s.%N)
+    for _ in $(seq 1 "$REPEAT"); do
+        echo "SELECT SQL_NO_CACHE * FROM movies WHERE title LIKE '$term' OR description LIKE '$term'" \
+             "OR category LIKE '$term' OR genre LIKE '$term' ORDER BY title;"
+    done | "${MYSQL[@]}" > /dev/null
+    end=$(date +%s.%N)
+    awk -v s="$start" -v e="$end" -v n="$REPEAT" 'BEGIN { printf "%.2f", (e - s) * 1000 / n }'
+}
+
+index_ms() {
+    local q="${1// /%20}"
+    for _ in $(seq 1 "$REPEAT"); do
+        curl -s -o /dev/null -w "%{time_total}\n" "$API_URL/api/movies/search?q=$q&limit=20"
+    done | awk -v n="$REPEAT" '{ s += $1 } END { printf "%.2f", s * 1000 / n }'
+}
+
+printf "%-8s %-12s %8s %10s %10s %9s\n" "movies" "query" "matches" "sql(ms)" "index(ms)" "speedup"
+
+seeded=0
+for size in $SIZES; do
+    existing=$("${MYSQL[@]}" -e "SELECT COUNT(*) FROM movies WHERE title NOT LIKE 'Bench %'")
+    target=$((size - existing))
+    if [ "$target" -gt "$seeded" ]; then
+        seed "$target" $((seeded + 1))
+        seeded=$target
+    fi
+    [ "$seeded" -gt 0 ] && wait_for_catalog "$seeded"
+
+    for q in "${QUERIES[@]}"; do
+        term="%${q//\'/\'\'}%"
+        matches=$("${MYSQL[@]}" -e "SELECT COUNT(*) FROM movies WHERE title LIKE '$term'
+                  OR description LIKE '$term' OR category LIKE '$term' OR genre LIKE '$term'")
+        # Aquecer o índice (a primeira pesquisa constrói-o a partir do snapshot)
+        curl -s -o /dev/null "$API_URL/api/movies/search?q=${q// /%20}&limit=20"
+        sql=$(sql_ms "$q")
+        idx=$(index_ms "$q")
+        awk -v m="$size" -v q="$q" -v c="$matches" -v s="$sql" -v i="$idx" 'BEGIN {
+            printf "%-8d %-12s %8d %10.2f %10.2f %8.1fx\n", m, "\"" q "\"", c, s, i, s / (i > 0 ? i : 0.01)
+        }'
+    done
+    echo ""
+done
+
+echo -e "${GREEN}✅ Done${NC} (index stats: GET $API_URL/api/admin/metrics -> searchIndex)"
@@ -40,6 +40,7 @@ dependencies {
     implementation("org.eclipse.jetty:jetty-server:$jettyVersion")
     implementation("org.eclipse.jetty:jetty-servlet:$jettyVersion")
     implementation("org.eclipse.jetty:jetty-webapp:$jettyVersion")
+    implementation("org.eclipse.jetty.http2:http2-server:$jettyVersion")
 
     // Jakarta APIs
     implementation("jakarta.servlet:jakarta.servlet-api:5.0.0")
@@ -87,4 +88,9 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
+    // Config cria os diretórios de storage ao carregar; nos testes ficam dentro de build/
+    environment("STORAGE_PATH", layout.buildDirectory.dir("test-storage").get().asFile.path)
+    // Retries de upload rápidos nos testes do UploadScheduler
+    systemProperty("UPLOAD_RETRY_BASE_MS", "10")
+    systemProperty("UPLOAD_RETRY_MAX_MS", "50")
 }
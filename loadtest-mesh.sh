@@ -0,0 +1,97 @@
+#!/bin/bash
+
+# Netflix++ Mesh HTTP Load Test
+# Mede requests/s e latência p99 dos endpoints do mesh com muitas ligações concorrentes
+# (keep-alive HTTP/1.1 com `hey`, e HTTP/2 em claro (h2c) com `h2load`, se instalados).
+#
+#   hey:    go install github.com/rakyll/hey@latest
+#   h2load: apt install nghttp2-client
+#
+# Uso: ./loadtest-mesh.sh <movieId> [ligações] [pedidos] [base_url]
+# (subir `ulimit -n` para milhares de ligações)
+
+MOVIE_ID="${1:?movieId em falta (ex: movie_1_1080p)}"
+CONCURRENCY="${2:-2000}"
+REQUESTS="${3:-100000}"
+BASE_URL="${4:-http://localhost:9001}"
+
+echo "🌐 Netflix++ Mesh HTTP Load Test"
+echo "================================"
+echo "Base URL: $BASE_URL"
+echo "Connections: $CONCURRENCY, requests per scenario: $REQUESTS"
+echo ""
+
+# Colors
+RED='\033[0;31m'
+GREEN='\033[0;32m'
+YELLOW='\033[1;33m'
+NC='\033[0m' # No Color
+
+status=$(curl -s -o /dev/null -w "%{http_code}" "$BASE_URL/health")
+if [ "$status" != "200" ]; then
+    echo -e "${RED}❌ Mesh server not reachable (HTTP $status)${NC}"
+    exit 1
+fi
+
+SCENARIOS=(
+    "health|$BASE_URL/health|"
+    "chunks|$BASE_URL/chunks/$MOVIE_ID|"
+    "download 64KB range|$BASE_URL/download?movieId=$MOVIE_ID&chunk=0|Range: bytes=0-65535"
+    "download 304|$BASE_URL/download?movieId=$MOVIE_ID&chunk=0|If-None-Match: *"
+)
+
+printf "%-8s %-22s %12s %10s %10s\n" "proto" "scenario" "req/s" "p99(ms)" "errors"
+
+function run_hey() {
+    local name=$1 url=$2 header=$3
+    local out
+    if [ -n "$header" ]; then
+        out=$(hey -n "$REQUESTS" -c "$CONCURRENCY" -H "$header" "$url")
+    else
+        out=$(hey -n "$REQUESTS" -c "$CONCURRENCY" "$url")
+    fi
+    local rps p99 errors
+    rps=$(echo "$out" | awk '/Requests\/sec/ {print $2}')
+    p99=$(echo "$out" | awk '/99% in/ {print $3 * 1000}')
+    errors=$(echo "$out" | awk '/\[[0-9]+\]/ && $1 !~ /\[2|\[3/ {s += $2} END {print s + 0}')
+    printf "%-8s %-22s %12s %10s %10s\n" "http/1.1" "$name" "$rps" "$p99" "$errors"
+}
+
+function run_h2load() {
+    local name=$1 url=$2 header=$3
+    local clients=$((CONCURRENCY / 10 > 0 ? CONCURRENCY / 10 : 1))
+    local out
+    if [ -n "$header" ]; then
+        out=$(h2load -n "$REQUESTS" -c "$clients" -m 10 -H "$header" "$url")
+    else
+        out=$(h2load -n "$REQUESTS" -c "$clients" -m 10 "$url")
+    fi
+    local rps p99 errors
+    rps=$(echo "$out" | awk '/^finished in/ {gsub(",", "", $4); print $4}')
+    # h2load não dá percentis: usar max de "time for request" como limite superior
+    p99=$(echo "$out" | awk '/time for request:/ {print $5}')
+    errors=$(echo "$out" | awk '/^requests:/ {print $10 + $12}')
+    printf "%-8s %-22s %12s %10s %10s\n" "h2c" "$name" "$rps" "max $p99" "$errors"
+}
+
+if command -v hey > /dev/null; then
+    for s in "${SCENARIOS[@]}"; do
+        IFS='|' read -r name url header <<< "$s"
+        run_hey "$name" "$url" "$header"
+    done
+else
+    echo -e "${YELLOW}[SKIP]${NC} hey not installed (HTTP/1.1 keep-alive scenarios)"
+fi
+
+if command -v h2load > /dev/null; then
+    # 10 streams multiplexados por ligação
+    for s in "${SCENARIOS[@]}"; do
+        IFS='|' read -r name url header <<< "$s"
+        run_h2load "$name" "$url" "$header"
+    done
+else
+    echo -e "${YELLOW}[SKIP]${NC} h2load not installed (h2c scenarios)"
+fi
+
+echo ""
+echo -e "${GREEN}✅ Done${NC}"
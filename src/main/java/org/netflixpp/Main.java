@@ -4,6 +4,7 @@ import org.netflixpp.config.Config;
 import org.netflixpp.config.DbConfig;
 import org.netflixpp.mesh.MeshServer;
 import org.netflixpp.mesh.P2PServer;
+import org.netflixpp.service.ViewAggregator;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
@@ -39,6 +40,8 @@ public class Main {
         System.out.println("Starting HTTP server...");
         startHttpServer();
 
+        Runtime.getRuntime().addShutdownHook(new Thread(Main::shutdown, "netflixpp-shutdown"));
+
         System.out.println("Netflix++ Backend started successfully!");
         System.out.println("   HTTP API: http://localhost:" + Config.HTTP_PORT);
         System.out.println("   Mesh HTTP: http://localhost:" + Config.P2P_PORT);
@@ -48,6 +51,13 @@ public class Main {
         Thread.currentThread().join();
     }
 
+    private static void shutdown() {
+        System.out.println("Shutting down Netflix++ Backend...");
+        // Escrever views pendentes antes de fechar o pool
+        ViewAggregator.shutdownIfStarted();
+        DbConfig.shutdownPool();
+    }
+
     private static void initializeDatabase() {
         try (var conn = DbConfig.getMariaDB();
              var stmt = conn.createStatement()) {
@@ -68,11 +78,12 @@ public class Main {
                     "description TEXT," +
                     "category VARCHAR(50)," +
                     "genre VARCHAR(50)," +
-                    "year INT," +
+                    "year INT NOT NULL DEFAULT 0," +
                     "duration INT," +
                     "file_path_1080 VARCHAR(500)," +
                     "file_path_360 VARCHAR(500)," +
-                    "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+                    "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                    "views BIGINT NOT NULL DEFAULT 0)");
 
             // Criar tabela de chunks
             stmt.execute("CREATE TABLE IF NOT EXISTS chunks (" +
@@ -91,6 +102,8 @@ public class Main {
                     "views INT DEFAULT 0," +
                     "FOREIGN KEY (movie_id) REFERENCES movies(id) ON DELETE CASCADE)");
 
+            migrateMoviesForPaging(conn, stmt);
+
             // Inserir admin padrão (se não existir)
             stmt.execute("INSERT IGNORE INTO users (username, password, role, email) " +
                     "VALUES ('admin', 'admin123', 'admin', 'admin@netflixpp.com')");
@@ -108,6 +121,41 @@ public class Main {
         }
     }
 
+    /**
+     * Colunas e índices da paginação por cursor (MovieService.getMoviesPage): cada ordenação
+     * é servida por um índice (coluna, id), sem filesort nem agregação por pedido.
+     * year passa a NOT NULL DEFAULT 0 (0 = sem ano, como já era mostrado) para o seek não
+     * precisar de COALESCE; views é o total de reproduções por filme, mantido pelo
+     * ViewAggregator a cada flush e preenchido aqui a partir de watch_history.
+     */
+    private static void migrateMoviesForPaging(java.sql.Connection conn, java.sql.Statement stmt)
+            throws java.sql.SQLException {
+        java.sql.DatabaseMetaData meta = conn.getMetaData();
+
+        try (java.sql.ResultSet rs = meta.getColumns(conn.getCatalog(), null, "movies", "year")) {
+            if (rs.next() && "YES".equals(rs.getString("IS_NULLABLE"))) {
+                stmt.executeUpdate("UPDATE movies SET year = 0 WHERE year IS NULL");
+                stmt.execute("ALTER TABLE movies MODIFY year INT NOT NULL DEFAULT 0");
+                System.out.println("Migrated movies.year to NOT NULL DEFAULT 0");
+            }
+        }
+
+        boolean hasViews;
+        try (java.sql.ResultSet rs = meta.getColumns(conn.getCatalog(), null, "movies", "views")) {
+            hasViews = rs.next();
+        }
+        if (!hasViews) {
+            stmt.execute("ALTER TABLE movies ADD COLUMN views BIGINT NOT NULL DEFAULT 0");
+            int movies = stmt.executeUpdate(ViewAggregator.RESYNC_MOVIE_VIEWS_SQL);
+            System.out.println("Added movies.views (backfilled " + movies + " movies from watch_history)");
+        }
+
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_movies_created ON movies (created_at, id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_movies_title ON movies (title, id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_movies_year ON movies (year, id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_movies_views ON movies (views, id)");
+    }
+
     private static void createStorageDirectories() {
         try {
             java.nio.file.Files.createDirectories(java.nio.file.Paths.get(Config.STORAGE_PATH));
@@ -19,9 +19,23 @@ public class Config {
     public static final String MOVIES_DIR = STORAGE_PATH + "/movies";
     public static final String CHUNKS_DIR = STORAGE_PATH + "/chunks";
     public static final String TEMP_DIR   = STORAGE_PATH + "/temp";
-
-    // Chunks P2P
-    public static final int CHUNK_SIZE = 10 * 1024 * 1024; // 10MB
+    public static final String CHUNK_STORE_DIR = STORAGE_PATH + "/chunkstore"; // chunks CDC por hash
+
+    // Chunks P2P: tamanho fixo (ou por omissão) e limites/alvos do tamanho adaptativo por filme
+    public static final int CHUNK_SIZE = Integer.parseInt(
+            getCfg("CHUNK_SIZE", String.valueOf(10 * 1024 * 1024))); // 10MB
+    public static final boolean CHUNK_SIZE_ADAPTIVE = Boolean.parseBoolean(
+            getCfg("CHUNK_SIZE_ADAPTIVE", "true"));
+    public static final int CHUNK_SIZE_MIN = Integer.parseInt(
+            getCfg("CHUNK_SIZE_MIN", String.valueOf(1024 * 1024))); // 1MB
+    public static final int CHUNK_SIZE_MAX = Integer.parseInt(
+            getCfg("CHUNK_SIZE_MAX", String.valueOf(64 * 1024 * 1024))); // 64MB
+    public static final int CHUNK_TARGET_SECONDS = Integer.parseInt(
+            getCfg("CHUNK_TARGET_SECONDS", "10"));
+    public static final int CHUNK_TARGET_COUNT = Integer.parseInt(
+            getCfg("CHUNK_TARGET_COUNT", "256"));
+    // "fixed" (offsets fixos) ou "cdc" (fronteiras pelo conteúdo + store deduplicado)
+    public static final String CHUNKING_MODE = getCfg("CHUNKING_MODE", "fixed");
 
     public static final String JWT_SECRET =
             System.getenv().getOrDefault("JWT_SECRET",
@@ -56,10 +70,38 @@ public class Config {
             getCfg("GCS_CREDENTIALS_PATH",
                     "C:\\Users\\User\\Downloads\\service-account.json");
 
+    // Emulador local (ex.: fake-gcs-server do docker-compose, "http://localhost:4443"); vazio = GCS real
+    public static final String GCS_EMULATOR_HOST =
+            getCfg("GCS_EMULATOR_HOST", getCfg("STORAGE_EMULATOR_HOST", ""));
+
+    // Uploads resumíveis: bytes por pedido (múltiplo de 256KB); as tentativas são UPLOAD_MAX_ATTEMPTS
+    public static final int GCS_UPLOAD_CHUNK_SIZE = Integer.parseInt(
+            getCfg("GCS_UPLOAD_CHUNK_SIZE", String.valueOf(4 * 1024 * 1024))); // 4MB
+
     // Template do caminho dos CHUNKS no bucket
     // Tokens suportados: {movieId}, {fileName}, {resolution}
     public static final String GCS_CHUNK_PATH_TEMPLATE =
             getCfg("GCS_CHUNK_PATH_TEMPLATE", "movies/{movieId}/{resolution}/{fileName}");
+    // Chunks CDC: um objeto por conteúdo, partilhado por todos os filmes
+    public static final String GCS_CHUNK_STORE_PATH_TEMPLATE =
+            getCfg("GCS_CHUNK_STORE_PATH_TEMPLATE", "chunks/{hash}.bin");
+
+    // URLs assinados (V4) para o HLS no bucket: validade e tempo máximo em cache (< validade)
+    public static final int GCS_SIGNED_URL_MINUTES = Integer.parseInt(
+            getCfg("GCS_SIGNED_URL_MINUTES", "15"));
+    public static final long GCS_SIGNED_URL_CACHE_TTL_MS = Long.parseLong(
+            getCfg("GCS_SIGNED_URL_CACHE_TTL_MS", "600000"));
+    public static final int GCS_SIGNED_URL_CACHE_MAX = Integer.parseInt(
+            getCfg("GCS_SIGNED_URL_CACHE_MAX", "50000"));
+
+    // Playlists HLS assinadas em lote: threads de assinatura, janela da cache e validade dos URIs
+    // (a validade tem de cobrir a reprodução do filme; máximo V4: 7 dias)
+    public static final int HLS_SIGN_THREADS = Integer.parseInt(
+            getCfg("HLS_SIGN_THREADS", "4"));
+    public static final long HLS_PLAYLIST_CACHE_TTL_MS = Long.parseLong(
+            getCfg("HLS_PLAYLIST_CACHE_TTL_MS", "300000"));
+    public static final int HLS_PLAYLIST_URL_MINUTES = Integer.parseInt(
+            getCfg("HLS_PLAYLIST_URL_MINUTES", "240"));
 
     // Firebase
     public static final boolean FIREBASE_ENABLED = Boolean.parseBoolean(
@@ -74,6 +116,86 @@ public class Config {
     public static final String STREAM_BASE_URL =
             getCfg("STREAM_BASE_URL", ""); // ex: "https://api.netflixpp.com" em prod
 
+    // Cache do catálogo: idade máxima do snapshot antes de um refresh em background (0 = nunca)
+    public static final long CATALOG_CACHE_TTL_MS = Long.parseLong(
+            getCfg("CATALOG_CACHE_TTL_MS", "300000"));
+
+    // Intervalo de recálculo da rotação de filmes em destaque
+    public static final long FEATURED_REFRESH_MS = Long.parseLong(
+            getCfg("FEATURED_REFRESH_MS", "600000"));
+
+    // Cache de ID tokens verificados
+    public static final int TOKEN_CACHE_MAX_ENTRIES = Integer.parseInt(
+            getCfg("TOKEN_CACHE_MAX_ENTRIES", "10000"));
+    public static final long TOKEN_CACHE_TTL_MS = Long.parseLong(
+            getCfg("TOKEN_CACHE_TTL_MS", "3600000"));
+    public static final long TOKEN_REVOCATION_CHECK_MS = Long.parseLong(
+            getCfg("TOKEN_REVOCATION_CHECK_MS", "300000"));
+    public static final long TOKEN_NEGATIVE_TTL_MS = Long.parseLong(
+            getCfg("TOKEN_NEGATIVE_TTL_MS", "30000"));
+
+    // Cache firebase_uid -> utilizador interno
+    public static final int USER_CACHE_MAX_ENTRIES = Integer.parseInt(
+            getCfg("USER_CACHE_MAX_ENTRIES", "10000"));
+    public static final long USER_CACHE_TTL_MS = Long.parseLong(
+            getCfg("USER_CACHE_TTL_MS", "300000"));
+
+    // Agregação de views: intervalo de flush, linhas por INSERT e limite de pares (filme, user) pendentes
+    public static final long VIEW_FLUSH_INTERVAL_MS = Long.parseLong(
+            getCfg("VIEW_FLUSH_INTERVAL_MS", "1000"));
+    public static final int VIEW_FLUSH_BATCH_SIZE = Integer.parseInt(
+            getCfg("VIEW_FLUSH_BATCH_SIZE", "500"));
+    public static final int VIEW_BUFFER_MAX_KEYS = Integer.parseInt(
+            getCfg("VIEW_BUFFER_MAX_KEYS", "100000"));
+
+    // Reconcile das estatísticas materializadas com a BD
+    public static final long STATS_RECONCILE_MS = Long.parseLong(
+            getCfg("STATS_RECONCILE_MS", "600000"));
+
+    // Cache de agregados (views/ratings) da página de detalhe
+    public static final int DETAIL_CACHE_MAX_ENTRIES = Integer.parseInt(
+            getCfg("DETAIL_CACHE_MAX_ENTRIES", "5000"));
+    public static final long DETAIL_CACHE_TTL_MS = Long.parseLong(
+            getCfg("DETAIL_CACHE_TTL_MS", "300000"));
+
+    // P2P TCP (Netty): threads para acesso a disco e timeout de ligações inativas
+    public static final int P2P_FILE_THREADS = Integer.parseInt(
+            getCfg("P2P_FILE_THREADS", "16"));
+    public static final int P2P_IDLE_TIMEOUT_SECONDS = Integer.parseInt(
+            getCfg("P2P_IDLE_TIMEOUT_SECONDS", "300"));
+
+    // Mesh HTTP (Jetty): threads, keep-alive, fila de accept e streams HTTP/2 por ligação
+    public static final int MESH_MAX_THREADS = Integer.parseInt(
+            getCfg("MESH_MAX_THREADS", "200"));
+    public static final int MESH_MIN_THREADS = Integer.parseInt(
+            getCfg("MESH_MIN_THREADS", "8"));
+    public static final long MESH_IDLE_TIMEOUT_MS = Long.parseLong(
+            getCfg("MESH_IDLE_TIMEOUT_MS", "30000"));
+    public static final int MESH_ACCEPT_QUEUE = Integer.parseInt(
+            getCfg("MESH_ACCEPT_QUEUE", "1024"));
+    public static final int MESH_H2_MAX_STREAMS = Integer.parseInt(
+            getCfg("MESH_H2_MAX_STREAMS", "128"));
+
+    // Split de chunks em pipeline: writers (hash + escrita) e memória dos buffers
+    // (os uploads vão para o UploadScheduler)
+    public static final int SPLIT_WRITER_THREADS = Integer.parseInt(
+            getCfg("SPLIT_WRITER_THREADS", String.valueOf(Math.max(2, Runtime.getRuntime().availableProcessors()))));
+    public static final int SPLIT_BUFFER_MEMORY_MB = Integer.parseInt(
+            getCfg("SPLIT_BUFFER_MEMORY_MB", "128"));
+
+    // Fila de uploads para o GCS (split, HLS, backfill): threads, uploads em paralelo por bucket
+    // e novas tentativas com backoff exponencial + jitter
+    public static final int UPLOAD_THREADS = Integer.parseInt(
+            getCfg("UPLOAD_THREADS", "16"));
+    public static final int UPLOAD_BUCKET_CONCURRENCY = Integer.parseInt(
+            getCfg("UPLOAD_BUCKET_CONCURRENCY", "8"));
+    public static final int UPLOAD_MAX_ATTEMPTS = Integer.parseInt(
+            getCfg("UPLOAD_MAX_ATTEMPTS", "3"));
+    public static final long UPLOAD_RETRY_BASE_MS = Long.parseLong(
+            getCfg("UPLOAD_RETRY_BASE_MS", "500"));
+    public static final long UPLOAD_RETRY_MAX_MS = Long.parseLong(
+            getCfg("UPLOAD_RETRY_MAX_MS", "30000"));
+
     static {
         // Criar diretórios necessários
         new File(MOVIES_DIR).mkdirs();
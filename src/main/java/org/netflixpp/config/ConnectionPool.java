@@ -0,0 +1,460 @@
+package org.netflixpp.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool de conexões JDBC limitado (min/max), usado por {@link DbConfig#getMariaDB()}.
+ * As conexões devolvidas são proxies, um por empréstimo: {@code close()} devolve a conexão
+ * física ao pool e invalida só esse proxy.
+ */
+public class ConnectionPool {
+
+    // Limites do histograma de latência de borrow (em microssegundos)
+    private static final long[] LATENCY_BUCKETS_MICROS = {
+            100, 500, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 1_000_000
+    };
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMs;
+    private final long borrowTimeoutMs;
+    private final long leakThresholdMs;
+    private final long validationIntervalMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>(); // LIFO: a mais recente à frente
+    private final Set<PooledConnection> active = ConcurrentHashMap.newKeySet();
+    private int total;    // conexões físicas abertas (ou a abrir)
+    private int waiters;  // threads à espera de conexão
+    private boolean closed;
+
+    private final ScheduledExecutorService housekeeper;
+
+    // Métricas
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder leaksDetected = new LongAdder();
+    private final LongAdder borrowNanosTotal = new LongAdder();
+    private final LongAdder[] latencyHistogram = new LongAdder[LATENCY_BUCKETS_MICROS.length + 1];
+
+    public ConnectionPool(String url, String user, String password,
+                          int minSize, int maxSize,
+                          long idleTimeoutMs, long borrowTimeoutMs,
+                          long leakThresholdMs, long validationIntervalMs) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be >= 1");
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.minSize = Math.max(0, Math.min(minSize, maxSize));
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.leakThresholdMs = leakThresholdMs;
+        this.validationIntervalMs = validationIntervalMs;
+
+        for (int i = 0; i < latencyHistogram.length; i++) {
+            latencyHistogram[i] = new LongAdder();
+        }
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(30_000, idleTimeoutMs / 2));
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Obtém uma conexão do pool, criando uma nova se houver espaço, ou esperando
+     * até {@code borrowTimeoutMs} por uma conexão livre.
+     */
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMs);
+
+        while (true) {
+            PooledConnection pc = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) throw new SQLException("Connection pool is closed");
+
+                    pc = idle.pollFirst();
+                    if (pc != null) break;
+
+                    if (total < maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeouts.increment();
+                        throw new SQLTransientConnectionException(
+                                "Timed out after " + borrowTimeoutMs + "ms waiting for a connection " +
+                                        "(active=" + active.size() + ", max=" + maxSize + ")");
+                    }
+
+                    waiters++;
+                    try {
+                        available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection", e);
+                    } finally {
+                        waiters--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                pc = openConnection();
+            } else if (!validate(pc)) {
+                validationFailures.increment();
+                destroy(pc);
+                continue;
+            }
+
+            Connection handle = pc.onBorrow(leakThresholdMs > 0);
+            active.add(pc);
+            recordBorrow(System.nanoTime() - start);
+            return handle;
+        }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        try {
+            Connection raw = DriverManager.getConnection(url, user, password);
+            created.increment();
+            return new PooledConnection(raw);
+        } catch (SQLException | RuntimeException e) {
+            lock.lock();
+            try {
+                total--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private boolean validate(PooledConnection pc) {
+        try {
+            if (pc.raw.isClosed()) return false;
+            // Só faz round-trip ao servidor se a conexão esteve parada tempo suficiente
+            if (System.currentTimeMillis() - pc.lastReturnedAt < validationIntervalMs) return true;
+            return pc.raw.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        if (!active.remove(pc)) return; // close() duplicado
+
+        boolean reusable = !pc.broken;
+        if (reusable) {
+            try {
+                if (!pc.raw.getAutoCommit()) {
+                    pc.raw.rollback();
+                    pc.raw.setAutoCommit(true);
+                }
+                pc.raw.clearWarnings();
+            } catch (SQLException e) {
+                reusable = false;
+            }
+        }
+
+        if (!reusable) {
+            destroy(pc);
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                total--;
+            } else {
+                pc.lastReturnedAt = System.currentTimeMillis();
+                idle.addFirst(pc);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(pc);
+    }
+
+    private void destroy(PooledConnection pc) {
+        closeQuietly(pc);
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeQuietly(PooledConnection pc) {
+        destroyed.increment();
+        try {
+            pc.raw.close();
+        } catch (SQLException ignored) {
+            // já fechada ou quebrada
+        }
+    }
+
+    private void housekeep() {
+        try {
+            evictIdle();
+            detectLeaks();
+            fillToMinimum();
+        } catch (Exception e) {
+            System.err.println("[DB-POOL] Housekeeping failed: " + e.getMessage());
+        }
+    }
+
+    private void evictIdle() {
+        List<PooledConnection> evicted = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            // As mais antigas estão no fim do deque
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && total - evicted.size() > minSize) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastReturnedAt < idleTimeoutMs) break;
+                it.remove();
+                evicted.add(pc);
+            }
+            total -= evicted.size();
+        } finally {
+            lock.unlock();
+        }
+
+        evicted.forEach(this::closeQuietly);
+    }
+
+    private void detectLeaks() {
+        if (leakThresholdMs <= 0) return;
+        long now = System.currentTimeMillis();
+        for (PooledConnection pc : active) {
+            if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMs) {
+                pc.leakReported = true;
+                leaksDetected.increment();
+                System.err.println("[DB-POOL][WARN] Possible connection leak: borrowed " +
+                        (now - pc.borrowedAt) + "ms ago by thread '" + pc.borrowerThread + "'");
+                if (pc.borrowSite != null) {
+                    pc.borrowSite.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void fillToMinimum() {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || total >= minSize) return;
+                total++;
+            } finally {
+                lock.unlock();
+            }
+
+            PooledConnection pc;
+            try {
+                pc = openConnection();
+            } catch (SQLException e) {
+                System.err.println("[DB-POOL][WARN] Could not open idle connection: " + e.getMessage());
+                return;
+            }
+
+            lock.lock();
+            try {
+                pc.lastReturnedAt = System.currentTimeMillis();
+                idle.addLast(pc);
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void recordBorrow(long nanos) {
+        borrows.increment();
+        borrowNanosTotal.add(nanos);
+        long micros = nanos / 1_000;
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS_MICROS.length && micros > LATENCY_BUCKETS_MICROS[bucket]) {
+            bucket++;
+        }
+        latencyHistogram[bucket].increment();
+    }
+
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        toClose.forEach(this::closeQuietly);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("active", active.size());
+            stats.put("idle", idle.size());
+            stats.put("total", total);
+            stats.put("waiters", waiters);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("minSize", minSize);
+        stats.put("maxSize", maxSize);
+
+        long borrowCount = borrows.sum();
+        stats.put("borrows", borrowCount);
+        stats.put("timeouts", timeouts.sum());
+        stats.put("created", created.sum());
+        stats.put("destroyed", destroyed.sum());
+        stats.put("validationFailures", validationFailures.sum());
+        stats.put("leaksDetected", leaksDetected.sum());
+        stats.put("avgBorrowMicros", borrowCount == 0 ? 0 : borrowNanosTotal.sum() / borrowCount / 1_000);
+
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < LATENCY_BUCKETS_MICROS.length; i++) {
+            histogram.put("<=" + formatMicros(LATENCY_BUCKETS_MICROS[i]), latencyHistogram[i].sum());
+        }
+        histogram.put(">" + formatMicros(LATENCY_BUCKETS_MICROS[LATENCY_BUCKETS_MICROS.length - 1]),
+                latencyHistogram[LATENCY_BUCKETS_MICROS.length].sum());
+        stats.put("borrowLatency", histogram);
+
+        return stats;
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros >= 1_000_000) return (micros / 1_000_000) + "s";
+        if (micros >= 1_000) return (micros / 1_000) + "ms";
+        return micros + "us";
+    }
+
+    // Conexão física + estado de empréstimo
+    private final class PooledConnection {
+        private final Connection raw;
+        private volatile long borrowedAt;
+        private volatile long lastReturnedAt = System.currentTimeMillis();
+        private volatile String borrowerThread;
+        private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+        private volatile boolean broken;
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+        }
+
+        /**
+         * Regista o empréstimo e devolve um proxy novo para este borrower. Cada proxy tem o
+         * seu próprio estado "fechado": um proxy de um empréstimo anterior continua morto.
+         */
+        Connection onBorrow(boolean captureSite) {
+            borrowedAt = System.currentTimeMillis();
+            borrowerThread = Thread.currentThread().getName();
+            borrowSite = captureSite ? new Throwable("Connection borrowed here") : null;
+            leakReported = false;
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    // Proxy de um único empréstimo: close() devolve a conexão ao pool uma só vez
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed.get() || pc.raw.isClosed();
+                case "equals":
+                    return p == args[0];
+                case "hashCode":
+                    return System.identityHashCode(p);
+                case "toString":
+                    return "PooledConnection[" + pc.raw + "]";
+                default:
+                    break;
+            }
+
+            if (closed.get()) {
+                throw new SQLException("Connection is closed (returned to pool)");
+            }
+
+            try {
+                return method.invoke(pc.raw, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                // SQLState 08xxx = erro de conexão; não devolver ao pool
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    if (state != null && state.startsWith("08")) {
+                        pc.broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package org.netflixpp.config;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.util.Map;
 
 public class DbConfig {
 
@@ -20,6 +20,20 @@ public class DbConfig {
     private static final String MARIADB_URL =
             String.format("jdbc:mariadb://%s:%s/%s", DB_HOST, DB_PORT, DB_NAME);
 
+    // Pool de conexões
+    private static final int POOL_MIN_SIZE = Integer.parseInt(
+            System.getenv().getOrDefault("DB_POOL_MIN_SIZE", "2"));
+    private static final int POOL_MAX_SIZE = Integer.parseInt(
+            System.getenv().getOrDefault("DB_POOL_MAX_SIZE", "20"));
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.parseLong(
+            System.getenv().getOrDefault("DB_POOL_IDLE_TIMEOUT_MS", "600000"));
+    private static final long POOL_BORROW_TIMEOUT_MS = Long.parseLong(
+            System.getenv().getOrDefault("DB_POOL_BORROW_TIMEOUT_MS", "5000"));
+    private static final long POOL_LEAK_THRESHOLD_MS = Long.parseLong(
+            System.getenv().getOrDefault("DB_POOL_LEAK_THRESHOLD_MS", "60000")); // 0 = desativado
+    private static final long POOL_VALIDATION_INTERVAL_MS = Long.parseLong(
+            System.getenv().getOrDefault("DB_POOL_VALIDATION_INTERVAL_MS", "500"));
+
     // Cassandra Configuration (opcional)
     private static final String CASSANDRA_HOST =
             System.getenv().getOrDefault("CASSANDRA_HOST", "localhost");
@@ -35,14 +49,31 @@ public class DbConfig {
         }
     }
 
+    private static final ConnectionPool POOL = new ConnectionPool(
+            MARIADB_URL, DB_USER, DB_PASS,
+            POOL_MIN_SIZE, POOL_MAX_SIZE,
+            POOL_IDLE_TIMEOUT_MS, POOL_BORROW_TIMEOUT_MS,
+            POOL_LEAK_THRESHOLD_MS, POOL_VALIDATION_INTERVAL_MS);
+
+    /**
+     * Devolve uma conexão do pool. Fechar a conexão (try-with-resources) devolve-a ao pool.
+     */
     public static Connection getMariaDB() {
         try {
-            return DriverManager.getConnection(MARIADB_URL, DB_USER, DB_PASS);
+            return POOL.borrow();
         } catch (Exception e) {
             throw new RuntimeException("Failed to connect to MariaDB: " + e.getMessage(), e);
         }
     }
 
+    public static Map<String, Object> getPoolStats() {
+        return POOL.getStats();
+    }
+
+    public static void shutdownPool() {
+        POOL.close();
+    }
+
     public static String getCassandraHost() {
         return CASSANDRA_HOST + ":" + CASSANDRA_PORT;
     }
@@ -8,7 +8,10 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.*;
 import java.io.InputStream;
 import java.util.Map;
-import com.google.firebase.auth.FirebaseToken;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import org.netflixpp.filter.JWTFilter;
+import org.netflixpp.model.AuthPrincipal;
+import org.netflixpp.util.VerifiedToken;
 import org.netflixpp.util.FirebaseUtil;
 
 @Path("/admin")
@@ -19,13 +22,22 @@ public class AdminController {
     private final org.netflixpp.service.HlsService hlsService = new org.netflixpp.service.HlsService();
     private final AuthService authService = new AuthService();
 
+    @Context
+    private ContainerRequestContext requestContext;
+
     private boolean isAdmin(String authHeader) {
+        // Normalmente já resolvido pelo JWTFilter
+        AuthPrincipal principal = JWTFilter.getPrincipal(requestContext);
+        if (principal != null) {
+            return principal.isAdmin();
+        }
+
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             return false;
         }
         try {
             // 1) Validar token Firebase
-            FirebaseToken decoded = FirebaseUtil.verifyIdToken(authHeader);
+            VerifiedToken decoded = FirebaseUtil.verifyIdToken(authHeader);
             if (decoded == null) return false;
 
             String firebaseUid = decoded.getUid();
@@ -45,7 +57,132 @@ public class AdminController {
         }
     }
 
-    // TODO: resto dos endpoints /movies, /users, /stats, /logs, etc.
+    @GET
+    @Path("/metrics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRuntimeMetrics(@HeaderParam("Authorization") String auth) {
+        if (!isAdmin(auth)) {
+            return Response.status(403)
+                    .entity(Map.of("error", "Admin access required"))
+                    .build();
+        }
+        try {
+            return Response.ok(adminService.getRuntimeMetrics()).build();
+        } catch (Exception e) {
+            return Response.serverError()
+                    .entity(Map.of("error", e.getMessage()))
+                    .build();
+        }
+    }
+
+    @GET
+    @Path("/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSystemStatistics(@HeaderParam("Authorization") String auth) {
+        if (!isAdmin(auth)) {
+            return Response.status(403)
+                    .entity(Map.of("error", "Admin access required"))
+                    .build();
+        }
+        try {
+            return Response.ok(adminService.getSystemStatistics()).build();
+        } catch (Exception e) {
+            return Response.serverError()
+                    .entity(Map.of("error", e.getMessage()))
+                    .build();
+        }
+    }
+
+    @POST
+    @Path("/movies/{id}/chunks")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response generateMovieChunks(@HeaderParam("Authorization") String auth,
+                                        @PathParam("id") int movieId,
+                                        @QueryParam("force") @DefaultValue("false") boolean force,
+                                        @QueryParam("chunkSize") @DefaultValue("0") int chunkSize) {
+        if (!isAdmin(auth)) {
+            return Response.status(403)
+                    .entity(Map.of("error", "Admin access required"))
+                    .build();
+        }
+        try {
+            return Response.ok(adminService.generateMovieChunks(movieId, force, chunkSize)).build();
+        } catch (IllegalStateException e) {
+            return Response.status(409)
+                    .entity(Map.of("error", e.getMessage()))
+                    .build();
+        } catch (Exception e) {
+            return Response.serverError()
+                    .entity(Map.of("error", e.getMessage()))
+                    .build();
+        }
+    }
+
+    @GET
+    @Path("/chunks/progress")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getChunkSplitProgress(@HeaderParam("Authorization") String auth,
+                                          @QueryParam("movieId") String movieId) {
+        if (!isAdmin(auth)) {
+            return Response.status(403)
+                    .entity(Map.of("error", "Admin access required"))
+                    .build();
+        }
+        Object progress = adminService.getChunkSplitProgress(movieId);
+        if (progress == null) {
+            return Response.status(404)
+                    .entity(Map.of("error", "No split found for " + movieId))
+                    .build();
+        }
+        return Response.ok(progress).build();
+    }
+
+    @GET
+    @Path("/uploads")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getUploadProgress(@HeaderParam("Authorization") String auth) {
+        if (!isAdmin(auth)) {
+            return Response.status(403)
+                    .entity(Map.of("error", "Admin access required"))
+                    .build();
+        }
+        return Response.ok(adminService.getUploadProgress()).build();
+    }
+
+    @POST
+    @Path("/gcs/backfill")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response backfillGcs(@HeaderParam("Authorization") String auth,
+                                @QueryParam("movieId") String movieId,
+                                @QueryParam("resolution") String resolution,
+                                @QueryParam("dryRun") boolean dryRun) {
+        if (!isAdmin(auth)) {
+            return Response.status(403)
+                    .entity(Map.of("error", "Admin access required"))
+                    .build();
+        }
+        return Response.ok(gcsBackfillService.backfill(movieId, resolution, dryRun)).build();
+    }
+
+    @POST
+    @Path("/movies/{id}/hls/publish")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response publishHls(@HeaderParam("Authorization") String auth,
+                               @PathParam("id") int movieId,
+                               @QueryParam("dryRun") boolean dryRun) {
+        if (!isAdmin(auth)) {
+            return Response.status(403)
+                    .entity(Map.of("error", "Admin access required"))
+                    .build();
+        }
+        Map<String, Object> result = hlsService.publish(movieId, dryRun);
+        if ("error".equals(result.get("status"))) {
+            return Response.serverError().entity(result).build();
+        }
+        return Response.ok(result).build();
+    }
+
+    // TODO: resto dos endpoints /movies, /users, /logs, etc.
     // continuam exatamente como já tens, todos usando:
     // if (!isAdmin(auth)) { return 403 ... }
 }
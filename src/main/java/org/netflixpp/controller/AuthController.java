@@ -4,7 +4,7 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.*;
 import org.netflixpp.service.AuthService;
 import org.netflixpp.util.FirebaseUtil;
-import com.google.firebase.auth.FirebaseToken;
+import org.netflixpp.util.VerifiedToken;
 
 import java.util.Map;
 
@@ -30,7 +30,7 @@ public class AuthController {
                         .build();
             }
 
-            FirebaseToken decoded = FirebaseUtil.verifyIdToken(authHeader);
+            VerifiedToken decoded = FirebaseUtil.verifyIdToken(authHeader);
             if (decoded == null) {
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity(Map.of("error", "Invalid or expired Firebase ID token"))
@@ -73,7 +73,7 @@ public class AuthController {
                         .build();
             }
 
-            FirebaseToken decoded = FirebaseUtil.verifyIdToken(authHeader);
+            VerifiedToken decoded = FirebaseUtil.verifyIdToken(authHeader);
             if (decoded == null) {
                 return Response.status(Response.Status.UNAUTHORIZED)
                         .entity(Map.of("valid", false, "error", "Token is invalid or expired"))
@@ -1,10 +1,6 @@
 package org.netflixpp.controller;
 
-import com.google.auth.oauth2.GoogleCredentials;
-import com.google.cloud.storage.BlobInfo;
-import com.google.cloud.storage.Storage;
-import com.google.cloud.storage.StorageOptions;
-import com.google.cloud.storage.Storage.SignUrlOption;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
@@ -13,12 +9,11 @@ import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import org.netflixpp.config.Config;
+import org.netflixpp.service.HlsPlaylistSigner;
 import org.netflixpp.util.FirebaseUtil;
+import org.netflixpp.util.GcsUrlSigner;
 
-import java.io.FileInputStream;
-import java.net.URL;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 @Path("/hls")
 public class HlsController {
@@ -63,34 +58,19 @@ public class HlsController {
                         .build();
             }
 
-            // Build Storage client from configured credentials
-            Storage storage;
-            if (Config.GCS_CREDENTIALS_PATH != null && !Config.GCS_CREDENTIALS_PATH.isEmpty()) {
-                try (FileInputStream fis = new FileInputStream(Config.GCS_CREDENTIALS_PATH)) {
-                    storage = StorageOptions.newBuilder()
-                            .setCredentials(GoogleCredentials.fromStream(fis))
-                            .build()
-                            .getService();
-                }
-            } else {
-                storage = StorageOptions.getDefaultInstance().getService();
-            }
-
-            BlobInfo blob = BlobInfo.newBuilder(Config.GCS_BUCKET_NAME, objectPath).build();
-            URL signed = storage.signUrl(
-                    blob,
-                    15, TimeUnit.MINUTES,
-                    SignUrlOption.withV4Signature()
-            );
+            // Storage e signer partilhados; URLs repetidos saem da cache de assinaturas
+            GcsUrlSigner.SignedUrl signed = GcsUrlSigner.getInstance().sign(objectPath);
+            long expiresInSeconds = Math.max(0, (signed.getExpiresAt() - System.currentTimeMillis()) / 1000);
 
             // Return signed URL in header for Nginx auth_request consumption
             return Response.ok(Map.of(
                             "status", "ok",
                             "bucket", Config.GCS_BUCKET_NAME,
                             "object", objectPath,
-                            "expiresInMinutes", 15
+                            "expiresInMinutes", expiresInSeconds / 60,
+                            "expiresInSeconds", expiresInSeconds
                     ))
-                    .header("X-GCS-Signed-Url", signed.toString())
+                    .header("X-GCS-Signed-Url", signed.getUrl())
                     .build();
 
         } catch (Exception e) {
@@ -100,6 +80,53 @@ public class HlsController {
         }
     }
 
+    /**
+     * Playlist de uma resolução com todos os segmentos já assinados (uma chamada por
+     * reprodução em vez de uma por segmento). Auth igual ao /sign.
+     */
+    @GET
+    @Path("/playlist")
+    @Produces("application/vnd.apple.mpegurl")
+    public Response playlist(@HeaderParam("Authorization") String auth,
+                             @QueryParam("movieId") String movieId,
+                             @QueryParam("resolution") @DefaultValue("1080p") String resolution) {
+        try {
+            if (auth == null || !auth.startsWith("Bearer ") || FirebaseUtil.verifyIdToken(auth) == null) {
+                return jsonError(401, "Unauthorized");
+            }
+            if (movieId == null || movieId.isEmpty()) {
+                return jsonError(400, "Missing movieId");
+            }
+
+            HlsPlaylistSigner.SignedPlaylist playlist =
+                    HlsPlaylistSigner.getInstance().getSignedPlaylist(movieId, resolution);
+            if (playlist == null) {
+                return jsonError(404, "Playlist not found");
+            }
+
+            // O cliente pode reutilizar a playlist até a janela da cache mudar
+            long now = System.currentTimeMillis();
+            long maxAge = Math.max(0, (playlist.getWindowEndsAt() - now) / 1000);
+            return Response.ok(playlist.getContent())
+                    .header("Cache-Control", "private, max-age=" + maxAge)
+                    .header("X-Signed-Uris", playlist.getSignedUris())
+                    .header("X-Signed-Expires-In", Math.max(0, (playlist.getExpiresAt() - now) / 1000))
+                    .build();
+
+        } catch (IllegalArgumentException e) {
+            return jsonError(400, e.getMessage());
+        } catch (Exception e) {
+            return jsonError(500, e.getMessage());
+        }
+    }
+
+    private static Response jsonError(int status, String message) {
+        return Response.status(status)
+                .type(MediaType.APPLICATION_JSON)
+                .entity(Map.of("error", message != null ? message : "Internal error"))
+                .build();
+    }
+
     private static String normalizeObjectPath(String requestPath) {
         // Remove query string if any
         String p = requestPath;
@@ -1,14 +1,16 @@
 package org.netflixpp.controller;
 
-import com.google.firebase.auth.FirebaseToken;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.*;
+import org.netflixpp.filter.JWTFilter;
+import org.netflixpp.model.AuthPrincipal;
 import org.netflixpp.service.AuthService;
 import org.netflixpp.service.MovieService;
 import org.netflixpp.util.FirebaseUtil;
+import org.netflixpp.util.VerifiedToken;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Path("/movies")
 public class MovieController {
@@ -16,60 +18,26 @@ public class MovieController {
     private final MovieService movieService = new MovieService();
     private final AuthService authService = new AuthService();
 
+    @Context
+    private ContainerRequestContext requestContext;
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response getAllMovies(
             @QueryParam("page") @DefaultValue("1") int page,
             @QueryParam("limit") @DefaultValue("20") int limit,
-            @QueryParam("sort") @DefaultValue("newest") String sort) {
+            @QueryParam("sort") @DefaultValue("newest") String sort,
+            @QueryParam("cursor") String cursor) {
 
         try {
-            List<Map<String, Object>> movies;
-
-            switch (sort) {
-                case "title":
-                    movies = movieService.getAllMovies().stream()
-                            .sorted((a, b) -> ((String) a.get("title"))
-                                    .compareToIgnoreCase((String) b.get("title")))
-                            .collect(Collectors.toList());
-                    break;
-
-                case "year":
-                    movies = movieService.getAllMovies().stream()
-                            .sorted((a, b) -> ((Integer) b.get("year"))
-                                    .compareTo((Integer) a.get("year")))
-                            .collect(Collectors.toList());
-                    break;
-
-                case "views":
-                    // Ordenar por visualizações (se houver)
-                    movies = movieService.getAllMovies();
-                    break;
-
-                default: // newest
-                    movies = movieService.getAllMovies();
-                    break;
-            }
-
-            // Paginação
-            int start = (page - 1) * limit;
-            int end = Math.min(start + limit, movies.size());
-
-            if (start >= movies.size()) {
-                return Response.ok(new ArrayList<>()).build();
-            }
-
-            List<Map<String, Object>> paginated = movies.subList(start, end);
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("movies", paginated);
-            response.put("page", page);
-            response.put("limit", limit);
-            response.put("total", movies.size());
-            response.put("pages", (int) Math.ceil((double) movies.size() / limit));
-
+            // Ordenação e paginação feitas na BD; "cursor" (da resposta anterior) evita OFFSET
+            Map<String, Object> response = movieService.getMoviesPage(sort, cursor, page, limit);
             return Response.ok(response).build();
 
+        } catch (IllegalArgumentException e) {
+            return Response.status(400)
+                    .entity(Map.of("error", e.getMessage()))
+                    .build();
         } catch (Exception e) {
             return Response.serverError()
                     .entity(Map.of("error", e.getMessage()))
@@ -80,9 +48,9 @@ public class MovieController {
     @GET
     @Path("/featured")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getFeaturedMovies() {
+    public Response getFeaturedMovies(@QueryParam("seed") String seed) {
         try {
-            List<Map<String, Object>> movies = movieService.getFeaturedMovies();
+            List<Map<String, Object>> movies = movieService.getFeaturedMovies(seed);
             return Response.ok(movies).build();
         } catch (Exception e) {
             return Response.serverError()
@@ -154,9 +122,11 @@ public class MovieController {
     @GET
     @Path("/search")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response searchMovies(@QueryParam("q") String query) {
+    public Response searchMovies(
+            @QueryParam("q") String query,
+            @QueryParam("limit") @DefaultValue("20") int limit) {
         try {
-            List<Map<String, Object>> results = movieService.searchMovies(query);
+            List<Map<String, Object>> results = movieService.searchMovies(query, limit);
             return Response.ok(results).build();
         } catch (Exception e) {
             return Response.serverError()
@@ -242,29 +212,48 @@ public class MovieController {
             @PathParam("id") int movieId,
             @HeaderParam("Authorization") String authHeader) {
         try {
-            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-                return Response.status(401)
-                        .entity(Map.of("error", "Unauthorized"))
-                        .build();
+            Map<String, Object> user;
+            AuthPrincipal principal = JWTFilter.getPrincipal(requestContext);
+            if (principal != null) {
+                // Já resolvido pelo JWTFilter
+                user = principal.getUser();
+            } else {
+                if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                    return Response.status(401)
+                            .entity(Map.of("error", "Unauthorized"))
+                            .build();
+                }
+
+                VerifiedToken decoded = FirebaseUtil.verifyIdToken(authHeader);
+                if (decoded == null) {
+                    return Response.status(401)
+                            .entity(Map.of("error", "Invalid or expired token"))
+                            .build();
+                }
+
+                user = authService.getUserByFirebaseUid(decoded.getUid());
             }
 
-            FirebaseToken decoded = FirebaseUtil.verifyIdToken(authHeader);
-            if (decoded == null) {
+            if (user == null) {
                 return Response.status(401)
-                        .entity(Map.of("error", "Invalid or expired token"))
+                        .entity(Map.of("error", "User not found"))
                         .build();
             }
 
-            String firebaseUid = decoded.getUid();
-            Map<String, Object> user = authService.getUserByFirebaseUid(firebaseUid);
-            if (user == null) {
-                return Response.status(401)
-                        .entity(Map.of("error", "User not found"))
+            // Views são escritas em lote: um filme inexistente só falharia no flush
+            if (movieService.getMovieById(movieId) == null) {
+                return Response.status(404)
+                        .entity(Map.of("error", "Movie not found"))
                         .build();
             }
 
             int userId = (int) user.get("id");
-            movieService.recordMovieView(movieId, userId);
+            if (!movieService.recordMovieView(movieId, userId)) {
+                return Response.status(503)
+                        .header("Retry-After", "1")
+                        .entity(Map.of("error", "View ingestion overloaded, retry later"))
+                        .build();
+            }
 
             return Response.ok(Map.of("status", "View recorded")).build();
         } catch (Exception e) {
@@ -1,12 +1,16 @@
 package org.netflixpp.controller;
 
-import com.google.firebase.auth.FirebaseToken;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import org.netflixpp.filter.JWTFilter;
+import org.netflixpp.model.AuthPrincipal;
 import org.netflixpp.service.AuthService;
 import org.netflixpp.service.UserService;
 import org.netflixpp.util.FirebaseUtil;
+import org.netflixpp.util.VerifiedToken;
 
 import java.util.HashMap;
 import java.util.List;
@@ -20,13 +24,22 @@ public class UserController {
     private final UserService userService = new UserService();
     private final AuthService authService = new AuthService();
 
+    @Context
+    private ContainerRequestContext requestContext;
+
     // Utilitário: resolve user interno a partir do header Authorization (Firebase)
     private Map<String, Object> resolveUserFromAuth(String authHeader) throws Exception {
+        // Normalmente já resolvido pelo JWTFilter
+        AuthPrincipal principal = JWTFilter.getPrincipal(requestContext);
+        if (principal != null) {
+            return principal.getUser();
+        }
+
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             return null;
         }
 
-        FirebaseToken decoded = FirebaseUtil.verifyIdToken(authHeader);
+        VerifiedToken decoded = FirebaseUtil.verifyIdToken(authHeader);
         if (decoded == null) {
             return null;
         }
@@ -1,6 +1,5 @@
 package org.netflixpp.filter;
 
-import com.google.firebase.auth.FirebaseToken;
 import jakarta.annotation.Priority;
 import jakarta.ws.rs.Priorities;
 import jakarta.ws.rs.container.ContainerRequestContext;
@@ -8,16 +7,33 @@ import jakarta.ws.rs.container.ContainerRequestFilter;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.Provider;
+import org.netflixpp.model.AuthPrincipal;
+import org.netflixpp.service.AuthService;
 import org.netflixpp.util.FirebaseUtil;
+import org.netflixpp.util.VerifiedToken;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 @Provider
 @Priority(Priorities.AUTHENTICATION)
 public class JWTFilter implements ContainerRequestFilter {
 
+    private final AuthService authService = new AuthService();
+
+    /**
+     * Principal resolvido por este filtro para o pedido atual, ou null
+     * (endpoint público ou falha ao obter o utilizador interno).
+     */
+    public static AuthPrincipal getPrincipal(ContainerRequestContext ctx) {
+        if (ctx == null) return null;
+        Object p = ctx.getProperty(AuthPrincipal.PROPERTY);
+        return p instanceof AuthPrincipal ? (AuthPrincipal) p : null;
+    }
+
     @Override
     public void filter(ContainerRequestContext ctx) throws IOException {
         String path = ctx.getUriInfo().getPath();
@@ -49,7 +65,7 @@ public class JWTFilter implements ContainerRequestFilter {
             return;
         }
 
-        FirebaseToken decoded = FirebaseUtil.verifyIdToken(authHeader);
+        VerifiedToken decoded = FirebaseUtil.verifyIdToken(authHeader);
         if (decoded == null) {
             System.out.println("❌ [DEBUG] Invalid or expired Firebase ID token");
             abort(ctx, "Invalid or expired token");
@@ -61,6 +77,19 @@ public class JWTFilter implements ContainerRequestFilter {
         ctx.setProperty("email", decoded.getEmail());
         ctx.setProperty("name", decoded.getName());
 
+        // Utilizador interno, resolvido uma vez por pedido (UserCache evita o SELECT na maioria dos casos).
+        // Se a BD falhar, não há principal e os controllers fazem a resolução eles próprios.
+        try {
+            Map<String, Object> user = authService.getUserByFirebaseUid(decoded.getUid());
+            ctx.setProperty(AuthPrincipal.PROPERTY,
+                    new AuthPrincipal(decoded.getUid(), decoded.getEmail(), decoded.getName(), user));
+            if (user != null) {
+                ctx.setProperty("username", user.get("username"));
+            }
+        } catch (SQLException e) {
+            System.err.println("[AUTH][WARN] Failed to resolve user for uid " + decoded.getUid() + ": " + e.getMessage());
+        }
+
         System.out.println("✅ [DEBUG] User authenticated (uid): " + decoded.getUid());
     }
 
@@ -0,0 +1,164 @@
+package org.netflixpp.mesh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * SHA-256 de um chunk inteiro + hashes das folhas (blocos de {@link #LEAF_SIZE}) e a raiz
+ * Merkle correspondente. As folhas permitem ao recetor validar e retomar transferências
+ * parciais bloco a bloco.
+ *
+ * As folhas ficam num ficheiro ao lado do chunk ({@code <chunk>.leaves}, 32 bytes por folha).
+ */
+public final class ChunkDigest {
+
+    public static final int LEAF_SIZE = 256 * 1024;
+    public static final String LEAVES_SUFFIX = ".leaves";
+    private static final int HASH_LEN = 32;
+
+    private final String hash;
+    private final byte[][] leaves;
+
+    private ChunkDigest(String hash, byte[][] leaves) {
+        this.hash = hash;
+        this.leaves = leaves;
+    }
+
+    public String getHash() { return hash; }
+    public byte[][] getLeaves() { return leaves; }
+
+    public String getMerkleRoot() {
+        return HexFormat.of().formatHex(merkleRoot(leaves));
+    }
+
+    /**
+     * Lê o ficheiro uma vez e calcula o hash total e as folhas.
+     */
+    public static ChunkDigest of(Path file) throws IOException {
+        Hasher hasher = new Hasher();
+        try (InputStream is = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                hasher.update(buffer, 0, n);
+            }
+        }
+        return hasher.finish();
+    }
+
+    /**
+     * Hash total e folhas de um chunk já em memória (usado pelo splitter antes de escrever).
+     */
+    public static ChunkDigest of(byte[] data, int offset, int length) {
+        Hasher hasher = new Hasher();
+        hasher.update(data, offset, length);
+        return hasher.finish();
+    }
+
+    // Alimenta o digest total e o da folha corrente em simultâneo
+    private static final class Hasher {
+        private final MessageDigest whole = sha256();
+        private final MessageDigest leaf = sha256();
+        private final List<byte[]> leaves = new ArrayList<>();
+        private int inLeaf;
+
+        void update(byte[] data, int offset, int length) {
+            whole.update(data, offset, length);
+            int off = offset;
+            int end = offset + length;
+            while (off < end) {
+                int take = Math.min(end - off, LEAF_SIZE - inLeaf);
+                leaf.update(data, off, take);
+                inLeaf += take;
+                off += take;
+                if (inLeaf == LEAF_SIZE) {
+                    leaves.add(leaf.digest());
+                    inLeaf = 0;
+                }
+            }
+        }
+
+        ChunkDigest finish() {
+            if (inLeaf > 0 || leaves.isEmpty()) {
+                leaves.add(leaf.digest());
+            }
+            return new ChunkDigest(HexFormat.of().formatHex(whole.digest()), leaves.toArray(new byte[0][]));
+        }
+    }
+
+    /**
+     * Raiz Merkle: SHA-256 de pares de nós, nível a nível; um nó ímpar sobe sem alteração.
+     */
+    public static byte[] merkleRoot(byte[][] leaves) {
+        if (leaves.length == 0) return sha256().digest();
+        byte[][] level = leaves;
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                int l = 2 * i;
+                if (l + 1 < level.length) {
+                    MessageDigest md = sha256();
+                    md.update(level[l]);
+                    md.update(level[l + 1]);
+                    next[i] = md.digest();
+                } else {
+                    next[i] = level[l];
+                }
+            }
+            level = next;
+        }
+        return level[0];
+    }
+
+    public static int leafCount(long chunkSize) {
+        return chunkSize == 0 ? 1 : (int) ((chunkSize + LEAF_SIZE - 1) / LEAF_SIZE);
+    }
+
+    public static Path leavesPath(Path chunkFile) {
+        return chunkFile.resolveSibling(chunkFile.getFileName() + LEAVES_SUFFIX);
+    }
+
+    public static void writeLeaves(Path chunkFile, byte[][] leaves) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(leaves.length * HASH_LEN);
+        for (byte[] l : leaves) buf.put(l);
+        Path target = leavesPath(chunkFile);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, buf.array());
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Lê as folhas guardadas; devolve null se não existirem ou não baterem com o tamanho do chunk.
+     */
+    public static byte[][] readLeaves(Path chunkFile, long chunkSize) {
+        Path path = leavesPath(chunkFile);
+        int expected = leafCount(chunkSize);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() != (long) expected * HASH_LEN) return null;
+            ByteBuffer buf = ByteBuffer.allocate(expected * HASH_LEN);
+            while (buf.hasRemaining() && ch.read(buf) > 0) { }
+            buf.flip();
+            byte[][] leaves = new byte[expected][HASH_LEN];
+            for (byte[] l : leaves) buf.get(l);
+            return leaves;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 error", e);
+        }
+    }
+}
@@ -1,24 +1,74 @@
 package org.netflixpp.mesh;
 
 import org.netflixpp.config.Config;
-import org.netflixpp.util.HashUtil;
-import org.netflixpp.util.GcsUploader;
+import org.netflixpp.util.UploadScheduler;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Registo de chunks partilhado (MeshServer, P2PServer e serviços usam a mesma instância).
+ *
+ * Cada diretório de filme tem um índice persistente ({@value #INDEX_FILE}) com o tamanho
+ * de chunk do filme e o índice, hash, tamanho e mtime de cada chunk. No arranque só se leem os metadados dos ficheiros:
+ * o hash é recalculado apenas para chunks novos ou cujo tamanho/mtime não coincide.
+ *
+ * Em modo CDC (CHUNKING_MODE=cdc) as fronteiras são definidas pelo conteúdo ({@link FastCdc})
+ * e os dados ficam uma única vez no {@link ChunkStore}, partilhados entre filmes.
+ *
+ * O hash de cada chunk e os hashes das folhas Merkle ({@link ChunkDigest}) são calculados
+ * uma única vez (no split ou quando o ficheiro muda) e servidos a partir do registo.
+ */
 public class ChunkManager {
-    private Map<String, List<ChunkInfo>> movieChunks;
+
+    private static volatile ChunkManager INSTANCE;
+
+    static final String INDEX_FILE = "chunks.idx";
+    static final String JOURNAL_FILE = "chunks.idx.journal"; // chunks concluídos de um split em curso
+    static final String PENDING_UPLOADS_FILE = "chunks.idx.pending"; // chunks cujo upload para o GCS falhou
+    private static final String INDEX_HEADER = "# netflixpp chunk index v2";
+    private static final String CHUNK_SIZE_HEADER = "# chunkSize=";
+    private static final String CHUNKING_HEADER = "# chunking=";
+
+    private Map<String, MovieChunks> movieChunks; // substituído por inteiro em cada split (copy-on-write)
     private Map<String, Set<String>> chunkPeers; // chunkId -> [peer addresses]
+    private final Map<String, SplitProgress> splits = new ConcurrentHashMap<>();
+    private final ChunkStore chunkStore = new ChunkStore(Paths.get(Config.CHUNK_STORE_DIR));
+
+    // Pipeline do split: buffers reutilizáveis + writers e uploaders partilhados por todos os splits
+    private final BufferPool bufferPool = new BufferPool(Config.SPLIT_BUFFER_MEMORY_MB * 1024L * 1024L);
+    private final ExecutorService writerPool = newDaemonPool("chunk-writer", Config.SPLIT_WRITER_THREADS);
 
-    public ChunkManager() {
+    // Métricas do carregamento
+    private volatile int indexedChunks;
+    private volatile int rehashedChunks;
+    private volatile long loadMillis;
+
+    private ChunkManager() {
         this.movieChunks = new ConcurrentHashMap<>();
         this.chunkPeers = new ConcurrentHashMap<>();
         loadExistingChunks();
     }
 
+    public static ChunkManager getInstance() {
+        if (INSTANCE == null) {
+            synchronized (ChunkManager.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ChunkManager();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
     private void loadExistingChunks() {
+        long start = System.currentTimeMillis();
+        int[] counters = new int[2]; // [reutilizados do índice, recalculados]
         try {
             Path chunksDir = Paths.get(Config.CHUNKS_DIR);
             if (!Files.exists(chunksDir)) {
@@ -29,90 +79,619 @@ public class ChunkManager {
                 for (Path movieDir : movieDirs) {
                     if (Files.isDirectory(movieDir)) {
                         String movieId = movieDir.getFileName().toString();
-                        List<ChunkInfo> chunks = new ArrayList<>();
-
-                        try (DirectoryStream<Path> chunkFiles = Files.newDirectoryStream(movieDir, "*.bin")) {
-                            for (Path chunkFile : chunkFiles) {
-                                String fileName = chunkFile.getFileName().toString();
-                                int chunkIndex = extractChunkIndex(fileName);
-                                long size = Files.size(chunkFile);
-                                String hash = HashUtil.calculateFileHash(chunkFile.toString());
-
-                                chunks.add(new ChunkInfo(chunkIndex, hash, size, true));
-                            }
+                        try {
+                            publish(movieId, loadMovieDir(movieDir, counters));
+                        } catch (IOException e) {
+                            System.err.println("Error loading chunks for " + movieId + ": " + e.getMessage());
                         }
-
-                        // Ordenar por índice
-                        chunks.sort(Comparator.comparingInt(ChunkInfo::getIndex));
-                        movieChunks.put(movieId, chunks);
                     }
                 }
             }
 
-            System.out.println("Loaded chunks for " + movieChunks.size() + " movies");
+            int orphans = chunkStore.sweep();
+            if (orphans > 0) {
+                System.out.println("Removed " + orphans + " unreferenced chunks from the chunk store");
+            }
 
         } catch (IOException e) {
             System.err.println("Error loading chunks: " + e.getMessage());
+        } finally {
+            indexedChunks = counters[0];
+            rehashedChunks = counters[1];
+            loadMillis = System.currentTimeMillis() - start;
+        }
+
+        System.out.println("Loaded chunks for " + movieChunks.size() + " movies (" +
+                counters[0] + " from index, " + counters[1] + " rehashed) in " + loadMillis + " ms");
+    }
+
+    /**
+     * Lê o índice do diretório e valida-o contra os ficheiros existentes (tamanho + mtime).
+     * Reescreve o índice se algo mudou.
+     */
+    private MovieChunks loadMovieDir(Path movieDir, int[] counters) throws IOException {
+        Path indexFile = movieDir.resolve(INDEX_FILE);
+        Map<String, ChunkInfo> indexed = readIndex(indexFile);
+        Map<String, String> header = readIndexHeader(indexFile);
+        int chunkSize = parseInt(header.get(CHUNK_SIZE_HEADER), 0);
+        boolean cdc = "cdc".equals(header.get(CHUNKING_HEADER));
+        List<ChunkInfo> chunks = new ArrayList<>();
+        boolean dirty = false;
+
+        try (DirectoryStream<Path> chunkFiles = Files.newDirectoryStream(movieDir, "*.bin")) {
+            for (Path chunkFile : chunkFiles) {
+                String fileName = chunkFile.getFileName().toString();
+                BasicFileAttributes attrs = Files.readAttributes(chunkFile, BasicFileAttributes.class);
+                long size = attrs.size();
+                long mtime = attrs.lastModifiedTime().toMillis();
+
+                ChunkInfo known = indexed.remove(fileName);
+                if (known != null && known.getSize() == size && known.getLastModified() == mtime) {
+                    chunks.add(known);
+                    counters[0]++;
+                    continue;
+                }
+
+                int chunkIndex = extractChunkIndex(fileName);
+                ChunkDigest digest = ChunkDigest.of(chunkFile);
+                ChunkDigest.writeLeaves(chunkFile, digest.getLeaves());
+                ChunkInfo info = new ChunkInfo(chunkIndex, digest.getHash(), size, true, fileName, mtime);
+                info.leaves = digest.getLeaves();
+                chunks.add(info);
+                counters[1]++;
+                dirty = true;
+            }
+        }
+        if (!indexed.isEmpty()) {
+            dirty = true; // entradas de ficheiros que já não existem
+        }
+
+        // Ordenar por índice
+        chunks.sort(Comparator.comparingInt(ChunkInfo::getIndex));
+        if (chunkSize <= 0) {
+            // Índice v1 (ou inexistente): todos os chunks menos o último têm o tamanho do chunk
+            chunkSize = chunks.size() > 1 ? (int) chunks.get(0).getSize() : Config.CHUNK_SIZE;
+            dirty = true;
         }
+        if (dirty) {
+            writeIndex(movieDir, chunks, chunkSize, cdc);
+        }
+        return new MovieChunks(movieDir, chunks, chunkSize, cdc);
+    }
+
+    // Formato: uma linha por chunk "index<TAB>size<TAB>mtime<TAB>hash<TAB>fileName" (índice e journal)
+    private static Map<String, ChunkInfo> readIndex(Path indexFile) {
+        Map<String, ChunkInfo> entries = new HashMap<>();
+        if (!Files.exists(indexFile)) return entries;
+
+        try (BufferedReader reader = Files.newBufferedReader(indexFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] f = line.split("\t");
+                if (f.length != 5) continue;
+                entries.put(f[4], new ChunkInfo(Integer.parseInt(f[0]), f[3],
+                        Long.parseLong(f[1]), true, f[4], Long.parseLong(f[2])));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring corrupt chunk index " + indexFile + ": " + e.getMessage());
+            entries.clear();
+        }
+        return entries;
+    }
+
+    // Propriedades do filme no cabeçalho do índice ("# chave=valor"), indexadas pelo prefixo
+    private static Map<String, String> readIndexHeader(Path indexFile) {
+        Map<String, String> header = new HashMap<>();
+        if (!Files.exists(indexFile)) return header;
+        try (BufferedReader reader = Files.newBufferedReader(indexFile)) {
+            String line;
+            while ((line = reader.readLine()) != null && line.startsWith("#")) {
+                int eq = line.indexOf('=');
+                if (eq > 0) {
+                    header.put(line.substring(0, eq + 1), line.substring(eq + 1).trim());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring chunk index header " + indexFile + ": " + e.getMessage());
+        }
+        return header;
+    }
+
+    private static int parseInt(String value, int def) {
+        try {
+            return value != null ? Integer.parseInt(value) : def;
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    private static void writeIndex(Path movieDir, List<ChunkInfo> chunks, int chunkSize, boolean cdc) {
+        Path indexFile = movieDir.resolve(INDEX_FILE);
+        Path tmp = movieDir.resolve(INDEX_FILE + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp)) {
+                writer.write(INDEX_HEADER);
+                writer.newLine();
+                writer.write(CHUNK_SIZE_HEADER + chunkSize);
+                writer.newLine();
+                writer.write(CHUNKING_HEADER + (cdc ? "cdc" : "fixed"));
+                writer.newLine();
+                for (ChunkInfo c : chunks) {
+                    writer.write(indexLine(c));
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to write chunk index " + indexFile + ": " + e.getMessage());
+        }
+    }
+
+    private static String indexLine(ChunkInfo c) {
+        return c.getIndex() + "\t" + c.getSize() + "\t" + c.getLastModified() +
+                "\t" + c.getHash() + "\t" + c.getFileName();
     }
 
     public List<String> splitMovieIntoChunks(String movieFilePath, String movieId) throws IOException {
+        return splitMovieIntoChunks(movieFilePath, movieId, false, 0, 0);
+    }
+
+    public List<String> splitMovieIntoChunks(String movieFilePath, String movieId, boolean force)
+            throws IOException {
+        return splitMovieIntoChunks(movieFilePath, movieId, force, 0, 0);
+    }
+
+    /**
+     * Tamanho de chunk adaptativo: com a duração conhecida, cerca de CHUNK_TARGET_SECONDS de
+     * vídeo por chunk (360p fica com chunks pequenos e mais paralelismo no swarm, 4K com
+     * chunks grandes e menos ficheiros); sem duração, o ficheiro dividido em cerca de
+     * CHUNK_TARGET_COUNT chunks. Limitado a [CHUNK_SIZE_MIN, CHUNK_SIZE_MAX] e arredondado
+     * a um múltiplo das folhas Merkle.
+     */
+    public static int adaptiveChunkSize(long fileSize, int durationMinutes) {
+        if (!Config.CHUNK_SIZE_ADAPTIVE) return Config.CHUNK_SIZE;
+
+        long size;
+        if (durationMinutes > 0) {
+            long bytesPerSecond = fileSize / (durationMinutes * 60L);
+            size = bytesPerSecond * Config.CHUNK_TARGET_SECONDS;
+        } else {
+            size = fileSize / Config.CHUNK_TARGET_COUNT;
+        }
+        return normalizeChunkSize(size);
+    }
+
+    private static int normalizeChunkSize(long size) {
+        size = Math.max(Config.CHUNK_SIZE_MIN, Math.min(Config.CHUNK_SIZE_MAX, size));
+        long leaves = (size + ChunkDigest.LEAF_SIZE - 1) / ChunkDigest.LEAF_SIZE;
+        return (int) (leaves * ChunkDigest.LEAF_SIZE);
+    }
+
+    /**
+     * Split em pipeline: esta thread só lê o ficheiro para buffers do pool; cada chunk é
+     * hashed (total + folhas) a partir do buffer e escrito por um pool de writers, e o upload
+     * para o GCS segue pelo {@link UploadScheduler} partilhado. O número de buffers limita a memória e faz de fila
+     * limitada entre o leitor e os writers.
+     *
+     * Incremental por omissão: cada chunk é sempre lido e hashed, mas só é escrito e enviado
+     * para o GCS se não existir já em disco com o mesmo hash e tamanho (índice anterior ou
+     * journal de um split interrompido). Com force=true todos os chunks são reescritos.
+     * O relatório de diferenças fica no progresso do split.
+     *
+     * chunkSize > 0 fixa o tamanho do chunk; caso contrário um split incremental mantém o
+     * tamanho atual do filme e um split novo (ou forçado) usa {@link #adaptiveChunkSize}.
+     * O modo (fixo ou CDC, em que chunkSize é o tamanho médio) segue a mesma regra com
+     * CHUNKING_MODE.
+     */
+    public List<String> splitMovieIntoChunks(String movieFilePath, String movieId, boolean force,
+                                             int durationMinutes, int chunkSize) throws IOException {
         Path moviePath = Paths.get(movieFilePath);
         Path chunksDir = Paths.get(Config.CHUNKS_DIR, movieId);
         Files.createDirectories(chunksDir);
 
-        List<String> chunkFiles = new ArrayList<>();
-        List<ChunkInfo> chunkInfos = new ArrayList<>();
+        long fileSize = Files.size(moviePath);
+        MovieChunks before = movieChunks.get(movieId);
+        if (chunkSize > 0) {
+            chunkSize = normalizeChunkSize(chunkSize);
+        } else if (!force && before != null) {
+            chunkSize = before.chunkSize;
+        } else {
+            chunkSize = adaptiveChunkSize(fileSize, durationMinutes);
+        }
+        boolean cdc = !force && before != null ? before.cdc : "cdc".equalsIgnoreCase(Config.CHUNKING_MODE);
+        chunkSize = fitBufferBudget(chunkSize, cdc);
+        FastCdc chunker = cdc ? new FastCdc(chunkSize) : null;
 
-        // Inferir resolução a partir do nome/caminho do arquivo do filme
-        String resolution = inferResolution(movieFilePath);
+        SplitProgress progress = new SplitProgress(movieId, fileSize, chunkSize);
+        SplitProgress current = splits.compute(movieId, (k, prev) ->
+                prev != null && prev.getState() == SplitProgress.State.RUNNING ? prev : progress);
+        if (current != progress) {
+            throw new IllegalStateException("Split already in progress for " + movieId);
+        }
 
-        try (InputStream is = Files.newInputStream(moviePath)) {
-            byte[] buffer = new byte[Config.CHUNK_SIZE];
-            int bytesRead;
-            int chunkIndex = 0;
+        SplitJob job = new SplitJob(chunksDir, movieId, inferResolution(movieFilePath), progress, force, cdc);
+        int bufferSize = cdc ? chunker.getMaxSize() : chunkSize;
 
-            while ((bytesRead = is.read(buffer)) != -1) {
-                // Salvar chunk
-                String chunkName = "chunk_" + chunkIndex + ".bin";
-                Path chunkPath = chunksDir.resolve(chunkName);
+        List<Future<ChunkInfo>> writes = new ArrayList<>();
+        try {
+            try (FileChannel in = FileChannel.open(moviePath, StandardOpenOption.READ)) {
+                // Um buffer de cada vez: cada buffer é entregue aos writers antes de pedir o
+                // seguinte, e os bytes depois da fronteira CDC são relidos do ficheiro (page
+                // cache) no buffer seguinte em vez de copiados; segurar um buffer cheio enquanto
+                // se espera por outro bloqueava splits concorrentes com o orçamento esgotado
+                int chunkIndex = 0;
+                long offset = 0;
+                while (true) {
+                    byte[] buffer = bufferPool.acquire(bufferSize);
+                    int filled;
+                    try {
+                        filled = readFully(in, buffer, offset);
+                    } catch (IOException e) {
+                        bufferPool.release(buffer);
+                        throw e;
+                    }
+                    if (filled == 0) {
+                        bufferPool.release(buffer);
+                        break;
+                    }
+                    // O buffer é sempre completado antes de procurar a fronteira (exceto no fim)
+                    int length = cdc ? chunker.cut(buffer, filled) : filled;
+                    progress.bytesRead.addAndGet(length);
 
-                try (OutputStream os = Files.newOutputStream(chunkPath)) {
-                    os.write(buffer, 0, bytesRead);
+                    int index = chunkIndex++;
+                    writes.add(writerPool.submit(() -> writeChunk(job, index, buffer, length)));
+                    offset += length;
+                    if (filled < bufferSize && length == filled) break;
                 }
+            }
 
-                // Calcular hash
-                String hash = HashUtil.calculateFileHash(chunkPath.toString());
+            List<String> chunkFiles = new ArrayList<>();
+            List<ChunkInfo> chunkInfos = new ArrayList<>();
+            for (Future<ChunkInfo> f : writes) {
+                ChunkInfo info = await(f);
+                chunkInfos.add(info);
+                chunkFiles.add(info.getFileName());
+            }
+            // Como antes, o split só termina depois dos uploads (falhas ficam apenas registadas)
+            for (Future<?> u : new ArrayList<>(job.uploads)) {
+                await(u);
+            }
+            job.closeUploads();
 
-                // Renomear com hash parcial
-                String hashedName = "chunk_" + chunkIndex + "_" + hash.substring(0, 8) + ".bin";
-                Path hashedPath = chunksDir.resolve(hashedName);
-                Files.move(chunkPath, hashedPath);
+            // Salvar no índice em disco e no mapa (visível de imediato para o mesh); os chunks
+            // com upload falhado ficam no índice (existem localmente) e também em pendentes
+            job.savePendingUploads(chunkFiles);
+            writeIndex(chunksDir, chunkInfos, chunkSize, cdc);
+            Files.deleteIfExists(job.journal);
+            publish(movieId, new MovieChunks(chunksDir, chunkInfos, chunkSize, cdc));
+            deleteStaleChunkFiles(chunksDir, chunkFiles);
 
-                // Upload to Google Cloud Storage (non-blocking for failures)
-                try {
-                    if (Config.GCS_UPLOAD_ENABLED) {
-                        String objectName = renderGcsObjectName(movieId, hashedName, resolution);
-                        GcsUploader.getInstance().upload(hashedPath.toFile(), objectName, "application/octet-stream");
-                    }
-                } catch (Exception ex) {
-                    System.err.println("GCS upload failed for " + hashedPath + ": " + ex.getMessage());
+            progress.done(diffReport(before, chunkInfos, job));
+            System.out.println("Split movie into " + chunkFiles.size() + (cdc ? " CDC chunks (avg " : " chunks of ") +
+                    (chunkSize / 1024) + " KB) (" +
+                    progress.toMap().get("throughputMBps") + " MB/s, " +
+                    progress.chunksReused.get() + " unchanged, " +
+                    progress.chunksDeduplicated.get() + " deduplicated)");
+            return chunkFiles;
+
+        } catch (IOException | RuntimeException e) {
+            // Esperar pelos writes pendentes (devolvem os buffers ao pool) antes de falhar;
+            // o journal fica em disco para o próximo split retomar
+            for (Future<ChunkInfo> f : writes) {
+                try { f.get(); } catch (Exception ignored) {}
+            }
+            job.abandonUploads();
+            progress.failed(e);
+            throw e;
+        }
+    }
+
+    // Lê a partir de offset até encher o buffer ou chegar ao fim do ficheiro
+    private static int readFully(FileChannel in, byte[] buffer, long offset) throws IOException {
+        ByteBuffer dst = ByteBuffer.wrap(buffer);
+        while (dst.hasRemaining()) {
+            if (in.read(dst, offset + dst.position()) < 0) break;
+        }
+        return dst.position();
+    }
+
+    /**
+     * Cada buffer cabe em metade de SPLIT_BUFFER_MEMORY_MB, para haver sempre pelo menos dois
+     * em voo (um a ser lido, outro a ser escrito). Em CDC o buffer tem o tamanho máximo do chunk
+     * ({@link FastCdc#MAX_FACTOR} vezes a média) e a média é reduzida até caber; em modo fixo
+     * um chunk maior que o limite é recusado.
+     */
+    private int fitBufferBudget(int chunkSize, boolean cdc) {
+        int maxBuffer = bufferPool.maxBufferSize();
+        if (!cdc) {
+            if (chunkSize > maxBuffer) {
+                throw new IllegalArgumentException("Chunk size " + (chunkSize / 1024) + " KB exceeds half of " +
+                        "SPLIT_BUFFER_MEMORY_MB (" + (maxBuffer / 1024) + " KB); raise the budget or lower the chunk size");
+            }
+            return chunkSize;
+        }
+
+        int maxAverage = maxBuffer / FastCdc.MAX_FACTOR / ChunkDigest.LEAF_SIZE * ChunkDigest.LEAF_SIZE;
+        if (maxAverage == 0) {
+            throw new IllegalArgumentException("SPLIT_BUFFER_MEMORY_MB is too small for CDC chunking (need at least " +
+                    (2L * FastCdc.MAX_FACTOR * ChunkDigest.LEAF_SIZE / (1024 * 1024)) + " MB)");
+        }
+        if (chunkSize > maxAverage) {
+            System.out.println("CDC average chunk size " + (chunkSize / 1024) + " KB capped to " +
+                    (maxAverage / 1024) + " KB by SPLIT_BUFFER_MEMORY_MB");
+            return maxAverage;
+        }
+        return chunkSize;
+    }
+
+    private ChunkInfo writeChunk(SplitJob job, int chunkIndex, byte[] buffer, int length) throws IOException {
+        SplitProgress progress = job.progress;
+        ChunkDigest digest;
+        Path hashedPath;
+        boolean storedNow = false;
+        try {
+            // Hash do chunk e das folhas Merkle calculado no buffer, antes de escrever
+            digest = ChunkDigest.of(buffer, 0, length);
+            String hashedName = "chunk_" + chunkIndex + "_" + digest.getHash().substring(0, 8) + ".bin";
+            hashedPath = job.chunksDir.resolve(hashedName);
+
+            ChunkInfo existing = job.cdc && !chunkStore.contains(digest.getHash())
+                    ? null : job.reusable(hashedName, digest.getHash(), length, hashedPath);
+            if (existing != null) {
+                progress.bytesSkipped.addAndGet(length);
+                progress.chunksReused.incrementAndGet();
+                if (ChunkDigest.readLeaves(hashedPath, length) == null) {
+                    ChunkDigest.writeLeaves(hashedPath, digest.getLeaves());
+                }
+                existing.leaves = digest.getLeaves();
+                // Conteúdo igual mas o upload de um split anterior falhou: volta a enviar
+                if (Config.GCS_UPLOAD_ENABLED && job.pendingUploads.contains(hashedName)) {
+                    submitUpload(job, existing, hashedPath);
                 }
+                return existing;
+            }
 
-                // Criar info do chunk
-                ChunkInfo info = new ChunkInfo(chunkIndex, hash, bytesRead, true);
-                chunkInfos.add(info);
+            if (job.cdc) {
+                // Conteúdo guardado uma vez no store; o filme fica com um hard link
+                storedNow = chunkStore.put(digest.getHash(), buffer, length, digest.getLeaves());
+                chunkStore.link(digest.getHash(), hashedPath);
+            } else {
+                Path tmp = job.chunksDir.resolve(hashedName + ".tmp");
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ByteBuffer src = ByteBuffer.wrap(buffer, 0, length);
+                    while (src.hasRemaining()) out.write(src);
+                }
+                Files.move(tmp, hashedPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+        ChunkDigest.writeLeaves(hashedPath, digest.getLeaves());
+        if (job.cdc && !storedNow) {
+            progress.bytesSkipped.addAndGet(length);
+            progress.chunksDeduplicated.incrementAndGet();
+        } else {
+            progress.bytesWritten.addAndGet(length);
+            progress.chunksWritten.incrementAndGet();
+        }
+
+        // Criar info do chunk
+        ChunkInfo info = new ChunkInfo(chunkIndex, digest.getHash(), length, true,
+                hashedPath.getFileName().toString(), Files.getLastModifiedTime(hashedPath).toMillis());
+        info.leaves = digest.getLeaves();
+
+        // Upload to Google Cloud Storage (non-blocking for failures); em CDC só conteúdo novo,
+        // com nome endereçado por hash
+        if (Config.GCS_UPLOAD_ENABLED && (!job.cdc || storedNow)) {
+            submitUpload(job, info, hashedPath);
+        } else {
+            job.journal(info);
+        }
+        return info;
+    }
+
+    /**
+     * Põe o chunk na fila de upload. Só entra no journal depois de enviado; se falhar fica
+     * em {@value #PENDING_UPLOADS_FILE} e o próximo split volta a enviá-lo mesmo sem mudanças.
+     */
+    private void submitUpload(SplitJob job, ChunkInfo info, Path path) {
+        SplitProgress progress = job.progress;
+        String objectName = job.cdc
+                ? ChunkStore.gcsObjectName(info.getHash())
+                : renderGcsObjectName(job.movieId, info.getFileName(), job.resolution);
+        job.uploads.add(job.uploadBatch()
+                .submit(path.toFile(), objectName, "application/octet-stream")
+                .thenAccept(r -> {
+                    if ("failed".equals(r.get("action"))) {
+                        progress.uploadFailures.incrementAndGet();
+                        job.failedUploads.add(info.getFileName());
+                        System.err.println("GCS upload failed for " + path + ": " + r.get("error"));
+                    } else {
+                        progress.chunksUploaded.incrementAndGet();
+                        job.journal(info);
+                    }
+                }));
+    }
+
+    // Compara o resultado com o registo anterior do filme
+    private static Map<String, Object> diffReport(MovieChunks before, List<ChunkInfo> after, SplitJob job) {
+        List<Integer> added = new ArrayList<>();
+        List<Integer> changed = new ArrayList<>();
+        int unchanged = 0;
+        int rewritten = 0;
+        for (ChunkInfo c : after) {
+            ChunkInfo prev = before != null ? before.info(c.getIndex()) : null;
+            if (prev == null) {
+                added.add(c.getIndex());
+            } else if (!prev.getHash().equals(c.getHash())) {
+                changed.add(c.getIndex());
+            } else if (job.reused.contains(c.getFileName())) {
+                unchanged++;
+            } else {
+                rewritten++;
+            }
+        }
+        List<Integer> removed = new ArrayList<>();
+        if (before != null) {
+            for (ChunkInfo prev : before.ordered) {
+                if (prev.getIndex() >= after.size()) removed.add(prev.getIndex());
+            }
+        }
+
+        Map<String, Object> diff = new LinkedHashMap<>();
+        diff.put("mode", job.force ? "full" : "incremental");
+        diff.put("chunking", job.cdc ? "cdc" : "fixed");
+        diff.put("unchanged", unchanged);
+        diff.put("rewritten", rewritten);
+        diff.put("resumed", job.resumed.size());
+        diff.put("added", added);
+        diff.put("changed", changed);
+        diff.put("removed", removed);
+        return diff;
+    }
+
+    /**
+     * Estado partilhado pelos writers de um split: chunks reutilizáveis (índice + journal)
+     * e journal dos chunks concluídos, para retomar um split interrompido.
+     */
+    private static final class SplitJob {
+        final Path chunksDir;
+        final String movieId;
+        final String resolution;
+        final SplitProgress progress;
+        final boolean force;
+        final boolean cdc;
+        final Path journal;
+        final Map<String, ChunkInfo> known;
+        final Set<String> fromJournal;
+        final Set<String> reused = ConcurrentHashMap.newKeySet();
+        final Set<String> resumed = ConcurrentHashMap.newKeySet();
+        final Set<String> pendingUploads;
+        final Set<String> failedUploads = ConcurrentHashMap.newKeySet();
+        final List<Future<?>> uploads = Collections.synchronizedList(new ArrayList<>());
+        private UploadScheduler.Batch uploadBatch;
+
+        SplitJob(Path chunksDir, String movieId, String resolution, SplitProgress progress,
+                 boolean force, boolean cdc) throws IOException {
+            this.chunksDir = chunksDir;
+            this.movieId = movieId;
+            this.resolution = resolution;
+            this.progress = progress;
+            this.force = force;
+            this.cdc = cdc;
+            this.journal = chunksDir.resolve(JOURNAL_FILE);
+            this.pendingUploads = force ? Collections.emptySet() : readPendingUploads(chunksDir);
+            if (force) {
+                Files.deleteIfExists(journal);
+                this.known = Collections.emptyMap();
+                this.fromJournal = Collections.emptySet();
+            } else {
+                Map<String, ChunkInfo> journaled = readIndex(journal);
+                this.known = readIndex(chunksDir.resolve(INDEX_FILE));
+                this.known.putAll(journaled);
+                this.fromJournal = journaled.keySet();
+            }
+        }
+
+        // Chunk já em disco com o mesmo conteúdo (hash + tamanho, ficheiro inalterado desde então)
+        ChunkInfo reusable(String fileName, String hash, long size, Path path) throws IOException {
+            ChunkInfo c = known.get(fileName);
+            if (c == null || !c.getHash().equals(hash) || c.getSize() != size || !Files.exists(path)) {
+                return null;
+            }
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attrs.size() != size || attrs.lastModifiedTime().toMillis() != c.getLastModified()) {
+                return null;
+            }
+            reused.add(fileName);
+            if (fromJournal.contains(fileName)) resumed.add(fileName);
+            return c;
+        }
 
-                chunkFiles.add(hashedName);
-                chunkIndex++;
+        // Criado só no primeiro upload: um split sem uploads não aparece em /admin/uploads
+        synchronized UploadScheduler.Batch uploadBatch() {
+            if (uploadBatch == null) {
+                uploadBatch = UploadScheduler.getInstance().newBatch("split " + movieId);
             }
+            return uploadBatch;
         }
 
-        // Salvar no mapa
-        movieChunks.put(movieId, chunkInfos);
+        synchronized void closeUploads() {
+            if (uploadBatch != null) uploadBatch.await();
+        }
 
-        System.out.println("Split movie into " + chunkFiles.size() + " chunks");
-        return chunkFiles;
+        // Split falhado: os uploads já submetidos terminam (e entram no journal) em background
+        synchronized void abandonUploads() {
+            if (uploadBatch != null) uploadBatch.closeWhenDone();
+        }
+
+        // Pendentes = uploads falhados agora + pendentes anteriores que não voltaram a ser enviados
+        // (ex.: GCS desativado entretanto), limitados aos chunks atuais do filme
+        void savePendingUploads(List<String> current) throws IOException {
+            Set<String> pending = new TreeSet<>(failedUploads);
+            for (String name : pendingUploads) {
+                if (!Config.GCS_UPLOAD_ENABLED && current.contains(name)) pending.add(name);
+            }
+            Path file = chunksDir.resolve(PENDING_UPLOADS_FILE);
+            if (pending.isEmpty()) {
+                Files.deleteIfExists(file);
+            } else {
+                Files.write(file, pending);
+            }
+            progress.pendingUploads.set(pending.size());
+        }
+
+        synchronized void journal(ChunkInfo info) {
+            try (BufferedWriter writer = Files.newBufferedWriter(journal,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(indexLine(info));
+                writer.newLine();
+            } catch (IOException e) {
+                System.err.println("Failed to journal chunk " + info + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static Set<String> readPendingUploads(Path chunksDir) throws IOException {
+        Path file = chunksDir.resolve(PENDING_UPLOADS_FILE);
+        if (!Files.exists(file)) return Collections.emptySet();
+        Set<String> names = new HashSet<>();
+        for (String line : Files.readAllLines(file)) {
+            if (!line.isBlank()) names.add(line.trim());
+        }
+        return names;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Split interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Progresso dos splits em curso e do último split de cada filme.
+     */
+    public List<Map<String, Object>> getSplitProgress() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (SplitProgress p : splits.values()) {
+            list.add(p.toMap());
+        }
+        return list;
+    }
+
+    public Map<String, Object> getSplitProgress(String movieId) {
+        SplitProgress p = splits.get(movieId);
+        return p != null ? p.toMap() : null;
     }
 
     private static String inferResolution(String movieFilePath) {
@@ -141,54 +720,119 @@ public class ChunkManager {
         return m;
     }
 
+    /**
+     * Tamanho de chunk do filme (o último chunk pode ser menor).
+     */
+    public int getChunkSize(String movieId) {
+        MovieChunks chunks = movieChunks.get(movieId);
+        return chunks != null ? chunks.chunkSize : Config.CHUNK_SIZE;
+    }
+
     public List<String> getAvailableChunks(String movieId) {
-        List<ChunkInfo> chunks = movieChunks.get(movieId);
-        if (chunks == null) {
-            return new ArrayList<>();
-        }
+        MovieChunks chunks = movieChunks.get(movieId);
+        return chunks != null ? chunks.availableNames : Collections.emptyList();
+    }
 
-        List<String> chunkNames = new ArrayList<>();
-        for (ChunkInfo chunk : chunks) {
-            if (chunk.isAvailable()) {
-                chunkNames.add("chunk_" + chunk.getIndex() + "_" +
-                        chunk.getHash().substring(0, 8) + ".bin");
-            }
-        }
+    /**
+     * Acesso direto por índice (sem alocações nem I/O).
+     */
+    public ChunkInfo getChunkInfo(String movieId, int chunkIndex) {
+        MovieChunks chunks = movieChunks.get(movieId);
+        return chunks != null ? chunks.info(chunkIndex) : null;
+    }
 
-        return chunkNames;
+    /**
+     * Caminho do chunk resolvido no registo, ou null se o chunk não existir.
+     */
+    public Path getChunkPath(String movieId, int chunkIndex) {
+        MovieChunks chunks = movieChunks.get(movieId);
+        if (chunks == null || chunkIndex < 0 || chunkIndex >= chunks.paths.length) return null;
+        return chunks.paths[chunkIndex];
     }
 
-    public ChunkInfo getChunkInfo(String movieId, int chunkIndex) {
-        List<ChunkInfo> chunks = movieChunks.get(movieId);
-        if (chunks == null) return null;
+    /**
+     * Hashes das folhas Merkle do chunk (blocos de {@link ChunkDigest#LEAF_SIZE}), ou null se
+     * o chunk não existir. Carregados do ficheiro .leaves na primeira utilização; se faltar
+     * (índice de uma versão anterior) é recalculado a partir do chunk e guardado.
+     */
+    public byte[][] getLeafHashes(String movieId, int chunkIndex) throws IOException {
+        ChunkInfo info = getChunkInfo(movieId, chunkIndex);
+        Path path = getChunkPath(movieId, chunkIndex);
+        if (info == null || path == null) return null;
+
+        byte[][] leaves = info.leaves;
+        if (leaves != null) return leaves;
 
-        for (ChunkInfo chunk : chunks) {
-            if (chunk.getIndex() == chunkIndex) {
-                return chunk;
+        leaves = ChunkDigest.readLeaves(path, info.getSize());
+        if (leaves == null) {
+            ChunkDigest digest = ChunkDigest.of(path);
+            if (!digest.getHash().equals(info.getHash())) {
+                throw new IOException("Chunk " + info + " changed on disk");
             }
+            leaves = digest.getLeaves();
+            ChunkDigest.writeLeaves(path, leaves);
         }
-
-        return null;
+        info.leaves = leaves;
+        return leaves;
     }
 
     public File getChunkFile(String movieId, int chunkIndex) {
-        Path chunksDir = Paths.get(Config.CHUNKS_DIR, movieId);
+        MovieChunks chunks = movieChunks.get(movieId);
+        if (chunks != null && chunkIndex >= 0 && chunkIndex < chunks.files.length
+                && chunks.files[chunkIndex] != null) {
+            return chunks.files[chunkIndex];
+        }
 
-        // Procurar arquivo pelo índice
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(chunksDir,
-                "chunk_" + chunkIndex + "_*.bin")) {
+        // Fallback: nome simples (chunk ainda não registado)
+        Path chunkPath = Paths.get(Config.CHUNKS_DIR, movieId).resolve("chunk_" + chunkIndex + ".bin");
+        return chunkPath.toFile();
+    }
 
-            for (Path chunkPath : stream) {
-                return chunkPath.toFile();
+    /**
+     * Remove o filme do registo e apaga o respetivo diretório de chunks.
+     */
+    public void deleteMovieChunks(String movieId) throws IOException {
+        publish(movieId, null);
+        String prefix = movieId + "_";
+        chunkPeers.keySet().removeIf(chunkId -> chunkId.startsWith(prefix));
+
+        Path chunksDir = Paths.get(Config.CHUNKS_DIR, movieId);
+        if (Files.exists(chunksDir)) {
+            try (var paths = Files.walk(chunksDir)) {
+                paths.sorted(Comparator.reverseOrder())
+                        .map(Path::toFile)
+                        .forEach(File::delete);
             }
+        }
+    }
 
+    /**
+     * Substitui (ou remove, com null) o registo do filme e acerta as referências ao store:
+     * primeiro retém os chunks novos, depois liberta os antigos, para que chunks comuns aos
+     * dois nunca cheguem a zero referências.
+     */
+    private void publish(String movieId, MovieChunks next) {
+        MovieChunks prev = next != null ? movieChunks.put(movieId, next) : movieChunks.remove(movieId);
+        if (next != null && next.cdc) chunkStore.retain(next.hashes());
+        if (prev != null && prev.cdc) chunkStore.release(prev.hashes());
+    }
+
+    // Apaga chunks (e respetivas folhas/temporários) de um split anterior que não fazem parte do split atual
+    private static void deleteStaleChunkFiles(Path chunksDir, List<String> current) {
+        Set<String> keep = new HashSet<>(current);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(chunksDir, "*.{bin,leaves,tmp}")) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                if (name.endsWith(ChunkDigest.LEAVES_SUFFIX)) {
+                    name = name.substring(0, name.length() - ChunkDigest.LEAVES_SUFFIX.length());
+                }
+                if (!keep.contains(name)) {
+                    Files.deleteIfExists(f);
+                }
+            }
         } catch (IOException e) {
-            // Arquivo não encontrado
+            System.err.println("Failed to clean stale chunks in " + chunksDir + ": " + e.getMessage());
         }
-
-        // Fallback: nome simples
-        Path chunkPath = chunksDir.resolve("chunk_" + chunkIndex + ".bin");
-        return chunkPath.toFile();
     }
 
     public void registerPeerForChunk(String chunkId, String peerAddress) {
@@ -204,7 +848,7 @@ public class ChunkManager {
         Map<String, Object> info = new HashMap<>();
         info.put("movieId", movieId);
 
-        List<ChunkInfo> chunks = movieChunks.get(movieId);
+        MovieChunks chunks = movieChunks.get(movieId);
         if (chunks == null) {
             info.put("chunks", new ArrayList<>());
             info.put("count", 0);
@@ -212,7 +856,7 @@ public class ChunkManager {
         }
 
         List<Map<String, Object>> chunkList = new ArrayList<>();
-        for (ChunkInfo chunk : chunks) {
+        for (ChunkInfo chunk : chunks.ordered) {
             Map<String, Object> chunkMap = new HashMap<>();
             chunkMap.put("index", chunk.getIndex());
             chunkMap.put("hash", chunk.getHash());
@@ -226,13 +870,104 @@ public class ChunkManager {
         }
 
         info.put("chunks", chunkList);
-        info.put("count", chunks.size());
-        info.put("totalSize", chunks.stream().mapToLong(ChunkInfo::getSize).sum());
+        info.put("count", chunks.ordered.size());
+        info.put("totalSize", chunks.totalSize);
+        info.put("chunkSize", chunks.chunkSize);
+        info.put("chunking", chunks.cdc ? "cdc" : "fixed");
 
         return info;
     }
 
-    private int extractChunkIndex(String fileName) {
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("movies", movieChunks.size());
+        stats.put("chunks", movieChunks.values().stream().mapToInt(m -> m.ordered.size()).sum());
+        stats.put("loadedFromIndex", indexedChunks);
+        stats.put("rehashedAtStartup", rehashedChunks);
+        stats.put("startupLoadMs", loadMillis);
+        stats.put("cdcMovies", movieChunks.values().stream().filter(m -> m.cdc).count());
+        stats.put("chunkStore", chunkStore.getStats());
+        return stats;
+    }
+
+    private static ExecutorService newDaemonPool(String name, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Pool de buffers de chunk com orçamento em bytes: quem pede bloqueia enquanto os buffers
+     * em uso (escritos pelos writers) ocupam o orçamento todo. Buffers livres são reutilizados
+     * por tamanho exato; buffers maiores que meio orçamento contam como meio orçamento.
+     */
+    private static final class BufferPool {
+        private static final int UNIT = 64 * 1024;
+
+        private final Semaphore permits;
+        private final int budgetUnits;
+        private final Map<Integer, Deque<byte[]>> free = new HashMap<>();
+        private long freeUnits;
+
+        BufferPool(long budgetBytes) {
+            this.budgetUnits = (int) Math.max(1, budgetBytes / UNIT);
+            this.permits = new Semaphore(budgetUnits);
+        }
+
+        // Maior buffer aceite: dois têm de caber no orçamento
+        int maxBufferSize() {
+            return Math.max(1, budgetUnits / 2) * UNIT;
+        }
+
+        byte[] acquire(int size) throws InterruptedIOException {
+            if (size > maxBufferSize()) {
+                throw new IllegalArgumentException("Buffer of " + size + " bytes exceeds the split buffer budget");
+            }
+            try {
+                permits.acquire(units(size));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a chunk buffer");
+            }
+            synchronized (this) {
+                Deque<byte[]> buffers = free.get(size);
+                if (buffers != null && !buffers.isEmpty()) {
+                    freeUnits -= units(size);
+                    return buffers.pop();
+                }
+            }
+            return new byte[size];
+        }
+
+        void release(byte[] buffer) {
+            int units = units(buffer.length);
+            synchronized (this) {
+                // Buffers livres também contam para o orçamento: primeiro saem os de outros
+                // tamanhos (splits anteriores); se ainda não couber, este fica para o GC
+                Iterator<Map.Entry<Integer, Deque<byte[]>>> it = free.entrySet().iterator();
+                while (freeUnits + units > budgetUnits && it.hasNext()) {
+                    Map.Entry<Integer, Deque<byte[]>> e = it.next();
+                    if (e.getKey() == buffer.length) continue;
+                    freeUnits -= (long) units(e.getKey()) * e.getValue().size();
+                    it.remove();
+                }
+                if (freeUnits + units <= budgetUnits) {
+                    free.computeIfAbsent(buffer.length, k -> new ArrayDeque<>()).push(buffer);
+                    freeUnits += units;
+                }
+            }
+            permits.release(units);
+        }
+
+        private int units(int size) {
+            return (int) (((long) size + UNIT - 1) / UNIT);
+        }
+    }
+
+    private static int extractChunkIndex(String fileName) {
         try {
             // Formato: chunk_X_hash.bin ou chunk_X.bin
             String[] parts = fileName.split("_");
@@ -242,24 +977,95 @@ public class ChunkManager {
         }
     }
 
+    /**
+     * Chunks de um filme indexados pela posição: arrays (índice do chunk -> info/caminho),
+     * com null nas posições em falta. Imutável depois de construído.
+     */
+    private static final class MovieChunks {
+        final ChunkInfo[] byIndex;
+        final Path[] paths;
+        final File[] files;
+        final List<ChunkInfo> ordered;
+        final List<String> availableNames;
+        final long totalSize;
+        final int chunkSize;
+        final boolean cdc;
+
+        MovieChunks(Path chunksDir, List<ChunkInfo> chunks, int chunkSize, boolean cdc) {
+            this.chunkSize = chunkSize;
+            this.cdc = cdc;
+            int max = -1;
+            for (ChunkInfo c : chunks) max = Math.max(max, c.getIndex());
+
+            this.byIndex = new ChunkInfo[max + 1];
+            this.paths = new Path[max + 1];
+            this.files = new File[max + 1];
+            for (ChunkInfo c : chunks) {
+                int i = c.getIndex();
+                if (i < 0) continue;
+                // Índice repetido (restos de um split antigo): fica o ficheiro mais recente
+                if (byIndex[i] != null && byIndex[i].getLastModified() > c.getLastModified()) continue;
+                byIndex[i] = c;
+                paths[i] = chunksDir.resolve(c.getFileName());
+                files[i] = paths[i].toFile();
+            }
+
+            List<ChunkInfo> sorted = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            long total = 0;
+            for (ChunkInfo c : byIndex) {
+                if (c == null) continue;
+                sorted.add(c);
+                total += c.getSize();
+                if (c.isAvailable()) names.add(c.getFileName());
+            }
+            this.ordered = Collections.unmodifiableList(sorted);
+            this.availableNames = Collections.unmodifiableList(names);
+            this.totalSize = total;
+        }
+
+        ChunkInfo info(int index) {
+            return index >= 0 && index < byIndex.length ? byIndex[index] : null;
+        }
+
+        List<String> hashes() {
+            List<String> hashes = new ArrayList<>(ordered.size());
+            for (ChunkInfo c : ordered) hashes.add(c.getHash());
+            return hashes;
+        }
+    }
+
     // Classe interna para informações do chunk
     public static class ChunkInfo {
         private int index;
         private String hash;
         private long size;
         private boolean available;
+        private String fileName;
+        private long lastModified;
+        volatile byte[][] leaves; // folhas Merkle, carregadas a pedido
 
         public ChunkInfo(int index, String hash, long size, boolean available) {
+            this(index, hash, size, available,
+                    "chunk_" + index + "_" + hash.substring(0, 8) + ".bin", 0);
+        }
+
+        public ChunkInfo(int index, String hash, long size, boolean available,
+                         String fileName, long lastModified) {
             this.index = index;
             this.hash = hash;
             this.size = size;
             this.available = available;
+            this.fileName = fileName;
+            this.lastModified = lastModified;
         }
 
         public int getIndex() { return index; }
         public String getHash() { return hash; }
         public long getSize() { return size; }
         public boolean isAvailable() { return available; }
+        public String getFileName() { return fileName; }
+        public long getLastModified() { return lastModified; }
 
         public void setAvailable(boolean available) { this.available = available; }
 
@@ -0,0 +1,156 @@
+package org.netflixpp.mesh;
+
+import org.netflixpp.config.Config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Armazenamento de chunks endereçado por hash ({@code CHUNK_STORE_DIR/ab/<sha256>.bin}),
+ * usado pelos filmes em modo CDC. Cada filme referencia os chunks por hard link a partir do
+ * seu diretório, por isso o mesh/P2P continuam a servir os ficheiros do diretório do filme.
+ *
+ * As referências são contadas por ocorrência nos filmes registados; um chunk só é apagado
+ * do store quando nenhum filme o referencia (apagar um filme nunca remove dados de outro).
+ */
+public class ChunkStore {
+
+    private final Path root;
+    private final Map<String, Integer> refs = new HashMap<>();
+
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder dedupHits = new LongAdder();
+    private final LongAdder dedupBytes = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+
+    ChunkStore(Path root) {
+        this.root = root;
+    }
+
+    Path pathFor(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash + ".bin");
+    }
+
+    boolean contains(String hash) {
+        return Files.exists(pathFor(hash));
+    }
+
+    /**
+     * Guarda o chunk se ainda não existir. Devolve true se foi escrito agora (deve ser
+     * replicado), false se já existia.
+     */
+    boolean put(String hash, byte[] data, int length, byte[][] leaves) throws IOException {
+        Path target = pathFor(hash);
+        if (Files.exists(target)) {
+            dedupHits.increment();
+            dedupBytes.add(length);
+            return false;
+        }
+
+        Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(hash + "." + Thread.currentThread().getId() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer src = ByteBuffer.wrap(data, 0, length);
+            while (src.hasRemaining()) out.write(src);
+        }
+        ChunkDigest.writeLeaves(target, leaves);
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Outro writer guardou o mesmo conteúdo entretanto
+            Files.deleteIfExists(tmp);
+            dedupHits.increment();
+            dedupBytes.add(length);
+            return false;
+        }
+        stored.increment();
+        return true;
+    }
+
+    /**
+     * Cria (ou substitui) o hard link do diretório do filme para o chunk do store.
+     * Em sistemas de ficheiros sem hard links faz uma cópia.
+     */
+    void link(String hash, Path link) throws IOException {
+        Path target = pathFor(hash);
+        Files.deleteIfExists(link);
+        try {
+            Files.createLink(link, target);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(target, link, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    synchronized void retain(Collection<String> hashes) {
+        for (String h : hashes) {
+            refs.merge(h, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Liberta referências e apaga do store os chunks que deixaram de ser usados.
+     */
+    synchronized void release(Collection<String> hashes) {
+        for (String h : hashes) {
+            Integer left = refs.computeIfPresent(h, (k, n) -> n > 1 ? n - 1 : null);
+            if (left == null) {
+                delete(h);
+            }
+        }
+    }
+
+    /**
+     * Remove do store os chunks sem referências (ex.: split interrompido antes de registar
+     * o filme). Chamado no arranque, depois de carregar os filmes.
+     */
+    synchronized int sweep() {
+        if (!Files.isDirectory(root)) return 0;
+        int removed = 0;
+        try (var files = Files.walk(root, 2)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                String name = f.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(f);
+                } else if (name.endsWith(".bin")) {
+                    String hash = name.substring(0, name.length() - 4);
+                    if (!refs.containsKey(hash)) {
+                        delete(hash);
+                        removed++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Chunk store sweep failed: " + e.getMessage());
+        }
+        return removed;
+    }
+
+    private void delete(String hash) {
+        Path path = pathFor(hash);
+        try {
+            Files.deleteIfExists(ChunkDigest.leavesPath(path));
+            if (Files.deleteIfExists(path)) deleted.increment();
+        } catch (IOException e) {
+            System.err.println("Failed to delete stored chunk " + hash + ": " + e.getMessage());
+        }
+    }
+
+    static String gcsObjectName(String hash) {
+        return Config.GCS_CHUNK_STORE_PATH_TEMPLATE.replace("{hash}", hash);
+    }
+
+    synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("referencedChunks", refs.size());
+        stats.put("stored", stored.sum());
+        stats.put("dedupHits", dedupHits.sum());
+        stats.put("dedupBytes", dedupBytes.sum());
+        stats.put("deleted", deleted.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,72 @@
+package org.netflixpp.mesh;
+
+import java.util.Random;
+
+/**
+ * Fronteiras de chunk definidas pelo conteúdo (FastCDC, com normalização de nível 2).
+ *
+ * Um gear hash rolante percorre os bytes e corta quando os bits de cima do hash batem com
+ * uma máscara: como a decisão depende só dos últimos ~64 bytes, inserir ou remover dados
+ * num ponto do ficheiro apenas muda os chunks à volta desse ponto, e conteúdo igual em
+ * ficheiros diferentes gera os mesmos chunks.
+ */
+public final class FastCdc {
+
+    // Tabela fixa: mudar a semente muda todas as fronteiras (e invalida a deduplicação)
+    private static final long[] GEAR = new long[256];
+    static {
+        Random random = new Random(0x6E6574666C697870L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** Tamanho máximo de um chunk em múltiplos do tamanho médio. */
+    public static final int MAX_FACTOR = 4;
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskS; // mais bits: cortes menos prováveis antes do tamanho médio
+    private final long maskL; // menos bits: cortes mais prováveis depois do tamanho médio
+
+    public FastCdc(int avgSize) {
+        this.avgSize = avgSize;
+        this.minSize = Math.max(64, avgSize / 4);
+        this.maxSize = avgSize * MAX_FACTOR;
+        int bits = 63 - Long.numberOfLeadingZeros(Math.max(avgSize, 256));
+        this.maskS = topBits(bits + 2);
+        this.maskL = topBits(bits - 2);
+    }
+
+    public int getMinSize() { return minSize; }
+    public int getAvgSize() { return avgSize; }
+    public int getMaxSize() { return maxSize; }
+
+    /**
+     * Comprimento do próximo chunk em data[0, length). Se não houver fronteira antes de
+     * maxSize (ou do fim dos dados), devolve esse limite.
+     */
+    public int cut(byte[] data, int length) {
+        if (length <= minSize) return length;
+        int end = Math.min(length, maxSize);
+        int normal = Math.min(end, avgSize);
+
+        long fp = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            fp = (fp << 1) + GEAR[data[i] & 0xFF];
+            if ((fp & maskS) == 0) return i + 1;
+        }
+        for (; i < end; i++) {
+            fp = (fp << 1) + GEAR[data[i] & 0xFF];
+            if ((fp & maskL) == 0) return i + 1;
+        }
+        return end;
+    }
+
+    private static long topBits(int n) {
+        n = Math.max(1, Math.min(63, n));
+        return -1L << (64 - n);
+    }
+}
@@ -1,80 +1,140 @@
 package org.netflixpp.mesh;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.*;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.netflixpp.config.Config;
-import com.sun.net.httpserver.*;
+
 import java.io.*;
-import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
 
+/**
+ * Servidor HTTP do mesh sobre Jetty: pool de threads limitado (QueuedThreadPool),
+ * keep-alive HTTP/1.1 e HTTP/2 em claro (h2c, por upgrade ou prior knowledge) no mesmo
+ * porto. As respostas JSON são escritas diretamente no output com o gerador de streaming
+ * do Jackson.
+ */
 public class MeshServer {
-    private HttpServer server;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private Server server;
     private ChunkManager chunkManager;
     private Map<String, List<String>> activePeers; // peerId -> [address, chunks]
 
     public MeshServer() {
-        this.chunkManager = new ChunkManager();
+        this.chunkManager = ChunkManager.getInstance();
         this.activePeers = new ConcurrentHashMap<>();
     }
 
-    public void start() throws IOException {
-        server = HttpServer.create(new InetSocketAddress(Config.P2P_PORT), 0);
+    public void start() throws Exception {
+        QueuedThreadPool threads = new QueuedThreadPool(
+                Config.MESH_MAX_THREADS, Config.MESH_MIN_THREADS, 60_000);
+        threads.setName("mesh-http");
+        server = new Server(threads);
 
-        // Endpoints do mesh
-        server.createContext("/chunks", this::handleChunks);
-        server.createContext("/peer", this::handlePeer);
-        server.createContext("/health", this::handleHealth);
-        server.createContext("/download", this::handleDownload);
+        HttpConfiguration http = new HttpConfiguration();
+        http.setSendServerVersion(false);
+        HTTP2CServerConnectionFactory h2c = new HTTP2CServerConnectionFactory(http);
+        h2c.setMaxConcurrentStreams(Config.MESH_H2_MAX_STREAMS);
+
+        ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(http), h2c);
+        connector.setPort(Config.P2P_PORT);
+        connector.setIdleTimeout(Config.MESH_IDLE_TIMEOUT_MS);
+        connector.setAcceptQueueSize(Config.MESH_ACCEPT_QUEUE);
+        server.addConnector(connector);
 
-        server.setExecutor(Executors.newFixedThreadPool(10));
+        // Endpoints do mesh
+        server.setHandler(new MeshHandler());
         server.start();
 
-        System.out.println("Mesh HTTP Server started on port " + Config.P2P_PORT);
+        System.out.println("Mesh HTTP Server (Jetty, HTTP/1.1 + h2c) started on port " + Config.P2P_PORT);
     }
 
     public void stop() {
         if (server != null) {
-            server.stop(0);
+            try {
+                server.stop();
+            } catch (Exception e) {
+                System.err.println("[MESH] Stop failed: " + e.getMessage());
+            }
         }
     }
 
-    private void handleChunks(HttpExchange exchange) throws IOException {
+    private class MeshHandler extends AbstractHandler {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+            baseRequest.setHandled(true);
+            if (target.startsWith("/chunks")) {
+                handleChunks(target, response);
+            } else if (target.startsWith("/peer")) {
+                handlePeer(request, response);
+            } else if (target.startsWith("/health")) {
+                handleHealth(response);
+            } else if (target.startsWith("/download")) {
+                handleDownload(request, response);
+            } else if (target.startsWith("/leaves")) {
+                handleLeaves(request, response);
+            } else {
+                sendError(response, 404, "Not found");
+            }
+        }
+    }
+
+    private void handleChunks(String path, HttpServletResponse response) throws IOException {
         try {
-            String path = exchange.getRequestURI().getPath();
             String[] parts = path.split("/");
 
             if (parts.length < 3) {
-                sendResponse(exchange, 400, "{\"error\":\"Missing movieId\"}");
+                sendError(response, 400, "Missing movieId");
                 return;
             }
 
             String movieId = parts[2];
             List<String> chunks = chunkManager.getAvailableChunks(movieId);
+            int chunkSize = chunkManager.getChunkSize(movieId);
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("movieId", movieId);
-            response.put("chunks", chunks);
-            response.put("count", chunks.size());
-            response.put("chunkSize", Config.CHUNK_SIZE);
-
-            sendResponse(exchange, 200, toJson(response));
+            sendJson(response, 200, gen -> {
+                gen.writeStringField("movieId", movieId);
+                gen.writeArrayFieldStart("chunks");
+                for (String chunk : chunks) {
+                    gen.writeString(chunk);
+                }
+                gen.writeEndArray();
+                gen.writeNumberField("count", chunks.size());
+                gen.writeNumberField("chunkSize", chunkSize);
+            });
 
         } catch (Exception e) {
-            sendResponse(exchange, 500, "{\"error\":\"" + e.getMessage() + "\"}");
+            sendError(response, 500, e.getMessage());
         }
     }
 
-    private void handlePeer(HttpExchange exchange) throws IOException {
+    private void handlePeer(HttpServletRequest request, HttpServletResponse response) throws IOException {
         try {
-            if ("POST".equals(exchange.getRequestMethod())) {
+            if ("POST".equals(request.getMethod())) {
                 // Registrar peer
-                String body = readBody(exchange);
-                Map<String, String> data = parseJson(body);
+                Map<String, String> data = parseJson(request.getInputStream());
 
                 String peerId = data.get("peerId");
                 String address = data.get("address");
                 String chunks = data.get("chunks");
+                if (peerId == null) {
+                    sendError(response, 400, "Missing peerId");
+                    return;
+                }
 
                 List<String> peerInfo = new ArrayList<>();
                 peerInfo.add(address);
@@ -84,142 +144,275 @@ public class MeshServer {
 
                 activePeers.put(peerId, peerInfo);
 
-                Map<String, Object> response = new HashMap<>();
-                response.put("status", "registered");
-                response.put("peerId", peerId);
-                response.put("totalPeers", activePeers.size());
-
-                sendResponse(exchange, 200, toJson(response));
+                sendJson(response, 200, gen -> {
+                    gen.writeStringField("status", "registered");
+                    gen.writeStringField("peerId", peerId);
+                    gen.writeNumberField("totalPeers", activePeers.size());
+                });
 
-            } else if ("GET".equals(exchange.getRequestMethod())) {
+            } else if ("GET".equals(request.getMethod())) {
                 // Listar peers
-                Map<String, Object> response = new HashMap<>();
-                response.put("peers", new ArrayList<>(activePeers.keySet()));
-                response.put("count", activePeers.size());
-
-                sendResponse(exchange, 200, toJson(response));
+                sendJson(response, 200, gen -> {
+                    gen.writeArrayFieldStart("peers");
+                    for (String peerId : activePeers.keySet()) {
+                        gen.writeString(peerId);
+                    }
+                    gen.writeEndArray();
+                    gen.writeNumberField("count", activePeers.size());
+                });
+            } else {
+                sendError(response, 405, "Method not allowed");
             }
 
         } catch (Exception e) {
-            sendResponse(exchange, 500, "{\"error\":\"" + e.getMessage() + "\"}");
+            sendError(response, 500, e.getMessage());
         }
     }
 
-    private void handleDownload(HttpExchange exchange) throws IOException {
+    /**
+     * GET/HEAD /download?movieId=...&chunk=N
+     *
+     * O ficheiro é resolvido pelo registo de chunks e enviado sem cópia para a heap
+     * (região mapeada entregue ao Jetty). Suporta um único intervalo "Range: bytes=...",
+     * ETag (hash SHA-256 do chunk) e If-None-Match / If-Range.
+     */
+    private void handleDownload(HttpServletRequest request, HttpServletResponse response) throws IOException {
         try {
-            String query = exchange.getRequestURI().getQuery();
-            Map<String, String> params = parseQuery(query);
+            String movieId = request.getParameter("movieId");
+            String chunkParam = request.getParameter("chunk");
+
+            if (movieId == null || chunkParam == null) {
+                sendError(response, 400, "Missing parameters");
+                return;
+            }
 
-            String movieId = params.get("movieId");
-            String chunkIndex = params.get("chunk");
+            int chunkIndex;
+            try {
+                chunkIndex = Integer.parseInt(chunkParam);
+            } catch (NumberFormatException e) {
+                sendError(response, 400, "Invalid chunk index");
+                return;
+            }
 
-            if (movieId == null || chunkIndex == null) {
-                sendResponse(exchange, 400, "{\"error\":\"Missing parameters\"}");
+            Path chunkPath = chunkManager.getChunkPath(movieId, chunkIndex);
+            ChunkManager.ChunkInfo info = chunkManager.getChunkInfo(movieId, chunkIndex);
+            if (chunkPath == null || info == null || !Files.isRegularFile(chunkPath)) {
+                sendError(response, 404, "Chunk not found");
                 return;
             }
 
-            Path chunkPath = Paths.get(Config.CHUNKS_DIR, movieId,
-                    "chunk_" + chunkIndex + ".bin");
+            String etag = "\"" + info.getHash() + "\"";
+            response.setContentType("application/octet-stream");
+            response.setHeader("Accept-Ranges", "bytes");
+            response.setHeader("ETag", etag);
+            response.setHeader("Cache-Control", "public, max-age=31536000, immutable"); // conteúdo endereçado por hash
 
-            if (!Files.exists(chunkPath)) {
-                sendResponse(exchange, 404, "{\"error\":\"Chunk not found\"}");
+            if (etagMatches(request.getHeader("If-None-Match"), etag)) {
+                response.setStatus(304);
                 return;
             }
 
-            // Enviar arquivo
-            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
-            exchange.sendResponseHeaders(200, Files.size(chunkPath));
+            boolean head = "HEAD".equals(request.getMethod());
+            try (FileChannel channel = FileChannel.open(chunkPath, StandardOpenOption.READ)) {
+                long size = channel.size();
+                long start = 0;
+                long length = size;
+                int status = 200;
+
+                String range = request.getHeader("Range");
+                String ifRange = request.getHeader("If-Range");
+                if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                    long[] r = parseRange(range, size);
+                    if (r == null) {
+                        response.setHeader("Content-Range", "bytes */" + size);
+                        response.setStatus(416);
+                        return;
+                    }
+                    if (r.length == 2) {
+                        start = r[0];
+                        length = r[1] - r[0] + 1;
+                        status = 206;
+                        response.setHeader("Content-Range", "bytes " + r[0] + "-" + r[1] + "/" + size);
+                    }
+                }
 
-            try (OutputStream os = exchange.getResponseBody();
-                 InputStream is = Files.newInputStream(chunkPath)) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = is.read(buffer)) != -1) {
-                    os.write(buffer, 0, bytesRead);
+                response.setStatus(status);
+                response.setContentLengthLong(length);
+                if (head || length == 0) {
+                    return;
+                }
+
+                OutputStream os = response.getOutputStream();
+                if (os instanceof HttpOutput out) {
+                    out.sendContent(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+                } else {
+                    WritableByteChannel out = Channels.newChannel(os);
+                    long position = start;
+                    long remaining = length;
+                    while (remaining > 0) {
+                        long sent = channel.transferTo(position, remaining, out);
+                        if (sent <= 0) break;
+                        position += sent;
+                        remaining -= sent;
+                    }
                 }
             }
 
         } catch (Exception e) {
-            sendResponse(exchange, 500, "{\"error\":\"" + e.getMessage() + "\"}");
+            if (response.isCommitted()) {
+                // Resposta já começada: o Jetty fecha a ligação/stream
+                System.err.println("[MESH] Download aborted: " + e.getMessage());
+            } else {
+                sendError(response, 500, e.getMessage());
+            }
         }
     }
 
-    private void handleHealth(HttpExchange exchange) throws IOException {
-        sendResponse(exchange, 200, "{\"status\":\"healthy\",\"peers\":" + activePeers.size() + "}");
-    }
+    /**
+     * GET /leaves?movieId=...&chunk=N
+     *
+     * Hashes das folhas Merkle do chunk, para o cliente validar blocos de um download
+     * (ou de pedidos Range) e retomar a partir da primeira folha inválida.
+     */
+    private void handleLeaves(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            String movieId = request.getParameter("movieId");
+            String chunkParam = request.getParameter("chunk");
 
-    // Métodos auxiliares
-    private String readBody(HttpExchange exchange) throws IOException {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(exchange.getRequestBody()))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line);
-            }
-            return sb.toString();
+            if (movieId == null || chunkParam == null) {
+                sendError(response, 400, "Missing parameters");
+                return;
+            }
+
+            int chunkIndex;
+            try {
+                chunkIndex = Integer.parseInt(chunkParam);
+            } catch (NumberFormatException e) {
+                sendError(response, 400, "Invalid chunk index");
+                return;
+            }
+
+            ChunkManager.ChunkInfo info = chunkManager.getChunkInfo(movieId, chunkIndex);
+            byte[][] leaves = chunkManager.getLeafHashes(movieId, chunkIndex);
+            if (info == null || leaves == null) {
+                sendError(response, 404, "Chunk not found");
+                return;
+            }
+
+            HexFormat hex = HexFormat.of();
+            response.setHeader("Cache-Control", "public, max-age=31536000, immutable");
+            sendJson(response, 200, gen -> {
+                gen.writeStringField("movieId", movieId);
+                gen.writeNumberField("chunk", chunkIndex);
+                gen.writeStringField("hash", info.getHash());
+                gen.writeNumberField("size", info.getSize());
+                gen.writeNumberField("leafSize", ChunkDigest.LEAF_SIZE);
+                gen.writeStringField("merkleRoot", hex.formatHex(ChunkDigest.merkleRoot(leaves)));
+                gen.writeArrayFieldStart("leaves");
+                for (byte[] leaf : leaves) {
+                    gen.writeString(hex.formatHex(leaf));
+                }
+                gen.writeEndArray();
+            });
+
+        } catch (Exception e) {
+            sendError(response, 500, e.getMessage());
         }
     }
 
-    private void sendResponse(HttpExchange exchange, int code, String response) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(code, response.getBytes().length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.startsWith("W/")) c = c.substring(2);
+            if (c.equals("*") || c.equals(etag)) return true;
         }
+        return false;
     }
 
-    private Map<String, String> parseJson(String json) {
-        Map<String, String> map = new HashMap<>();
+    /**
+     * Interpreta "bytes=a-b", "bytes=a-" ou "bytes=-n" para um ficheiro de tamanho size.
+     * Devolve {início, fim} inclusivos, um array vazio se o header deve ser ignorado
+     * (formato desconhecido ou vários intervalos) ou null se o intervalo não é satisfazível.
+     */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) return new long[0];
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return new long[0];
+
         try {
-            json = json.replace("{", "").replace("}", "").replace("\"", "");
-            String[] pairs = json.split(",");
-            for (String pair : pairs) {
-                String[] keyValue = pair.split(":");
-                if (keyValue.length == 2) {
-                    map.put(keyValue[0].trim(), keyValue[1].trim());
+            String a = spec.substring(0, dash).trim();
+            String b = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (a.isEmpty()) {
+                if (b.isEmpty()) return new long[0];
+                long suffix = Long.parseLong(b);
+                if (suffix <= 0) return null;
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(a);
+                if (b.isEmpty()) {
+                    end = size - 1;
+                } else {
+                    long last = Long.parseLong(b);
+                    if (last < start) return new long[0]; // sintaticamente inválido: ignorar
+                    end = Math.min(last, size - 1);
                 }
             }
-        } catch (Exception e) {
-            // JSON simples
+            if (start >= size) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
         }
-        return map;
     }
 
-    private Map<String, String> parseQuery(String query) {
-        Map<String, String> params = new HashMap<>();
-        if (query != null) {
-            for (String param : query.split("&")) {
-                String[] pair = param.split("=");
-                if (pair.length == 2) {
-                    params.put(pair[0], pair[1]);
-                }
-            }
+    private void handleHealth(HttpServletResponse response) throws IOException {
+        sendJson(response, 200, gen -> {
+            gen.writeStringField("status", "healthy");
+            gen.writeNumberField("peers", activePeers.size());
+        });
+    }
+
+    // Métodos auxiliares
+    private interface JsonBody {
+        void write(JsonGenerator gen) throws IOException;
+    }
+
+    // Escreve {campos...} diretamente no output da resposta
+    private static void sendJson(HttpServletResponse response, int status, JsonBody body) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        try (JsonGenerator gen = JSON.createGenerator(response.getOutputStream())) {
+            gen.writeStartObject();
+            body.write(gen);
+            gen.writeEndObject();
         }
-        return params;
     }
 
-    private String toJson(Map<String, Object> map) {
-        StringBuilder sb = new StringBuilder("{");
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (sb.length() > 1) sb.append(",");
-            sb.append("\"").append(entry.getKey()).append("\":");
-
-            Object value = entry.getValue();
-            if (value instanceof String) {
-                sb.append("\"").append(value).append("\"");
-            } else if (value instanceof List) {
-                sb.append("[");
-                List<?> list = (List<?>) value;
-                for (int i = 0; i < list.size(); i++) {
-                    if (i > 0) sb.append(",");
-                    sb.append("\"").append(list.get(i)).append("\"");
+    private static void sendError(HttpServletResponse response, int status, String message) throws IOException {
+        sendJson(response, status, gen -> gen.writeStringField("error", String.valueOf(message)));
+    }
+
+    // Objeto JSON simples: valores escalares ficam como texto, objetos/arrays são ignorados
+    private static Map<String, String> parseJson(InputStream body) throws IOException {
+        Map<String, String> map = new HashMap<>();
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return map;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                } else if (value != JsonToken.VALUE_NULL) {
+                    map.put(name, parser.getText());
                 }
-                sb.append("]");
-            } else {
-                sb.append(value);
             }
         }
-        sb.append("}");
-        return sb.toString();
+        return map;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package org.netflixpp.mesh;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Protocolo binário do P2P TCP (porta P2P_PORT + 1).
+ *
+ * Cada frame: {@code [int length][byte type][int requestId][payload]}, em que length conta
+ * os bytes a seguir ao próprio campo. As ligações são persistentes: o peer pode enviar
+ * vários pedidos seguidos (pipelining) e as respostas chegam pela mesma ordem, com o
+ * requestId do pedido. Strings: {@code [short n][n bytes UTF-8]}.
+ *
+ * <pre>
+ * HELLO       -> HELLO      str serverInfo
+ * PING        -> PONG
+ * GET_CHUNKS  str movieId                         -> CHUNKS int chunkSize, int n, n x str fileName
+ * GET_CHUNK   str movieId, int index,
+ *             long offset, long length (-1 = fim) -> CHUNK  str hash, long chunkSize,
+ *                                                           long offset, long length, bytes
+ * GET_LEAVES  str movieId, int index              -> LEAVES str hash, long chunkSize,
+ *                                                           int leafSize, str merkleRoot,
+ *                                                           int n, n x 32 bytes (SHA-256)
+ * (qualquer)                                      -> ERROR  str message
+ * </pre>
+ *
+ * O hash e as folhas vêm do registo (calculados no split). Para validar/retomar uma
+ * transferência, o recetor pede LEAVES, verifica cada bloco de leafSize bytes à medida que
+ * chega e, após uma falha, volta a pedir GET_CHUNK a partir do offset da primeira folha
+ * por validar.
+ */
+public final class P2PProtocol {
+
+    public static final int VERSION = 4;
+
+    // Pedidos
+    public static final byte HELLO = 0x01;
+    public static final byte PING = 0x02;
+    public static final byte GET_CHUNKS = 0x03;
+    public static final byte GET_CHUNK = 0x04;
+    public static final byte GET_LEAVES = 0x05;
+
+    // Respostas
+    public static final byte HELLO_REPLY = (byte) 0x81;
+    public static final byte PONG = (byte) 0x82;
+    public static final byte CHUNKS = (byte) 0x83;
+    public static final byte CHUNK = (byte) 0x84;
+    public static final byte LEAVES = (byte) 0x85;
+    public static final byte ERROR = (byte) 0xFF;
+
+    // Os pedidos são pequenos; frames maiores são tratados como lixo e fecham a ligação
+    public static final int MAX_REQUEST_FRAME = 64 * 1024;
+
+    private P2PProtocol() {}
+
+    /**
+     * Inicia um frame; o tamanho é preenchido por {@link #finish}.
+     */
+    public static ByteBuf begin(ByteBufAllocator alloc, byte type, int requestId) {
+        ByteBuf buf = alloc.buffer(64);
+        buf.writeInt(0);
+        buf.writeByte(type);
+        buf.writeInt(requestId);
+        return buf;
+    }
+
+    /**
+     * Fecha o frame. trailingBytes = bytes enviados a seguir fora deste buffer (ex.: FileRegion).
+     */
+    public static ByteBuf finish(ByteBuf buf, long trailingBytes) {
+        long length = buf.readableBytes() - 4L + trailingBytes;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Frame too large: " + length);
+        }
+        buf.setInt(0, (int) length);
+        return buf;
+    }
+
+    public static void writeString(ByteBuf buf, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long");
+        }
+        buf.writeShort(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    public static String readString(ByteBuf buf) {
+        int n = buf.readUnsignedShort();
+        String value = buf.toString(buf.readerIndex(), n, StandardCharsets.UTF_8);
+        buf.skipBytes(n);
+        return value;
+    }
+}
@@ -1,151 +1,215 @@
 package org.netflixpp.mesh;
 
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
 import org.netflixpp.config.Config;
-import org.netflixpp.util.HashUtil;
-import java.io.*;
-import java.net.*;
+
 import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.*;
 
+/**
+ * Servidor P2P TCP sobre Netty (event loop), com o protocolo de {@link P2PProtocol}.
+ *
+ * As ligações são persistentes e aceitam pedidos em pipeline. O acesso a disco corre num
+ * grupo de executores próprio (nunca no event loop) e os dados dos chunks são enviados
+ * com DefaultFileRegion (sendfile, sem cópia para a heap).
+ */
 public class P2PServer {
-    private ServerSocket serverSocket;
-    private ExecutorService threadPool;
-    private boolean running;
-    private ChunkManager chunkManager;
+    private final ChunkManager chunkManager;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private EventExecutorGroup fileGroup;
+    private Channel serverChannel;
 
     public P2PServer() {
-        this.threadPool = Executors.newFixedThreadPool(20);
-        this.chunkManager = new ChunkManager();
+        this.chunkManager = ChunkManager.getInstance();
     }
 
-    public void start() throws IOException {
-        serverSocket = new ServerSocket(Config.P2P_PORT + 1); // Porta diferente do HTTP
-        running = true;
-
-        System.out.println("P2P TCP Server started on port " + (Config.P2P_PORT + 1));
-
-        while (running) {
-            Socket clientSocket = serverSocket.accept();
-            threadPool.submit(new PeerHandler(clientSocket));
+    /**
+     * Faz bind e bloqueia até o servidor ser fechado (como o antigo ciclo de accept).
+     */
+    public void start() throws InterruptedException {
+        bossGroup = new NioEventLoopGroup(1);
+        workerGroup = new NioEventLoopGroup();
+        fileGroup = new DefaultEventExecutorGroup(Config.P2P_FILE_THREADS);
+
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                                .addLast(new IdleStateHandler(0, 0, Config.P2P_IDLE_TIMEOUT_SECONDS))
+                                .addLast(new LengthFieldBasedFrameDecoder(
+                                        P2PProtocol.MAX_REQUEST_FRAME, 0, 4, 0, 4))
+                                .addLast(fileGroup, new PeerHandler());
+                    }
+                });
+
+        try {
+            serverChannel = bootstrap.bind(Config.P2P_PORT + 1).sync().channel(); // Porta diferente do HTTP
+            System.out.println("P2P TCP Server (Netty) started on port " + (Config.P2P_PORT + 1));
+            serverChannel.closeFuture().sync();
+        } finally {
+            shutdownGroups();
         }
     }
 
-    public void stop() throws IOException {
-        running = false;
-        threadPool.shutdown();
-        if (serverSocket != null) {
-            serverSocket.close();
+    public void stop() {
+        if (serverChannel != null) {
+            serverChannel.close();
         }
+        shutdownGroups();
     }
 
-    private class PeerHandler implements Runnable {
-        private final Socket socket;
+    private void shutdownGroups() {
+        if (bossGroup != null) bossGroup.shutdownGracefully();
+        if (workerGroup != null) workerGroup.shutdownGracefully();
+        if (fileGroup != null) fileGroup.shutdownGracefully();
+    }
 
-        public PeerHandler(Socket socket) {
-            this.socket = socket;
-        }
+    /**
+     * Um handler por ligação; os pedidos de uma ligação são processados por ordem.
+     */
+    private class PeerHandler extends SimpleChannelInboundHandler<ByteBuf> {
 
         @Override
-        public void run() {
-            try (DataInputStream dis = new DataInputStream(socket.getInputStream());
-                 DataOutputStream dos = new DataOutputStream(socket.getOutputStream())) {
-
-                // Ler comando
-                String command = dis.readUTF();
-                System.out.println("P2P Command: " + command);
-
-                if ("HELLO".equals(command)) {
-                    handleHello(dos);
-                } else if (command.startsWith("GET_CHUNKS")) {
-                    handleGetChunks(command, dos);
-                } else if (command.startsWith("GET_CHUNK")) {
-                    handleGetChunk(command, dis, dos);
-                } else if ("PING".equals(command)) {
-                    handlePing(dos);
-                } else {
-                    dos.writeUTF("ERROR:Unknown command");
-                }
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+            byte type = frame.readByte();
+            int requestId = frame.readInt();
 
-            } catch (Exception e) {
-                System.err.println("P2P Error: " + e.getMessage());
-            } finally {
-                try {
-                    socket.close();
-                } catch (IOException e) {
-                    // Ignore
+            try {
+                switch (type) {
+                    case P2PProtocol.HELLO -> handleHello(ctx, requestId);
+                    case P2PProtocol.PING -> handlePing(ctx, requestId);
+                    case P2PProtocol.GET_CHUNKS -> handleGetChunks(ctx, requestId, frame);
+                    case P2PProtocol.GET_CHUNK -> handleGetChunk(ctx, requestId, frame);
+                    case P2PProtocol.GET_LEAVES -> handleGetLeaves(ctx, requestId, frame);
+                    default -> sendError(ctx, requestId, "Unknown command");
                 }
+            } catch (IndexOutOfBoundsException e) {
+                sendError(ctx, requestId, "Malformed request");
             }
         }
 
-        private void handleHello(DataOutputStream dos) throws IOException {
-            dos.writeUTF("HELLO:NetflixP2P:" + Config.P2P_PORT);
+        private void handleHello(ChannelHandlerContext ctx, int requestId) {
+            ByteBuf buf = P2PProtocol.begin(ctx.alloc(), P2PProtocol.HELLO_REPLY, requestId);
+            P2PProtocol.writeString(buf, "NetflixP2P:" + Config.P2P_PORT + ":v" + P2PProtocol.VERSION);
+            ctx.writeAndFlush(P2PProtocol.finish(buf, 0));
         }
 
-        private void handleGetChunks(String command, DataOutputStream dos) throws IOException {
-            String[] parts = command.split(":");
-            if (parts.length < 2) {
-                dos.writeUTF("ERROR:Missing movieId");
-                return;
-            }
+        private void handlePing(ChannelHandlerContext ctx, int requestId) {
+            ByteBuf buf = P2PProtocol.begin(ctx.alloc(), P2PProtocol.PONG, requestId);
+            ctx.writeAndFlush(P2PProtocol.finish(buf, 0));
+        }
 
-            String movieId = parts[1];
+        private void handleGetChunks(ChannelHandlerContext ctx, int requestId, ByteBuf frame) {
+            String movieId = P2PProtocol.readString(frame);
             List<String> chunks = chunkManager.getAvailableChunks(movieId);
 
-            dos.writeUTF("CHUNKS:" + chunks.size());
+            ByteBuf buf = P2PProtocol.begin(ctx.alloc(), P2PProtocol.CHUNKS, requestId);
+            buf.writeInt(chunkManager.getChunkSize(movieId));
+            buf.writeInt(chunks.size());
             for (String chunk : chunks) {
-                dos.writeUTF(chunk);
+                P2PProtocol.writeString(buf, chunk);
             }
+            ctx.writeAndFlush(P2PProtocol.finish(buf, 0));
         }
 
-        private void handleGetChunk(String command, DataInputStream dis, DataOutputStream dos)
-                throws IOException {
-            String[] parts = command.split(":");
-            if (parts.length < 3) {
-                dos.writeUTF("ERROR:Missing parameters");
+        private void handleGetChunk(ChannelHandlerContext ctx, int requestId, ByteBuf frame)
+                throws Exception {
+            String movieId = P2PProtocol.readString(frame);
+            int chunkIndex = frame.readInt();
+            long offset = frame.readLong();
+            long length = frame.readLong();
+
+            Path chunkPath = chunkManager.getChunkPath(movieId, chunkIndex);
+            ChunkManager.ChunkInfo info = chunkManager.getChunkInfo(movieId, chunkIndex);
+            if (chunkPath == null || info == null || !Files.isRegularFile(chunkPath)) {
+                sendError(ctx, requestId, "Chunk not found");
                 return;
             }
 
-            String movieId = parts[1];
-            int chunkIndex = Integer.parseInt(parts[2]);
-
-            Path chunkPath = Paths.get(Config.CHUNKS_DIR, movieId,
-                    "chunk_" + chunkIndex + ".bin");
-
-            if (!Files.exists(chunkPath)) {
-                dos.writeUTF("ERROR:Chunk not found");
+            // Hash e tamanho vêm do registo (calculados no split), sem ler o ficheiro
+            long chunkSize = info.getSize();
+            if (offset < 0 || offset > chunkSize) {
+                sendError(ctx, requestId, "Invalid offset");
                 return;
             }
+            long count = length < 0 ? chunkSize - offset : Math.min(length, chunkSize - offset);
+
+            ByteBuf header = P2PProtocol.begin(ctx.alloc(), P2PProtocol.CHUNK, requestId);
+            P2PProtocol.writeString(header, info.getHash());
+            header.writeLong(chunkSize);
+            header.writeLong(offset);
+            header.writeLong(count);
+            ctx.write(P2PProtocol.finish(header, count));
+            ctx.writeAndFlush(new DefaultFileRegion(chunkPath.toFile(), offset, count));
+        }
 
-            // Enviar informações do chunk
-            long chunkSize = Files.size(chunkPath);
-            String hash = HashUtil.calculateFileHash(chunkPath.toString());
-
-            dos.writeUTF("CHUNK_INFO:" + chunkSize + ":" + hash);
+        private void handleGetLeaves(ChannelHandlerContext ctx, int requestId, ByteBuf frame)
+                throws Exception {
+            String movieId = P2PProtocol.readString(frame);
+            int chunkIndex = frame.readInt();
 
-            // Aguardar confirmação
-            String ack = dis.readUTF();
-            if (!"READY".equals(ack)) {
+            ChunkManager.ChunkInfo info = chunkManager.getChunkInfo(movieId, chunkIndex);
+            byte[][] leaves = chunkManager.getLeafHashes(movieId, chunkIndex);
+            if (info == null || leaves == null) {
+                sendError(ctx, requestId, "Chunk not found");
                 return;
             }
 
-            // Enviar dados do chunk
-            try (InputStream is = Files.newInputStream(chunkPath)) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                long totalSent = 0;
-
-                while (totalSent < chunkSize && (bytesRead = is.read(buffer)) != -1) {
-                    dos.write(buffer, 0, bytesRead);
-                    totalSent += bytesRead;
-                }
+            ByteBuf buf = P2PProtocol.begin(ctx.alloc(), P2PProtocol.LEAVES, requestId);
+            P2PProtocol.writeString(buf, info.getHash());
+            buf.writeLong(info.getSize());
+            buf.writeInt(ChunkDigest.LEAF_SIZE);
+            P2PProtocol.writeString(buf, HexFormat.of().formatHex(ChunkDigest.merkleRoot(leaves)));
+            buf.writeInt(leaves.length);
+            for (byte[] leaf : leaves) {
+                buf.writeBytes(leaf);
             }
+            ctx.writeAndFlush(P2PProtocol.finish(buf, 0));
+        }
 
-            System.out.println("Sent chunk " + chunkIndex + " of movie " + movieId);
+        private void sendError(ChannelHandlerContext ctx, int requestId, String message) {
+            ByteBuf buf = P2PProtocol.begin(ctx.alloc(), P2PProtocol.ERROR, requestId);
+            P2PProtocol.writeString(buf, message);
+            ctx.writeAndFlush(P2PProtocol.finish(buf, 0));
         }
 
-        private void handlePing(DataOutputStream dos) throws IOException {
-            dos.writeUTF("PONG");
+        // Peer lento: deixar de ler pedidos até o buffer de saída esvaziar
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            ctx.channel().config().setAutoRead(ctx.channel().isWritable());
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent) {
+                ctx.close();
+            } else {
+                super.userEventTriggered(ctx, evt);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            System.err.println("P2P Error: " + cause.getMessage());
+            ctx.close();
         }
     }
 
@@ -155,9 +219,9 @@ public class P2PServer {
             try {
                 P2PServer server = new P2PServer();
                 server.start();
-            } catch (IOException e) {
+            } catch (Exception e) {
                 System.err.println("P2P Server failed: " + e.getMessage());
             }
         }).start();
     }
-}
\ No newline at end of file
+}
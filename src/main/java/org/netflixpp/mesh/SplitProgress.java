@@ -0,0 +1,87 @@
+package org.netflixpp.mesh;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progresso de um split em curso (ou do último split de cada filme), exposto pela API admin.
+ * Atualizado pelo leitor e pelos workers de escrita/upload sem locks.
+ */
+public class SplitProgress {
+
+    public enum State { RUNNING, DONE, FAILED }
+
+    private final String movieId;
+    private final long totalBytes;
+    private final int totalChunks;
+    private final int chunkSize;
+    private final long startedAt;
+
+    final AtomicLong bytesRead = new AtomicLong();
+    final AtomicLong bytesWritten = new AtomicLong();
+    final AtomicLong bytesSkipped = new AtomicLong(); // chunks inalterados ou deduplicados (não reescritos)
+    final AtomicInteger chunksWritten = new AtomicInteger();
+    final AtomicInteger chunksReused = new AtomicInteger();
+    final AtomicInteger chunksDeduplicated = new AtomicInteger(); // CDC: já existiam no store
+    final AtomicInteger chunksUploaded = new AtomicInteger();
+    final AtomicInteger uploadFailures = new AtomicInteger();
+    final AtomicInteger pendingUploads = new AtomicInteger(); // por enviar no próximo split
+
+    private volatile State state = State.RUNNING;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile Map<String, Object> diff;
+
+    SplitProgress(String movieId, long totalBytes, int chunkSize) {
+        this.movieId = movieId;
+        this.totalBytes = totalBytes;
+        this.totalChunks = (int) ((totalBytes + chunkSize - 1) / chunkSize);
+        this.chunkSize = chunkSize;
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    void done(Map<String, Object> diff) {
+        this.diff = diff;
+        finishedAt = System.currentTimeMillis();
+        state = State.DONE;
+    }
+
+    void failed(Throwable cause) {
+        error = cause.getMessage();
+        finishedAt = System.currentTimeMillis();
+        state = State.FAILED;
+    }
+
+    public String getMovieId() { return movieId; }
+    public State getState() { return state; }
+
+    public Map<String, Object> toMap() {
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        long elapsed = Math.max(1, end - startedAt);
+        long written = bytesWritten.get();
+        long processed = written + bytesSkipped.get();
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("movieId", movieId);
+        map.put("state", state.name());
+        map.put("totalBytes", totalBytes);
+        map.put("bytesRead", bytesRead.get());
+        map.put("bytesWritten", written);
+        map.put("chunkSize", chunkSize);
+        map.put("totalChunks", totalChunks);
+        map.put("chunksWritten", chunksWritten.get());
+        map.put("chunksReused", chunksReused.get());
+        map.put("chunksDeduplicated", chunksDeduplicated.get());
+        map.put("chunksUploaded", chunksUploaded.get());
+        map.put("uploadFailures", uploadFailures.get());
+        map.put("pendingUploads", pendingUploads.get());
+        map.put("percent", totalBytes == 0 ? 100.0 : Math.round(processed * 1000.0 / totalBytes) / 10.0);
+        map.put("elapsedMs", elapsed);
+        map.put("throughputMBps", Math.round(processed / 1048.576 / elapsed * 10) / 10.0);
+        if (diff != null) map.put("diff", diff);
+        if (error != null) map.put("error", error);
+        return map;
+    }
+}
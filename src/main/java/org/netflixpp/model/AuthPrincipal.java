@@ -0,0 +1,39 @@
+package org.netflixpp.model;
+
+import java.util.Map;
+
+/**
+ * Utilizador autenticado do pedido atual, resolvido uma vez pelo JWTFilter
+ * (propriedade {@link #PROPERTY} do ContainerRequestContext).
+ */
+public class AuthPrincipal {
+
+    public static final String PROPERTY = "principal";
+
+    private final String firebaseUid;
+    private final String email;
+    private final String name;
+    private final Map<String, Object> user; // null se ainda não existir utilizador interno
+
+    public AuthPrincipal(String firebaseUid, String email, String name, Map<String, Object> user) {
+        this.firebaseUid = firebaseUid;
+        this.email = email;
+        this.name = name;
+        this.user = user;
+    }
+
+    public String getFirebaseUid() { return firebaseUid; }
+    public String getEmail() { return email; }
+    public String getName() { return name; }
+
+    public Map<String, Object> getUser() { return user; }
+    public boolean hasUser() { return user != null; }
+
+    public Integer getUserId() { return user != null ? (Integer) user.get("id") : null; }
+    public String getUsername() { return user != null ? (String) user.get("username") : null; }
+    public String getRole() { return user != null ? (String) user.get("role") : null; }
+
+    public boolean isAdmin() {
+        return "admin".equalsIgnoreCase(getRole());
+    }
+}
@@ -3,6 +3,10 @@ package org.netflixpp.service;
 import org.netflixpp.config.Config;
 import org.netflixpp.config.DbConfig;
 import org.netflixpp.mesh.ChunkManager;
+import org.netflixpp.util.FirebaseUtil;
+import org.netflixpp.util.GcsUploader;
+import org.netflixpp.util.GcsUrlSigner;
+import org.netflixpp.util.UploadScheduler;
 import java.io.*;
 import java.nio.file.*;
 import java.sql.*;
@@ -11,7 +15,8 @@ import java.util.Date;
 
 public class AdminService {
 
-    private final ChunkManager chunkManager = new ChunkManager();
+    private final ChunkManager chunkManager = ChunkManager.getInstance();
+    private final CatalogCache catalog = CatalogCache.getInstance();
 
     // ========== MOVIE MANAGEMENT ==========
 
@@ -72,6 +77,10 @@ public class AdminService {
                 movieId = rs.getInt(1);
             }
 
+            if (movieId > 0) {
+                catalog.onMovieUpserted(movieId);
+            }
+
             result.put("movieId", movieId);
             result.put("title", title);
             result.put("file1080", path1080.toString());
@@ -84,10 +93,11 @@ public class AdminService {
             String movieHash1080 = "movie_" + movieId + "_1080p";
             String movieHash360 = "movie_" + movieId + "_360p";
 
+            // Tamanho de chunk escolhido por filme a partir do tamanho e bitrate de cada ficheiro
             List<String> chunks1080 = chunkManager.splitMovieIntoChunks(
-                    path1080.toString(), movieHash1080);
+                    path1080.toString(), movieHash1080, false, duration, 0);
             List<String> chunks360 = chunkManager.splitMovieIntoChunks(
-                    path360.toString(), movieHash360);
+                    path360.toString(), movieHash360, false, duration, 0);
 
             result.put("chunksGenerated1080", chunks1080.size());
             result.put("chunkIds1080", chunks1080);
@@ -123,7 +133,8 @@ public class AdminService {
         }
         if (updates.containsKey("year")) {
             sql.append("year = ?, ");
-            params.add(updates.get("year"));
+            Object year = updates.get("year");
+            params.add(year != null ? year : 0); // year é NOT NULL (0 = sem ano)
         }
         if (updates.containsKey("duration")) {
             sql.append("duration = ?, ");
@@ -144,7 +155,9 @@ public class AdminService {
                 stmt.setObject(i + 1, params.get(i));
             }
 
-            return stmt.executeUpdate() > 0;
+            boolean updated = stmt.executeUpdate() > 0;
+            if (updated) catalog.onMovieUpserted(id);
+            return updated;
         }
     }
 
@@ -167,31 +180,37 @@ public class AdminService {
             if (path1080 != null) Files.deleteIfExists(Paths.get(path1080));
             if (path360 != null) Files.deleteIfExists(Paths.get(path360));
 
-            // Deletar chunks P2P
-            String movieHash = "movie_" + id;
-            Path chunksDir = Paths.get(Config.CHUNKS_DIR, movieHash);
-            if (Files.exists(chunksDir)) {
-                Files.walk(chunksDir)
-                        .sorted(Comparator.reverseOrder())
-                        .map(Path::toFile)
-                        .forEach(File::delete);
-            }
+            // Deletar chunks P2P (registo + disco), incluindo os diretórios por resolução
+            chunkManager.deleteMovieChunks("movie_" + id);
+            chunkManager.deleteMovieChunks("movie_" + id + "_1080p");
+            chunkManager.deleteMovieChunks("movie_" + id + "_360p");
 
             // Deletar do banco
             try (PreparedStatement stmt = conn.prepareStatement(
                     "DELETE FROM movies WHERE id = ?")) {
                 stmt.setInt(1, id);
-                return stmt.executeUpdate() > 0;
+                boolean deleted = stmt.executeUpdate() > 0;
+                if (deleted) catalog.onMovieDeleted(id);
+                return deleted;
             }
         }
     }
 
     public Map<String, Object> generateMovieChunks(int movieId) throws Exception {
+        return generateMovieChunks(movieId, false, 0);
+    }
+
+    /**
+     * Regenera os chunks do filme. Por omissão só reescreve/reenvia os chunks cujo conteúdo
+     * mudou (e retoma um split interrompido); force=true reescreve tudo e volta a escolher o
+     * tamanho de chunk. chunkSize > 0 fixa o tamanho (ex.: benchmarks).
+     */
+    public Map<String, Object> generateMovieChunks(int movieId, boolean force, int chunkSize) throws Exception {
         Map<String, Object> result = new HashMap<>();
 
         try (Connection conn = DbConfig.getMariaDB();
              PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT file_path_1080 FROM movies WHERE id = ?")) {
+                     "SELECT file_path_1080, duration FROM movies WHERE id = ?")) {
 
             stmt.setInt(1, movieId);
             ResultSet rs = stmt.executeQuery();
@@ -206,11 +225,17 @@ public class AdminService {
             }
 
             String movieHash = "movie_" + movieId;
-            List<String> chunks = chunkManager.splitMovieIntoChunks(filePath, movieHash);
+            int duration = rs.getInt("duration");
+            List<String> chunks = chunkManager.splitMovieIntoChunks(filePath, movieHash, force, duration, chunkSize);
 
             result.put("movieId", movieId);
             result.put("chunksGenerated", chunks.size());
             result.put("chunks", chunks);
+            result.put("chunkSize", chunkManager.getChunkSize(movieHash));
+            Map<String, Object> progress = chunkManager.getSplitProgress(movieHash);
+            if (progress != null) {
+                result.put("diff", progress.get("diff"));
+            }
             result.put("status", "success");
 
         }
@@ -218,6 +243,27 @@ public class AdminService {
         return result;
     }
 
+    /**
+     * Progresso dos splits de chunks (todos, ou só o do filme indicado, ex. "movie_12_1080p").
+     */
+    public Object getChunkSplitProgress(String movieId) {
+        if (movieId == null || movieId.isEmpty()) {
+            return chunkManager.getSplitProgress();
+        }
+        return chunkManager.getSplitProgress(movieId);
+    }
+
+    /**
+     * Jobs de upload para o GCS (split, HLS, backfill) em curso e os últimos concluídos.
+     */
+    public Map<String, Object> getUploadProgress() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        UploadScheduler scheduler = UploadScheduler.getInstance();
+        result.put("scheduler", scheduler.getStats());
+        result.put("batches", scheduler.getBatches());
+        return result;
+    }
+
     // ========== USER MANAGEMENT ==========
 
     public Map<String, Object> getAllUsers(int page, int limit) throws SQLException {
@@ -312,7 +358,7 @@ public class AdminService {
             stmt.setString(2, password);
             stmt.setString(3, email != null ? email : "");
             stmt.setString(4, role);
-            stmt.executeUpdate();
+            StatisticsEngine.getInstance().insertUser(role, stmt::executeUpdate);
 
             ResultSet rs = stmt.getGeneratedKeys();
             int userId = -1;
@@ -373,7 +419,12 @@ public class AdminService {
                 stmt.setObject(i + 1, params.get(i));
             }
 
-            return stmt.executeUpdate() > 0;
+            boolean updated = stmt.executeUpdate() > 0;
+            if (updated) {
+                UserCache.getInstance().invalidateUserId(userId);
+                if (updates.containsKey("role")) StatisticsEngine.getInstance().onUsersChanged();
+            }
+            return updated;
         }
     }
 
@@ -383,7 +434,12 @@ public class AdminService {
                      "DELETE FROM users WHERE id = ?")) {
 
             stmt.setInt(1, userId);
-            return stmt.executeUpdate() > 0;
+            boolean deleted = stmt.executeUpdate() > 0;
+            if (deleted) {
+                UserCache.getInstance().invalidateUserId(userId);
+                StatisticsEngine.getInstance().onUsersChanged();
+            }
+            return deleted;
         }
     }
 
@@ -408,49 +464,47 @@ public class AdminService {
     // ========== SYSTEM MANAGEMENT ==========
 
     public Map<String, Object> getSystemStatistics() throws SQLException {
-        Map<String, Object> stats = new HashMap<>();
-
-        try (Connection conn = DbConfig.getMariaDB();
-             Statement stmt = conn.createStatement()) {
-
-            // Total de usuários
-            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) as total FROM users");
-            if (rs.next()) stats.put("totalUsers", rs.getInt("total"));
-
-            // Usuários por role
-            rs = stmt.executeQuery(
-                    "SELECT role, COUNT(*) as count FROM users GROUP BY role");
-            List<Map<String, Object>> usersByRole = new ArrayList<>();
-            while (rs.next()) {
-                Map<String, Object> item = new HashMap<>();
-                item.put("role", rs.getString("role"));
-                item.put("count", rs.getInt("count"));
-                usersByRole.add(item);
-            }
-            stats.put("usersByRole", usersByRole);
-
-            // Total de filmes
-            rs = stmt.executeQuery("SELECT COUNT(*) as total FROM movies");
-            if (rs.next()) stats.put("totalMovies", rs.getInt("total"));
-
-            // Visualizações totais
-            rs = stmt.executeQuery("SELECT SUM(views) as total FROM watch_history");
-            if (rs.next()) stats.put("totalViews", rs.getInt("total"));
-
-            // Armazenamento
-            stats.put("storage", getStorageInfo());
-
-            // Sistema
-            stats.put("systemTime", new Date());
-            stats.put("jvmMemory",
-                    Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
-            stats.put("jvmMaxMemory", Runtime.getRuntime().maxMemory());
-
-        }
+        // Contadores materializados (ver StatisticsEngine), sem agregações na BD
+        StatisticsEngine engine = StatisticsEngine.getInstance();
+        Map<String, Object> movieStats = engine.getMovieStatistics();
+        Map<String, Object> stats = new HashMap<>(engine.getUserStatistics());
+        stats.put("totalMovies", movieStats.get("totalMovies"));
+        stats.put("totalViews", movieStats.get("totalViews"));
+
+        // Armazenamento
+        stats.put("storage", getStorageInfo());
+
+        // Sistema
+        stats.put("systemTime", new Date());
+        stats.put("jvmMemory",
+                Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+        stats.put("jvmMaxMemory", Runtime.getRuntime().maxMemory());
 
         return stats;
     }
 
+    /**
+     * Métricas de runtime dos componentes internos (pool de conexões, caches, ...).
+     */
+    public Map<String, Object> getRuntimeMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("dbPool", DbConfig.getPoolStats());
+        metrics.put("catalogCache", catalog.getStats());
+        metrics.put("searchIndex", MovieSearchIndex.getStatsIfStarted());
+        metrics.put("featuredRotation", FeaturedRotation.getStatsIfStarted());
+        metrics.put("tokenCache", FirebaseUtil.getTokenCacheStats());
+        metrics.put("userCache", UserCache.getInstance().getStats());
+        metrics.put("viewAggregator", ViewAggregator.getStatsIfStarted());
+        metrics.put("statistics", StatisticsEngine.getInstance().getStats());
+        metrics.put("detailCache", MovieDetailCache.getInstance().getStats());
+        metrics.put("chunkRegistry", chunkManager.getStats());
+        metrics.put("gcsUploader", GcsUploader.getStatsIfStarted());
+        metrics.put("uploadScheduler", UploadScheduler.getStatsIfStarted());
+        metrics.put("urlSigner", GcsUrlSigner.getStatsIfStarted());
+        metrics.put("playlistSigner", HlsPlaylistSigner.getStatsIfStarted());
+        return metrics;
+    }
+
     public Map<String, Object> getStorageInfo() {
         Map<String, Object> storage = new HashMap<>();
 
@@ -8,6 +8,8 @@ import java.util.Map;
 
 public class AuthService {
 
+    private final UserCache userCache = UserCache.getInstance();
+
     /**
      * Cria ou atualiza um utilizador interno com base nos dados do Firebase.
      * @param firebaseUid UID do Firebase (obrigatório)
@@ -20,6 +22,12 @@ public class AuthService {
             return null;
         }
 
+        Map<String, Object> cached = userCache.get(firebaseUid);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = userCache.generation();
+
         try (Connection conn = DbConfig.getMariaDB()) {
             // 1) Verificar se já existe user com este firebase_uid
             try (PreparedStatement checkStmt = conn.prepareStatement(
@@ -30,7 +38,9 @@ public class AuthService {
                 ResultSet rs = checkStmt.executeQuery();
 
                 if (rs.next()) {
-                    return mapUser(rs);
+                    Map<String, Object> user = mapUser(rs);
+                    userCache.put(firebaseUid, user, generation);
+                    return user;
                 }
             }
 
@@ -48,7 +58,7 @@ public class AuthService {
                 insertStmt.setString(3, "user"); // role padrão
                 insertStmt.setString(4, firebaseUid);
 
-                int affected = insertStmt.executeUpdate();
+                int affected = StatisticsEngine.getInstance().insertUser("user", insertStmt::executeUpdate);
                 if (affected == 0) {
                     throw new SQLException("Creating user failed, no rows affected.");
                 }
@@ -62,7 +72,9 @@ public class AuthService {
                             selectStmt.setLong(1, newId);
                             ResultSet rs = selectStmt.executeQuery();
                             if (rs.next()) {
-                                return mapUser(rs);
+                                Map<String, Object> user = mapUser(rs);
+                                userCache.put(firebaseUid, user, generation);
+                                return user;
                             }
                         }
                     } else {
@@ -75,13 +87,19 @@ public class AuthService {
     }
 
     /**
-     * Obtém utilizador interno a partir do firebaseUid.
+     * Obtém utilizador interno a partir do firebaseUid (via {@link UserCache}).
      */
     public Map<String, Object> getUserByFirebaseUid(String firebaseUid) throws SQLException {
         if (firebaseUid == null || firebaseUid.isBlank()) {
             return null;
         }
 
+        Map<String, Object> cached = userCache.get(firebaseUid);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = userCache.generation();
+
         try (Connection conn = DbConfig.getMariaDB();
              PreparedStatement stmt = conn.prepareStatement(
                      "SELECT id, username, role, email, created_at, firebase_uid FROM users WHERE firebase_uid = ?")) {
@@ -90,7 +108,9 @@ public class AuthService {
             ResultSet rs = stmt.executeQuery();
 
             if (rs.next()) {
-                return mapUser(rs);
+                Map<String, Object> user = mapUser(rs);
+                userCache.put(firebaseUid, user, generation);
+                return user;
             }
         }
         return null;
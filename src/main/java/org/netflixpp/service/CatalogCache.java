@@ -0,0 +1,440 @@
+package org.netflixpp.service;
+
+import org.netflixpp.config.Config;
+import org.netflixpp.config.DbConfig;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cache em memória do catálogo de filmes.
+ *
+ * Mantém um snapshot imutável e versionado da tabela {@code movies}, com índices por id,
+ * categoria, género, ano e data de criação. As leituras são lookups sem locks sobre o
+ * snapshot atual; as escritas (create/update/delete) aplicam um patch e publicam um novo
+ * snapshot.
+ */
+public class CatalogCache {
+
+    /**
+     * Notificado (com o lock de escrita do cache) sempre que um novo snapshot é publicado.
+     */
+    public interface Listener {
+        void onRebuilt(Snapshot snapshot);
+
+        void onUpserted(Map<String, Object> movie, Snapshot snapshot);
+
+        void onDeleted(int movieId, Snapshot snapshot);
+    }
+
+    private static volatile CatalogCache INSTANCE;
+
+    private final Object writeLock = new Object();
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Snapshot snapshot; // null = ainda não carregado ou invalidado
+    private volatile int cachedCount = -1; // COUNT(*) quando não há snapshot carregado
+    private volatile long countGeneration;  // incrementado (com writeLock) a cada escrita
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Métricas
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder patches = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private CatalogCache() {
+    }
+
+    public static CatalogCache getInstance() {
+        if (INSTANCE == null) {
+            synchronized (CatalogCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new CatalogCache();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Snapshot atual do catálogo; carrega da BD se ainda não existir.
+     */
+    public Snapshot current() throws SQLException {
+        Snapshot s = snapshot;
+        if (s != null) {
+            hits.increment();
+            if (isExpired(s)) {
+                refreshInBackground();
+            }
+            return s;
+        }
+
+        misses.increment();
+        synchronized (writeLock) {
+            s = snapshot;
+            if (s == null) {
+                s = rebuild();
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Último snapshot publicado, sem carregar da BD; null se ainda não foi carregado.
+     */
+    public Snapshot peek() {
+        return snapshot;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Número total de filmes, sem materializar o catálogo se ainda não estiver carregado.
+     */
+    public int getMovieCount() throws SQLException {
+        Snapshot s = snapshot;
+        if (s != null) return s.size();
+
+        int count = cachedCount;
+        if (count >= 0) return count;
+
+        // A contagem corre fora do lock: só é guardada se nenhuma escrita a invalidou entretanto
+        long generation = countGeneration;
+        try (Connection conn = DbConfig.getMariaDB();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) AS total FROM movies")) {
+            count = rs.next() ? rs.getInt("total") : 0;
+        }
+        synchronized (writeLock) {
+            if (countGeneration == generation) cachedCount = count;
+        }
+        return count;
+    }
+
+    /**
+     * Recarrega a linha do filme e aplica-a ao snapshot (insert ou update).
+     */
+    public void onMovieUpserted(int movieId) {
+        synchronized (writeLock) {
+            invalidateCount();
+            Snapshot s = snapshot;
+            if (s == null) return; // será carregado no próximo acesso
+
+            try {
+                Map<String, Object> row = loadMovie(movieId);
+                if (row == null) {
+                    publishDelete(s, movieId);
+                } else {
+                    Snapshot next = s.with(row, versions.incrementAndGet());
+                    snapshot = next;
+                    patches.increment();
+                    Map<String, Object> frozen = next.getById(movieId);
+                    for (Listener l : listeners) l.onUpserted(frozen, next);
+                }
+            } catch (SQLException e) {
+                System.err.println("[CATALOG] Patch failed for movie " + movieId + ": " + e.getMessage());
+                invalidate();
+            }
+        }
+    }
+
+    public void onMovieDeleted(int movieId) {
+        synchronized (writeLock) {
+            invalidateCount();
+            Snapshot s = snapshot;
+            if (s == null) return;
+            publishDelete(s, movieId);
+        }
+    }
+
+    // Chamado com writeLock
+    private void invalidateCount() {
+        cachedCount = -1;
+        countGeneration++;
+    }
+
+    // Chamado com writeLock
+    private void publishDelete(Snapshot s, int movieId) {
+        Snapshot next = s.without(movieId, versions.incrementAndGet());
+        snapshot = next;
+        patches.increment();
+        for (Listener l : listeners) l.onDeleted(movieId, next);
+    }
+
+    /**
+     * Descarta o snapshot; o próximo acesso recarrega tudo da BD.
+     */
+    public void invalidate() {
+        synchronized (writeLock) {
+            snapshot = null;
+            invalidateCount();
+            invalidations.increment();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Snapshot s = snapshot;
+        stats.put("loaded", s != null);
+        stats.put("version", s != null ? s.getVersion() : -1);
+        stats.put("movies", s != null ? s.size() : 0);
+        stats.put("builtAt", s != null ? new java.util.Date(s.getBuiltAt()) : null);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("rebuilds", rebuilds.sum());
+        stats.put("patches", patches.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    // ========== CARREGAMENTO ==========
+
+    private boolean isExpired(Snapshot s) {
+        long ttl = Config.CATALOG_CACHE_TTL_MS;
+        return ttl > 0 && System.currentTimeMillis() - s.getBuiltAt() > ttl;
+    }
+
+    // Refresh periódico (alterações feitas fora da app); os leitores continuam com o snapshot antigo
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) return;
+        Thread t = new Thread(() -> {
+            try {
+                synchronized (writeLock) {
+                    rebuild();
+                }
+            } catch (SQLException e) {
+                System.err.println("[CATALOG] Background refresh failed: " + e.getMessage());
+            } finally {
+                refreshing.set(false);
+            }
+        }, "catalog-refresh");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Chamado com writeLock
+    private Snapshot rebuild() throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (Connection conn = DbConfig.getMariaDB();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM movies")) {
+            while (rs.next()) {
+                rows.add(MovieService.extractMovieFromResultSet(rs));
+            }
+        }
+
+        Snapshot s = new Snapshot(rows, versions.incrementAndGet());
+        snapshot = s;
+        rebuilds.increment();
+        System.out.println("[CATALOG] Snapshot v" + s.getVersion() + " built with " + s.size() + " movies");
+        for (Listener l : listeners) l.onRebuilt(s);
+        return s;
+    }
+
+    private Map<String, Object> loadMovie(int movieId) throws SQLException {
+        try (Connection conn = DbConfig.getMariaDB();
+             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM movies WHERE id = ?")) {
+            stmt.setInt(1, movieId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? MovieService.extractMovieFromResultSet(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Chave normalizada de categoria/género: a collation da BD compara-os sem distinguir
+     * maiúsculas, por isso "Action" e "action" são o mesmo grupo.
+     */
+    static String key(String value) {
+        return value == null ? null : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // ========== SNAPSHOT ==========
+
+    /**
+     * Vista imutável do catálogo. Todas as listas e linhas são não-modificáveis.
+     */
+    public static final class Snapshot {
+
+        private static final Comparator<Map<String, Object>> BY_CREATED_DESC =
+                Comparator.comparing((Map<String, Object> m) -> (Timestamp) m.get("createdAt"),
+                                Comparator.nullsLast(Comparator.reverseOrder()))
+                        .thenComparing(m -> (Integer) m.get("id"), Comparator.reverseOrder());
+
+        private static final Comparator<Map<String, Object>> BY_TITLE =
+                Comparator.comparing((Map<String, Object> m) -> (String) m.get("title"),
+                                Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+                        .thenComparing(m -> (Integer) m.get("id"));
+
+        private final long version;
+        private final long builtAt;
+        private final List<Map<String, Object>> newestFirst;
+        private final Map<Integer, Map<String, Object>> byId;
+        private final Map<String, List<Map<String, Object>>> byCategory;
+        private final Map<String, List<Map<String, Object>>> byGenre;
+        private final Map<Integer, List<Map<String, Object>>> byYear;
+        private final List<String> categories;
+        private final List<String> genres;
+
+        Snapshot(Collection<Map<String, Object>> rows, long version) {
+            this.version = version;
+            this.builtAt = System.currentTimeMillis();
+
+            Map<Integer, Map<String, Object>> ids = new HashMap<>();
+            for (Map<String, Object> row : rows) {
+                Map<String, Object> frozen = Collections.unmodifiableMap(new HashMap<>(row));
+                ids.put((Integer) frozen.get("id"), frozen);
+            }
+            this.byId = Collections.unmodifiableMap(ids);
+
+            List<Map<String, Object>> all = new ArrayList<>(ids.values());
+            all.sort(BY_CREATED_DESC);
+            this.newestFirst = Collections.unmodifiableList(all);
+
+            this.byCategory = index(all, "category");
+            this.byGenre = index(all, "genre");
+
+            Map<Integer, List<Map<String, Object>>> years = new HashMap<>();
+            for (Map<String, Object> m : all) {
+                Integer year = (Integer) m.get("year");
+                if (year != null) years.computeIfAbsent(year, k -> new ArrayList<>()).add(m);
+            }
+            years.replaceAll((k, v) -> Collections.unmodifiableList(v));
+            this.byYear = Collections.unmodifiableMap(years);
+
+            this.categories = labels(byCategory, "category");
+            this.genres = labels(byGenre, "genre");
+        }
+
+        /**
+         * Patch de um filme sobre o snapshot {@code base}: só as listas afetadas são copiadas
+         * e o filme é removido/inserido na sua posição (pesquisa binária), sem reordenar nem
+         * reindexar o resto do catálogo. {@code old} e {@code row} podem ser null (insert/delete).
+         */
+        private Snapshot(Snapshot base, Map<String, Object> old, Map<String, Object> row, long version) {
+            this.version = version;
+            this.builtAt = System.currentTimeMillis();
+
+            Map<Integer, Map<String, Object>> ids = new HashMap<>(base.byId);
+            if (old != null) ids.remove((Integer) old.get("id"));
+            if (row != null) ids.put((Integer) row.get("id"), row);
+            this.byId = Collections.unmodifiableMap(ids);
+
+            this.newestFirst = patch(base.newestFirst, old, row, BY_CREATED_DESC);
+            this.byCategory = patchIndex(base.byCategory, old, row, m -> key((String) m.get("category")), BY_TITLE);
+            this.byGenre = patchIndex(base.byGenre, old, row, m -> key((String) m.get("genre")), BY_TITLE);
+            this.byYear = patchIndex(base.byYear, old, row, m -> (Integer) m.get("year"), BY_CREATED_DESC);
+
+            this.categories = labels(byCategory, "category");
+            this.genres = labels(byGenre, "genre");
+        }
+
+        Snapshot with(Map<String, Object> row, long newVersion) {
+            Map<String, Object> frozen = Collections.unmodifiableMap(new HashMap<>(row));
+            return new Snapshot(this, byId.get((Integer) row.get("id")), frozen, newVersion);
+        }
+
+        Snapshot without(int movieId, long newVersion) {
+            return new Snapshot(this, byId.get(movieId), null, newVersion);
+        }
+
+        // Cópia ordenada da lista sem {@code old} e com {@code row} na sua posição
+        private static List<Map<String, Object>> patch(List<Map<String, Object>> list, Map<String, Object> old,
+                                                       Map<String, Object> row,
+                                                       Comparator<Map<String, Object>> order) {
+            List<Map<String, Object>> out = new ArrayList<>(list.size() + 1);
+            out.addAll(list);
+            if (old != null) {
+                int i = Collections.binarySearch(out, old, order);
+                if (i >= 0) out.remove(i);
+            }
+            if (row != null) {
+                int i = Collections.binarySearch(out, row, order);
+                out.add(i < 0 ? -i - 1 : i, row);
+            }
+            return Collections.unmodifiableList(out);
+        }
+
+        private static <K> Map<K, List<Map<String, Object>>> patchIndex(
+                Map<K, List<Map<String, Object>>> idx, Map<String, Object> old, Map<String, Object> row,
+                Function<Map<String, Object>, K> keyOf,
+                Comparator<Map<String, Object>> order) {
+            Map<K, List<Map<String, Object>>> out = new HashMap<>(idx);
+            K oldKey = old != null ? keyOf.apply(old) : null;
+            if (oldKey != null && out.containsKey(oldKey)) {
+                List<Map<String, Object>> list = patch(out.get(oldKey), old, null, order);
+                if (list.isEmpty()) out.remove(oldKey);
+                else out.put(oldKey, list);
+            }
+            K newKey = row != null ? keyOf.apply(row) : null;
+            if (newKey != null) {
+                out.put(newKey, patch(out.getOrDefault(newKey, Collections.emptyList()), null, row, order));
+            }
+            return Collections.unmodifiableMap(out);
+        }
+
+        // Nome mostrado de cada grupo: o do primeiro filme da lista (por título)
+        private static List<String> labels(Map<String, List<Map<String, Object>>> idx, String field) {
+            List<String> out = new ArrayList<>(idx.size());
+            for (List<Map<String, Object>> list : idx.values()) {
+                out.add((String) list.get(0).get(field));
+            }
+            out.sort(String.CASE_INSENSITIVE_ORDER);
+            return Collections.unmodifiableList(out);
+        }
+
+        private static Map<String, List<Map<String, Object>>> index(List<Map<String, Object>> all, String field) {
+            Map<String, List<Map<String, Object>>> idx = new HashMap<>();
+            for (Map<String, Object> m : all) {
+                String k = key((String) m.get(field));
+                if (k != null) idx.computeIfAbsent(k, x -> new ArrayList<>()).add(m);
+            }
+            idx.replaceAll((k, v) -> {
+                v.sort(BY_TITLE);
+                return Collections.unmodifiableList(v);
+            });
+            return Collections.unmodifiableMap(idx);
+        }
+
+        public long getVersion() { return version; }
+        public long getBuiltAt() { return builtAt; }
+        public int size() { return byId.size(); }
+
+        public Map<String, Object> getById(int id) {
+            return byId.get(id);
+        }
+
+        /** Todos os filmes, do mais recente para o mais antigo. */
+        public List<Map<String, Object>> getNewestFirst() {
+            return newestFirst;
+        }
+
+        public List<Map<String, Object>> getRecent(int limit) {
+            return newestFirst.subList(0, Math.max(0, Math.min(limit, newestFirst.size())));
+        }
+
+        public List<Map<String, Object>> getByCategory(String category) {
+            return byCategory.getOrDefault(key(category), Collections.emptyList());
+        }
+
+        public List<Map<String, Object>> getByGenre(String genre) {
+            return byGenre.getOrDefault(key(genre), Collections.emptyList());
+        }
+
+        public List<Map<String, Object>> getByYear(int year) {
+            return byYear.getOrDefault(year, Collections.emptyList());
+        }
+
+        public List<String> getCategories() { return categories; }
+        public List<String> getGenres() { return genres; }
+    }
+}
@@ -0,0 +1,231 @@
+package org.netflixpp.service;
+
+import org.netflixpp.config.Config;
+import org.netflixpp.config.DbConfig;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rotação de filmes em destaque, pré-calculada em background.
+ *
+ * Periodicamente sorteia (amostragem ponderada sem reposição) um conjunto de candidatos
+ * do catálogo, pesados pelo número de visualizações e pela antiguidade. Os pedidos são
+ * servidos da memória: sem seed devolvem a rotação atual; com seed fazem uma nova
+ * amostragem determinística sobre os candidatos, sem acesso à BD.
+ */
+public class FeaturedRotation implements CatalogCache.Listener {
+
+    private static volatile FeaturedRotation INSTANCE;
+
+    public static final int FEATURED_SIZE = 10;
+    private static final int CANDIDATE_POOL_SIZE = 100;
+    private static final double RECENCY_HALF_LIFE_DAYS = 90.0;
+
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private volatile Rotation rotation; // null = ainda não calculada
+
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder seededRequests = new LongAdder();
+
+    private FeaturedRotation() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "featured-rotation");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Config.FEATURED_REFRESH_MS;
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, period, period, TimeUnit.MILLISECONDS);
+        CatalogCache.getInstance().addListener(this);
+    }
+
+    public static FeaturedRotation getInstance() {
+        if (INSTANCE == null) {
+            synchronized (FeaturedRotation.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new FeaturedRotation();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Destaques atuais (iguais para todos até ao próximo refresh).
+     */
+    public List<Map<String, Object>> getFeatured() throws SQLException {
+        return current().featured;
+    }
+
+    /**
+     * Destaques sorteados com uma seed própria (por exemplo, por utilizador):
+     * a mesma seed devolve o mesmo conjunto enquanto a rotação não mudar.
+     */
+    public List<Map<String, Object>> getFeatured(long seed) throws SQLException {
+        seededRequests.increment();
+        Rotation r = current();
+        return r.sample(new SplittableRandom(seed ^ r.builtAt), FEATURED_SIZE);
+    }
+
+    /**
+     * Métricas sem criar a rotação nem agendar o seu refresh.
+     */
+    public static Map<String, Object> getStatsIfStarted() {
+        FeaturedRotation instance = INSTANCE;
+        return instance != null ? instance.getStats() : Map.of("started", false);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Rotation r = rotation;
+        stats.put("builtAt", r != null ? new java.util.Date(r.builtAt) : null);
+        stats.put("candidates", r != null ? r.candidates.size() : 0);
+        stats.put("refreshes", refreshes.sum());
+        stats.put("seededRequests", seededRequests.sum());
+        return stats;
+    }
+
+    // Alterações ao catálogo: recalcular em background (um refresh pendente de cada vez)
+    @Override
+    public void onRebuilt(CatalogCache.Snapshot snapshot) {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onUpserted(Map<String, Object> movie, CatalogCache.Snapshot snapshot) {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onDeleted(int movieId, CatalogCache.Snapshot snapshot) {
+        scheduleRefresh();
+    }
+
+    private void scheduleRefresh() {
+        if (rotation == null) return; // ainda não usada
+        if (refreshPending.compareAndSet(false, true)) {
+            scheduler.schedule(this::refreshQuietly, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    private Rotation current() throws SQLException {
+        Rotation r = rotation;
+        if (r != null) return r;
+        synchronized (this) {
+            if (rotation == null) {
+                refresh();
+            }
+            return rotation;
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            System.err.println("[FEATURED] Refresh failed: " + e.getMessage());
+        }
+    }
+
+    private synchronized void refresh() throws SQLException {
+        refreshPending.set(false);
+        CatalogCache.Snapshot snapshot = CatalogCache.getInstance().current();
+        Map<Integer, Long> views = loadViewCounts();
+
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> movies = snapshot.getNewestFirst();
+        double[] weights = new double[movies.size()];
+        for (int i = 0; i < movies.size(); i++) {
+            Map<String, Object> m = movies.get(i);
+            weights[i] = weight(views.getOrDefault((Integer) m.get("id"), 0L),
+                    (Timestamp) m.get("createdAt"), now);
+        }
+
+        // Candidatos: amostra ponderada do catálogo inteiro
+        List<Integer> picked = weightedSample(weights, new SplittableRandom(now), CANDIDATE_POOL_SIZE);
+        List<Map<String, Object>> candidates = new ArrayList<>(picked.size());
+        double[] candidateWeights = new double[picked.size()];
+        for (int i = 0; i < picked.size(); i++) {
+            candidates.add(movies.get(picked.get(i)));
+            candidateWeights[i] = weights[picked.get(i)];
+        }
+
+        rotation = new Rotation(candidates, candidateWeights, now);
+        refreshes.increment();
+    }
+
+    private static double weight(long views, Timestamp createdAt, long now) {
+        double popularity = 1.0 + Math.log1p(views);
+        double recency = 1.0;
+        if (createdAt != null) {
+            double ageDays = Math.max(0, now - createdAt.getTime()) / 86_400_000.0;
+            recency = 0.25 + Math.pow(0.5, ageDays / RECENCY_HALF_LIFE_DAYS);
+        }
+        return popularity * recency;
+    }
+
+    /**
+     * Amostragem ponderada sem reposição (Efraimidis-Spirakis): chave u^(1/w),
+     * ficam os k maiores. Devolve os índices por ordem decrescente de chave.
+     */
+    static List<Integer> weightedSample(double[] weights, SplittableRandom random, int k) {
+        PriorityQueue<double[]> top = new PriorityQueue<>(Comparator.comparingDouble(e -> e[0]));
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] <= 0) continue;
+            double key = Math.log(random.nextDouble()) / weights[i]; // log(u^(1/w))
+            if (top.size() < k) {
+                top.offer(new double[]{key, i});
+            } else if (key > top.peek()[0]) {
+                top.poll();
+                top.offer(new double[]{key, i});
+            }
+        }
+        List<Integer> out = new ArrayList<>(top.size());
+        while (!top.isEmpty()) out.add((int) top.poll()[1]);
+        Collections.reverse(out);
+        return out;
+    }
+
+    // Total de reproduções mantido em movies.views (ver ViewAggregator), sem agregar watch_history
+    private Map<Integer, Long> loadViewCounts() throws SQLException {
+        Map<Integer, Long> views = new HashMap<>();
+        try (Connection conn = DbConfig.getMariaDB();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, views FROM movies WHERE views > 0")) {
+            while (rs.next()) {
+                views.put(rs.getInt("id"), rs.getLong("views"));
+            }
+        }
+        return views;
+    }
+
+    // Rotação imutável: candidatos pré-sorteados + destaques globais
+    private static final class Rotation {
+        final List<Map<String, Object>> candidates;
+        final double[] weights;
+        final List<Map<String, Object>> featured;
+        final long builtAt;
+
+        Rotation(List<Map<String, Object>> candidates, double[] weights, long builtAt) {
+            this.candidates = Collections.unmodifiableList(candidates);
+            this.weights = weights;
+            this.featured = Collections.unmodifiableList(
+                    new ArrayList<>(candidates.subList(0, Math.min(FEATURED_SIZE, candidates.size()))));
+            this.builtAt = builtAt;
+        }
+
+        List<Map<String, Object>> sample(SplittableRandom random, int k) {
+            List<Map<String, Object>> out = new ArrayList<>(k);
+            for (int idx : weightedSample(weights, random, k)) {
+                out.add(candidates.get(idx));
+            }
+            return out;
+        }
+    }
+}
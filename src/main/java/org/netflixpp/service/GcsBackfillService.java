@@ -1,15 +1,23 @@
 package org.netflixpp.service;
 
 import org.netflixpp.config.Config;
-import org.netflixpp.util.GcsUploader;
+import org.netflixpp.util.GcsSyncPlan;
+import org.netflixpp.util.UploadScheduler;
 
-import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
 
 public class GcsBackfillService {
 
     public Map<String, Object> backfill(String movieIdFilter, String resolution) {
+        return backfill(movieIdFilter, resolution, false);
+    }
+
+    /**
+     * Envia para o GCS os chunks locais em falta ou alterados. Com dryRun=true só devolve o
+     * plano (ação e motivo por ficheiro), sem enviar nada.
+     */
+    public Map<String, Object> backfill(String movieIdFilter, String resolution, boolean dryRun) {
         Map<String, Object> result = new HashMap<>();
         if (!Config.GCS_UPLOAD_ENABLED) {
             result.put("status", "disabled");
@@ -34,7 +42,8 @@ public class GcsBackfillService {
         }
 
         try {
-            GcsUploader uploader = GcsUploader.getInstance();
+            List<GcsSyncPlan.Item> items = new ArrayList<>();
+            Set<String> prefixes = new LinkedHashSet<>();
 
             try (DirectoryStream<Path> movieDirs = Files.newDirectoryStream(chunksRoot)) {
                 for (Path movieDir : movieDirs) {
@@ -44,6 +53,8 @@ public class GcsBackfillService {
                         continue;
                     }
 
+                    // Uma listagem por filme em vez de um exists() por chunk
+                    prefixes.add(objectPrefix(movieId, resolution));
                     try (DirectoryStream<Path> chunkFiles = Files.newDirectoryStream(movieDir, "*.bin")) {
                         for (Path chunk : chunkFiles) {
                             String fileName = chunk.getFileName().toString();
@@ -55,32 +66,51 @@ public class GcsBackfillService {
                             if (resolution != null && !resolution.isEmpty()) {
                                 entry.put("resolution", resolution);
                             }
-
-                            try {
-                                boolean exists = uploader.exists(objectName);
-                                if (exists) {
-                                    skipped++;
-                                    entry.put("action", "skipped");
-                                } else {
-                                    uploader.upload(chunk.toFile(), objectName, "application/octet-stream");
-                                    uploaded++;
-                                    entry.put("action", "uploaded");
-                                }
-                            } catch (IOException | RuntimeException e) {
-                                failed++;
-                                entry.put("action", "failed");
-                                entry.put("error", e.getMessage());
-                            }
                             uploads.add(entry);
+                            items.add(new GcsSyncPlan.Item(chunk.toFile(), objectName, "application/octet-stream"));
                         }
                     }
                 }
             }
 
+            GcsSyncPlan plan = GcsSyncPlan.build(prefixes, items);
+            result.put("plan", plan.getSummary());
+            if (dryRun) {
+                for (int i = 0; i < items.size(); i++) {
+                    GcsSyncPlan.Item item = items.get(i);
+                    uploads.get(i).put("action", item.getAction());
+                    uploads.get(i).put("reason", item.getReason());
+                }
+                result.put("status", "dry-run");
+                result.put("details", uploads);
+                return result;
+            }
+
+            // Uploads em paralelo pelo UploadScheduler; aqui só se recolhem os resultados
+            UploadScheduler.Batch batch = UploadScheduler.getInstance().newBatch(
+                    "backfill " + (movieIdFilter == null || movieIdFilter.isEmpty() ? "all" : movieIdFilter));
+            List<Map<String, Object>> results = plan.execute(batch);
+            for (int i = 0; i < results.size(); i++) {
+                Map<String, Object> r = results.get(i);
+                Map<String, Object> entry = uploads.get(i);
+                String action = (String) r.get("action");
+                entry.put("action", action);
+                entry.put("reason", r.get("reason"));
+                switch (action) {
+                    case "uploaded" -> uploaded++;
+                    case "skipped" -> skipped++;
+                    default -> {
+                        failed++;
+                        entry.put("error", r.get("error"));
+                    }
+                }
+            }
+
             result.put("status", "ok");
             result.put("uploaded", uploaded);
             result.put("skipped", skipped);
             result.put("failed", failed);
+            result.put("batch", batch.toMap());
             result.put("details", uploads);
             return result;
 
@@ -95,6 +125,13 @@ public class GcsBackfillService {
         }
     }
 
+    // Parte fixa do template antes de {fileName} (ex.: "movies/movie_1/1080p/")
+    private static String objectPrefix(String movieId, String resolution) {
+        String rendered = renderGcsObjectName(movieId, "\0", resolution);
+        int cut = rendered.indexOf('\0');
+        return cut >= 0 ? rendered.substring(0, cut) : rendered;
+    }
+
     private static String renderGcsObjectName(String movieId, String fileName, String resolution) {
         String tpl = Config.GCS_CHUNK_PATH_TEMPLATE;
         String res = (resolution == null || resolution.isEmpty()) ? "unknown" : resolution;
@@ -0,0 +1,320 @@
+package org.netflixpp.service;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.StorageException;
+import org.netflixpp.config.Config;
+import org.netflixpp.util.GcsClient;
+import org.netflixpp.util.GcsUrlSigner;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Playlists HLS (index.m3u8 de uma resolução) com todos os URIs de segmentos já
+ * assinados, para o player ir diretamente ao GCS sem um /hls/sign por segmento.
+ *
+ * As assinaturas correm em paralelo num pool limitado (HLS_SIGN_THREADS). O resultado fica
+ * em cache por (filme, resolução, janela de expiração): a janela muda a cada
+ * HLS_PLAYLIST_CACHE_TTL_MS e os URIs são válidos HLS_PLAYLIST_URL_MINUTES a partir da
+ * assinatura, por isso uma playlist servida da cache tem sempre pelo menos
+ * HLS_PLAYLIST_URL_MINUTES - HLS_PLAYLIST_CACHE_TTL_MS de validade.
+ */
+public class HlsPlaylistSigner {
+
+    /** Playlist reescrita e o instante (epoch ms) em que o primeiro URI expira. */
+    public static final class SignedPlaylist {
+        private final String content;
+        private final long expiresAt;
+        private final long windowEndsAt;
+        private final int signedUris;
+
+        SignedPlaylist(String content, long expiresAt, long windowEndsAt, int signedUris) {
+            this.content = content;
+            this.expiresAt = expiresAt;
+            this.windowEndsAt = windowEndsAt;
+            this.signedUris = signedUris;
+        }
+
+        public String getContent() { return content; }
+        public long getExpiresAt() { return expiresAt; }
+        public long getWindowEndsAt() { return windowEndsAt; }
+        public int getSignedUris() { return signedUris; }
+    }
+
+    private static final Pattern MOVIE_ID = Pattern.compile("(?:movie_)?(\\d+)");
+    private static final Pattern RESOLUTION = Pattern.compile("(\\d+)p?");
+    private static final Pattern URI_ATTRIBUTE = Pattern.compile("URI=\"([^\"]*)\"");
+
+    // URIs por tarefa do pool: uma assinatura V4 local custa dezenas de µs
+    private static final int SIGN_BATCH = 32;
+
+    private static volatile HlsPlaylistSigner INSTANCE;
+
+    private final ExecutorService pool;
+    private final long windowMs;
+    private final long urlValidityMs;
+    private final ConcurrentHashMap<String, CompletableFuture<SignedPlaylist>> cache = new ConcurrentHashMap<>();
+
+    // Métricas
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder urisSigned = new LongAdder();
+    private final LongAdder buildNanos = new LongAdder();
+
+    private HlsPlaylistSigner() {
+        this.pool = Executors.newFixedThreadPool(Config.HLS_SIGN_THREADS, r -> {
+            Thread t = new Thread(r, "hls-sign");
+            t.setDaemon(true);
+            return t;
+        });
+        this.windowMs = Math.max(1000, Config.HLS_PLAYLIST_CACHE_TTL_MS);
+        this.urlValidityMs = TimeUnit.MINUTES.toMillis(Config.HLS_PLAYLIST_URL_MINUTES);
+    }
+
+    public static HlsPlaylistSigner getInstance() {
+        if (INSTANCE == null) {
+            synchronized (HlsPlaylistSigner.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new HlsPlaylistSigner();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Métricas sem criar o pool nem o cliente GCS.
+     */
+    public static Map<String, Object> getStatsIfStarted() {
+        HlsPlaylistSigner instance = INSTANCE;
+        return instance != null ? instance.getStats() : Map.of("started", false);
+    }
+
+    /**
+     * Devolve a playlist assinada, ou null se o filme/resolução não tiver HLS.
+     *
+     * @param movieId    "12" ou "movie_12"
+     * @param resolution "1080p", "1080", "360p", ...
+     * @throws IllegalArgumentException se o filme ou a resolução forem inválidos
+     */
+    public SignedPlaylist getSignedPlaylist(String movieId, String resolution) throws IOException {
+        String movieDir = "movie_" + match(MOVIE_ID, movieId, "movieId");
+        String res = match(RESOLUTION, resolution, "resolution") + "p";
+
+        long now = System.currentTimeMillis();
+        long window = now / windowMs;
+        String key = movieDir + "/" + res + "@" + window;
+
+        CompletableFuture<SignedPlaylist> existing = cache.get(key);
+        if (existing != null) {
+            hits.increment();
+            return await(existing);
+        }
+
+        CompletableFuture<SignedPlaylist> created = new CompletableFuture<>();
+        existing = cache.putIfAbsent(key, created);
+        if (existing != null) {
+            // Outro pedido está a assinar a mesma playlist: esperar por ele
+            hits.increment();
+            return await(existing);
+        }
+        misses.increment();
+        evictExpiredWindows(window);
+
+        try {
+            SignedPlaylist playlist = build(movieDir, res, (window + 1) * windowMs);
+            if (playlist == null) {
+                // Não guardar: o HLS pode ser gerado entretanto
+                notFound.increment();
+                cache.remove(key, created);
+            }
+            created.complete(playlist);
+            return playlist;
+        } catch (IOException | RuntimeException e) {
+            cache.remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private SignedPlaylist build(String movieDir, String res, long windowEndsAt) throws IOException {
+        long start = System.nanoTime();
+        String base = "movies/" + movieDir + "/" + res + "/hls/";
+        String source = loadPlaylist(movieDir, res, base + "index.m3u8");
+        if (source == null) return null;
+
+        // 1) Recolher os objetos referidos (linhas de URI e atributos URI="..." das tags)
+        List<String> lines = source.lines().toList();
+        Set<String> objects = new LinkedHashSet<>();
+        for (String line : lines) {
+            if (line.isBlank()) continue;
+            if (line.startsWith("#")) {
+                Matcher m = URI_ATTRIBUTE.matcher(line);
+                while (m.find()) addObject(objects, base, m.group(1));
+            } else {
+                addObject(objects, base, line.trim());
+            }
+        }
+
+        // 2) Assinar em paralelo, em lotes
+        Map<String, GcsUrlSigner.SignedUrl> signed = signAll(new ArrayList<>(objects));
+
+        // 3) Reescrever
+        StringBuilder out = new StringBuilder(source.length() + signed.size() * 400);
+        for (String line : lines) {
+            if (line.isBlank()) {
+                out.append(line);
+            } else if (line.startsWith("#")) {
+                Matcher m = URI_ATTRIBUTE.matcher(line);
+                StringBuilder sb = new StringBuilder();
+                while (m.find()) {
+                    String url = signedUrlFor(signed, base, m.group(1));
+                    m.appendReplacement(sb, Matcher.quoteReplacement("URI=\"" + url + "\""));
+                }
+                m.appendTail(sb);
+                out.append(sb);
+            } else {
+                out.append(signedUrlFor(signed, base, line.trim()));
+            }
+            out.append('\n');
+        }
+
+        long expiresAt = Long.MAX_VALUE;
+        for (GcsUrlSigner.SignedUrl url : signed.values()) {
+            expiresAt = Math.min(expiresAt, url.getExpiresAt());
+        }
+        if (signed.isEmpty()) expiresAt = windowEndsAt;
+
+        urisSigned.add(signed.size());
+        buildNanos.add(System.nanoTime() - start);
+        return new SignedPlaylist(out.toString(), expiresAt, windowEndsAt, signed.size());
+    }
+
+    private Map<String, GcsUrlSigner.SignedUrl> signAll(List<String> objects) throws IOException {
+        GcsUrlSigner signer = GcsUrlSigner.getInstance();
+        List<Future<List<GcsUrlSigner.SignedUrl>>> batches = new ArrayList<>();
+        for (int from = 0; from < objects.size(); from += SIGN_BATCH) {
+            List<String> slice = objects.subList(from, Math.min(objects.size(), from + SIGN_BATCH));
+            batches.add(pool.submit(() -> {
+                List<GcsUrlSigner.SignedUrl> urls = new ArrayList<>(slice.size());
+                for (String object : slice) {
+                    urls.add(signer.signUncached(object, urlValidityMs));
+                }
+                return urls;
+            }));
+        }
+
+        Map<String, GcsUrlSigner.SignedUrl> signed = new HashMap<>();
+        int i = 0;
+        try {
+            for (Future<List<GcsUrlSigner.SignedUrl>> batch : batches) {
+                for (GcsUrlSigner.SignedUrl url : batch.get()) {
+                    signed.put(objects.get(i++), url);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batches.forEach(b -> b.cancel(true));
+            throw new IOException("Interrupted while signing playlist", e);
+        } catch (ExecutionException e) {
+            batches.forEach(b -> b.cancel(true));
+            throw new IOException("Failed to sign playlist: " + e.getCause().getMessage(), e.getCause());
+        }
+        return signed;
+    }
+
+    /**
+     * Lê o index.m3u8 gerado localmente pelo {@link HlsService}; se já não existir em disco,
+     * vai buscá-lo ao bucket. Devolve null se não existir em nenhum dos dois.
+     */
+    private String loadPlaylist(String movieDir, String res, String objectName) throws IOException {
+        Path local = Paths.get(Config.HLS_DIR, movieDir, res, "index.m3u8");
+        if (Files.isRegularFile(local)) {
+            return Files.readString(local, StandardCharsets.UTF_8);
+        }
+        try {
+            byte[] data = GcsClient.getInstance().getStorage()
+                    .readAllBytes(BlobId.of(Config.GCS_BUCKET_NAME, objectName));
+            return new String(data, StandardCharsets.UTF_8);
+        } catch (StorageException e) {
+            if (e.getCode() == 404) return null;
+            throw new IOException("Failed to read " + objectName + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Resolve um URI relativo da playlist para o nome do objeto no bucket. URIs absolutos
+     * (http...) ou fora da pasta HLS do filme ficam como estão.
+     */
+    private static String resolveObject(String base, String uri) {
+        if (uri.isEmpty() || uri.contains("://") || uri.startsWith("/")) return null;
+        int q = uri.indexOf('?');
+        if (q >= 0) uri = uri.substring(0, q);
+        try {
+            String object = URI.create(base).resolve(URI.create(uri)).normalize().getPath();
+            return object != null && object.startsWith(base) ? object : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void addObject(Set<String> objects, String base, String uri) {
+        String object = resolveObject(base, uri);
+        if (object != null) objects.add(object);
+    }
+
+    private static String signedUrlFor(Map<String, GcsUrlSigner.SignedUrl> signed, String base, String uri) {
+        String object = resolveObject(base, uri);
+        GcsUrlSigner.SignedUrl url = object != null ? signed.get(object) : null;
+        return url != null ? url.getUrl() : uri;
+    }
+
+    private void evictExpiredWindows(long window) {
+        cache.keySet().removeIf(k -> Long.parseLong(k.substring(k.lastIndexOf('@') + 1)) < window);
+    }
+
+    private static SignedPlaylist await(CompletableFuture<SignedPlaylist> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private static String match(Pattern pattern, String value, String name) {
+        Matcher m = value != null ? pattern.matcher(value.trim()) : null;
+        if (m == null || !m.matches()) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+        return m.group(1);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long h = hits.sum();
+        long m = misses.sum();
+        stats.put("cachedPlaylists", cache.size());
+        stats.put("threads", Config.HLS_SIGN_THREADS);
+        stats.put("windowMs", windowMs);
+        stats.put("urlValidityMs", urlValidityMs);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : Math.round(h * 10_000.0 / (h + m)) / 10_000.0);
+        stats.put("notFound", notFound.sum());
+        stats.put("urisSigned", urisSigned.sum());
+        stats.put("avgBuildMs", m == 0 ? 0 : buildNanos.sum() / m / 1_000_000);
+        return stats;
+    }
+}
@@ -2,7 +2,8 @@ package org.netflixpp.service;
 
 import org.netflixpp.config.Config;
 import org.netflixpp.config.DbConfig;
-import org.netflixpp.util.GcsUploader;
+import org.netflixpp.util.GcsSyncPlan;
+import org.netflixpp.util.UploadScheduler;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -55,7 +56,7 @@ public class HlsService {
 
             // 3) Upload para GCS (se habilitado)
             if (Config.GCS_UPLOAD_ENABLED) {
-                Map<String, Object> up = uploadOutputs(movieId, baseOut);
+                Map<String, Object> up = uploadOutputs(movieId, baseOut, false);
                 result.put("gcsUpload", up);
             } else {
                 result.put("gcsUpload", Map.of(
@@ -151,21 +152,46 @@ public class HlsService {
     }
 
     /**
-     * Faz upload de todos os ficheiros HLS gerados para o GCS.
+     * Publica no GCS as saídas HLS já geradas do filme (sem correr o ffmpeg). Com dryRun=true
+     * devolve só o plano: que ficheiros seriam enviados e porquê.
      */
-    private Map<String, Object> uploadOutputs(int movieId, Path baseOut) {
+    public Map<String, Object> publish(int movieId, boolean dryRun) {
+        Path baseOut = Paths.get(Config.HLS_DIR, "movie_" + movieId);
+        if (!Files.isDirectory(baseOut)) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("movieId", movieId);
+            return error(result, "No HLS output for movie " + movieId);
+        }
+        Map<String, Object> result = uploadOutputs(movieId, baseOut, dryRun);
+        result.put("movieId", movieId);
+        return result;
+    }
+
+    /**
+     * Faz upload dos ficheiros HLS gerados para o GCS. O prefixo de cada rendição
+     * ({@code movies/movie_<id>/<res>/hls/}) é listado uma vez e só os ficheiros em falta ou
+     * alterados (tamanho/CRC32C) são enviados, em paralelo pelo {@link UploadScheduler}.
+     */
+    private Map<String, Object> uploadOutputs(int movieId, Path baseOut, boolean dryRun) {
         Map<String, Object> upload = new LinkedHashMap<>();
         int uploaded = 0, skipped = 0, failed = 0;
         List<Map<String, Object>> files = new ArrayList<>();
 
         try {
-            GcsUploader up = GcsUploader.getInstance();
+            // Padrão de object name usado pelo StreamService.buildHlsUrl
+            String moviePrefix = "movies/movie_" + movieId + "/";
+            List<String> prefixes = new ArrayList<>();
+            List<GcsSyncPlan.Item> items = new ArrayList<>();
+            List<String> resolutions = new ArrayList<>();
 
             // Percorrer 1080p e 360p se existirem
             for (String res : new String[]{"1080p", "360p"}) {
                 Path dir = baseOut.resolve(res);
                 if (!Files.exists(dir)) continue;
 
+                // Só a pasta HLS da rendição: os chunks do mesh do mesmo filme ficam de fora
+                String prefix = moviePrefix + res + "/hls/";
+                prefixes.add(prefix);
                 try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
                     for (Path f : stream) {
                         if (!Files.isRegularFile(f)) continue;
@@ -174,40 +200,46 @@ public class HlsService {
                         String ct = name.endsWith(".m3u8")
                                 ? "application/vnd.apple.mpegurl"
                                 : (name.endsWith(".ts") ? "video/mp2t" : "application/octet-stream");
+                        items.add(new GcsSyncPlan.Item(f.toFile(), prefix + name, ct));
+                        resolutions.add(res);
+                    }
+                }
+            }
+
+            GcsSyncPlan plan = GcsSyncPlan.build(prefixes, items);
+            upload.put("plan", plan.getSummary());
+            if (dryRun) {
+                upload.put("status", "dry-run");
+                upload.put("files", plan.toMap().get("files"));
+                return upload;
+            }
 
-                        // Padrão de object name usado pelo StreamService.buildHlsUrl
-                        String objectName = "movies/movie_" + movieId + "/" + res + "/hls/" + name;
-
-                        Map<String, Object> entry = new LinkedHashMap<>();
-                        entry.put("file", name);
-                        entry.put("resolution", res);
-                        entry.put("object", objectName);
-
-                        try {
-                            boolean exists = up.exists(objectName);
-                            if (exists) {
-                                skipped++;
-                                entry.put("action", "skipped");
-                            } else {
-                                up.upload(f.toFile(), objectName, ct);
-                                uploaded++;
-                                entry.put("action", "uploaded");
-                            }
-                        } catch (IOException | RuntimeException e) {
-                            failed++;
-                            entry.put("action", "failed");
-                            entry.put("error", e.getMessage());
-                        }
-
-                        files.add(entry);
+            UploadScheduler.Batch batch = UploadScheduler.getInstance().newBatch("hls movie_" + movieId);
+            List<Map<String, Object>> results = plan.execute(batch);
+            for (int i = 0; i < results.size(); i++) {
+                Map<String, Object> r = results.get(i);
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("file", r.get("file"));
+                entry.put("resolution", resolutions.get(i));
+                entry.put("object", r.get("object"));
+                entry.put("action", r.get("action"));
+                entry.put("reason", r.get("reason"));
+                switch ((String) r.get("action")) {
+                    case "uploaded" -> uploaded++;
+                    case "skipped" -> skipped++;
+                    default -> {
+                        failed++;
+                        entry.put("error", r.get("error"));
                     }
                 }
+                files.add(entry);
             }
 
             upload.put("status", "ok");
             upload.put("uploaded", uploaded);
             upload.put("skipped", skipped);
             upload.put("failed", failed);
+            upload.put("batch", batch.toMap());
             upload.put("files", files);
             return upload;
 
@@ -1,6 +1,7 @@
 package org.netflixpp.service;
 
 import org.netflixpp.config.Config;
+import org.netflixpp.mesh.ChunkManager;
 import java.io.File;
 import java.nio.file.*;
 import java.util.*;
@@ -30,7 +31,7 @@ public class MeshService {
 
             info.put("chunks", chunks);
             info.put("count", chunks.size());
-            info.put("chunkSize", Config.CHUNK_SIZE);
+            info.put("chunkSize", ChunkManager.getInstance().getChunkSize(movieId));
 
         } catch (Exception e) {
             info.put("error", e.getMessage());
@@ -0,0 +1,264 @@
+package org.netflixpp.service;
+
+import org.netflixpp.config.Config;
+import org.netflixpp.config.DbConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agregados por filme para a página de detalhe (views e ratings).
+ *
+ * {@code views} é o número de utilizadores que viram o filme (linhas de watch_history, como
+ * sempre foi na API) e {@code totalViews} o total de reproduções (soma de views).
+ *
+ * Carregados numa única query composta. {@code UserService.rateMovie} recarrega os agregados
+ * de rating (write-through); os flushes do {@link ViewAggregator} retiram da cache os filmes
+ * com views novas, porque o delta não diz se o utilizador já tinha linha (viewers). Entradas
+ * expiram ao fim de DETAIL_CACHE_TTL_MS.
+ */
+public class MovieDetailCache implements CatalogCache.Listener {
+
+    private static volatile MovieDetailCache INSTANCE;
+
+    private static final String AGGREGATES_SQL =
+            "SELECT w.viewers, w.total_views, r.rating_count, r.rating_sum FROM " +
+            "(SELECT COUNT(*) AS viewers, COALESCE(SUM(views), 0) AS total_views " +
+            " FROM watch_history WHERE movie_id = ?) w, " +
+            "(SELECT COUNT(*) AS rating_count, COALESCE(SUM(rating), 0) AS rating_sum " +
+            " FROM ratings WHERE movie_id = ?) r";
+
+    private static final String RATINGS_SQL =
+            "SELECT COUNT(*) AS rating_count, COALESCE(SUM(rating), 0) AS rating_sum " +
+            "FROM ratings WHERE movie_id = ?";
+
+    private static final class Aggregates {
+        final long viewers;
+        final long totalViews;
+        long ratingCount;
+        long ratingSum;
+        final long loadedAt;
+
+        Aggregates(long viewers, long totalViews, long ratingCount, long ratingSum, long loadedAt) {
+            this.viewers = viewers;
+            this.totalViews = totalViews;
+            this.ratingCount = ratingCount;
+            this.ratingSum = ratingSum;
+            this.loadedAt = loadedAt;
+        }
+
+        Aggregates copy() {
+            return new Aggregates(viewers, totalViews, ratingCount, ratingSum, loadedAt);
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMs;
+    private final LinkedHashMap<Integer, Aggregates> entries;
+
+    // Incrementado antes e depois de cada flush de views: uma carga que se sobreponha
+    // a um flush pode já incluir (ou não) o delta, por isso não fica em cache
+    private final AtomicLong viewGeneration = new AtomicLong();
+    // O mesmo para ratings: incrementado (com o lock de entries) a cada rating alterado
+    private final AtomicLong ratingGeneration = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder writeThroughs = new LongAdder();
+    private final LongAdder viewEvictions = new LongAdder();
+
+    private MovieDetailCache(int maxEntries, long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Aggregates> eldest) {
+                return size() > MovieDetailCache.this.maxEntries;
+            }
+        };
+        CatalogCache.getInstance().addListener(this);
+    }
+
+    public static MovieDetailCache getInstance() {
+        if (INSTANCE == null) {
+            synchronized (MovieDetailCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new MovieDetailCache(Config.DETAIL_CACHE_MAX_ENTRIES, Config.DETAIL_CACHE_TTL_MS);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Coloca views (utilizadores), totalViews (reproduções), averageRating e ratingCount no
+     * mapa do filme.
+     */
+    public void fill(int movieId, Map<String, Object> movie) throws SQLException {
+        Aggregates a = get(movieId);
+        movie.put("views", a.viewers);
+        movie.put("totalViews", a.totalViews);
+        movie.put("averageRating", average(a));
+        movie.put("ratingCount", a.ratingCount);
+    }
+
+    /** Utilizadores distintos que viram o filme. */
+    public long getViewers(int movieId) throws SQLException {
+        return get(movieId).viewers;
+    }
+
+    /** Total de reproduções do filme (soma de watch_history.views). */
+    public long getTotalViews(int movieId) throws SQLException {
+        return get(movieId).totalViews;
+    }
+
+    public double getAverageRating(int movieId) throws SQLException {
+        return average(get(movieId));
+    }
+
+    private static double average(Aggregates a) {
+        return a.ratingCount == 0 ? 0.0 : (double) a.ratingSum / a.ratingCount;
+    }
+
+    // Cópia consistente dos agregados (da cache ou da BD)
+    private Aggregates get(int movieId) throws SQLException {
+        synchronized (entries) {
+            Aggregates a = fresh(movieId);
+            if (a != null) return a.copy();
+        }
+        return load(movieId);
+    }
+
+    // Chamado com o lock de entries
+    private Aggregates fresh(int movieId) {
+        Aggregates a = entries.get(movieId);
+        if (a != null && System.currentTimeMillis() - a.loadedAt < ttlMs) {
+            hits.increment();
+            return a;
+        }
+        if (a != null) entries.remove(movieId);
+        misses.increment();
+        return null;
+    }
+
+    private Aggregates load(int movieId) throws SQLException {
+        long views = viewGeneration.get();
+        long ratings = ratingGeneration.get();
+        Aggregates a;
+        try (Connection conn = DbConfig.getMariaDB();
+             PreparedStatement stmt = conn.prepareStatement(AGGREGATES_SQL)) {
+            stmt.setInt(1, movieId);
+            stmt.setInt(2, movieId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                a = new Aggregates(rs.getLong("viewers"), rs.getLong("total_views"),
+                        rs.getLong("rating_count"), rs.getLong("rating_sum"), System.currentTimeMillis());
+            }
+        }
+
+        // Um flush ou rating alterado durante a carga pode não estar na linha lida
+        synchronized (entries) {
+            if (ttlMs > 0 && viewGeneration.get() == views && ratingGeneration.get() == ratings) {
+                entries.put(movieId, a.copy());
+            }
+        }
+        return a;
+    }
+
+    // ========== WRITE-THROUGH ==========
+
+    /**
+     * Chamado pelo ViewAggregator antes de escrever um lote de views.
+     */
+    public void beginViewFlush() {
+        viewGeneration.incrementAndGet();
+    }
+
+    /**
+     * Deltas de views já escritos na BD (movieId -> views). O delta daria o novo totalViews,
+     * mas não se o utilizador é novo no filme (viewers): os filmes afetados são recarregados.
+     */
+    public void onViewsFlushed(Map<Integer, Long> deltas) {
+        synchronized (entries) {
+            for (Integer movieId : deltas.keySet()) {
+                if (entries.remove(movieId) != null) viewEvictions.increment();
+            }
+        }
+        viewGeneration.incrementAndGet();
+    }
+
+    /**
+     * Rating criado/alterado: recarrega apenas os agregados de rating do filme em cache.
+     */
+    public void onRatingChanged(int movieId) {
+        long generation;
+        synchronized (entries) {
+            generation = ratingGeneration.incrementAndGet();
+            if (!entries.containsKey(movieId)) return;
+        }
+        try (Connection conn = DbConfig.getMariaDB();
+             PreparedStatement stmt = conn.prepareStatement(RATINGS_SQL)) {
+            stmt.setInt(1, movieId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                synchronized (entries) {
+                    // Outro rating alterado entretanto: esta leitura pode ser a mais antiga das
+                    // duas, por isso a entrada sai da cache em vez de ser atualizada
+                    if (ratingGeneration.get() != generation) {
+                        entries.remove(movieId);
+                    } else {
+                        Aggregates a = entries.get(movieId);
+                        if (a != null) {
+                            a.ratingCount = rs.getLong("rating_count");
+                            a.ratingSum = rs.getLong("rating_sum");
+                        }
+                    }
+                }
+            }
+            writeThroughs.increment();
+        } catch (SQLException e) {
+            System.err.println("[DETAIL] Rating refresh failed for movie " + movieId + ": " + e.getMessage());
+            synchronized (entries) {
+                entries.remove(movieId);
+            }
+        }
+    }
+
+    @Override
+    public void onRebuilt(CatalogCache.Snapshot snapshot) {
+        // Agregados não dependem da linha do filme
+    }
+
+    @Override
+    public void onUpserted(Map<String, Object> movie, CatalogCache.Snapshot snapshot) {
+    }
+
+    @Override
+    public void onDeleted(int movieId, CatalogCache.Snapshot snapshot) {
+        synchronized (entries) {
+            entries.remove(movieId);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        long h = hits.sum();
+        long m = misses.sum();
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : Math.round(h * 10_000.0 / (h + m)) / 10_000.0);
+        stats.put("writeThroughs", writeThroughs.sum());
+        stats.put("viewEvictions", viewEvictions.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,359 @@
+package org.netflixpp.service;
+
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido em memória para a pesquisa de filmes.
+ *
+ * Os termos são normalizados (minúsculas, sem acentos) e pesados por campo
+ * (título > categoria/género > descrição). A pontuação usa BM25; o último termo da
+ * query é tratado como prefixo (pesquisa enquanto se escreve) e termos sem
+ * correspondência exata tentam correspondência aproximada (distância de edição).
+ *
+ * O índice é construído a partir do snapshot do {@link CatalogCache} e atualizado
+ * incrementalmente quando o catálogo muda.
+ */
+public class MovieSearchIndex implements CatalogCache.Listener {
+
+    private static volatile MovieSearchIndex INSTANCE;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Pesos por campo
+    private static final float TITLE_WEIGHT = 3.0f;
+    private static final float CATEGORY_WEIGHT = 2.0f;
+    private static final float GENRE_WEIGHT = 2.0f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+
+    // Parâmetros BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Penalizações para correspondências não exatas
+    private static final double PREFIX_FACTOR = 0.8;
+    private static final double FUZZY_FACTOR = 0.6;
+    private static final int MAX_EXPANSIONS = 50;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Map<Integer, Float>> postings = new TreeMap<>(); // termo -> (movieId -> tf pesado)
+    private final Map<Integer, Map<String, Float>> docTerms = new HashMap<>();    // movieId -> termos
+    private final Map<Integer, Float> docLengths = new HashMap<>();
+    private double totalLength;
+    private long indexedVersion = -1; // versão do snapshot indexado; -1 = por construir
+
+    // Métricas
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    private MovieSearchIndex() {
+        CatalogCache.getInstance().addListener(this);
+    }
+
+    public static MovieSearchIndex getInstance() {
+        if (INSTANCE == null) {
+            synchronized (MovieSearchIndex.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new MovieSearchIndex();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Pesquisa o catálogo e devolve até {@code limit} filmes ordenados por relevância.
+     * Cada resultado é uma cópia da linha do filme com o campo {@code score}.
+     */
+    public List<Map<String, Object>> search(String query, int limit) throws SQLException {
+        long start = System.nanoTime();
+        CatalogCache.Snapshot snapshot = CatalogCache.getInstance().current();
+        ensureIndexed(snapshot);
+
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) return new ArrayList<>();
+
+        Map<Integer, Double> scores;
+        lock.readLock().lock();
+        try {
+            scores = score(terms);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Top-k por pontuação (desempate por id para resultados determinísticos)
+        PriorityQueue<Map.Entry<Integer, Double>> top = new PriorityQueue<>(
+                Comparator.<Map.Entry<Integer, Double>>comparingDouble(Map.Entry::getValue)
+                        .thenComparing(Map.Entry::getKey, Comparator.reverseOrder()));
+        for (Map.Entry<Integer, Double> e : scores.entrySet()) {
+            top.offer(e);
+            if (top.size() > limit) top.poll();
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            Map.Entry<Integer, Double> e = top.poll();
+            Map<String, Object> movie = snapshot.getById(e.getKey());
+            if (movie == null) continue;
+            Map<String, Object> copy = new HashMap<>(movie);
+            copy.put("score", Math.round(e.getValue() * 10_000d) / 10_000d);
+            results.add(copy);
+        }
+        Collections.reverse(results);
+
+        queries.increment();
+        queryNanos.add(System.nanoTime() - start);
+        return results;
+    }
+
+    /**
+     * Métricas sem construir o índice nem registá-lo no catálogo.
+     */
+    public static Map<String, Object> getStatsIfStarted() {
+        MovieSearchIndex instance = INSTANCE;
+        return instance != null ? instance.getStats() : Map.of("started", false);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("indexedVersion", indexedVersion);
+            stats.put("documents", docTerms.size());
+            stats.put("terms", postings.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        long q = queries.sum();
+        stats.put("queries", q);
+        stats.put("avgQueryMicros", q == 0 ? 0 : queryNanos.sum() / q / 1_000);
+        stats.put("rebuilds", rebuilds.sum());
+        return stats;
+    }
+
+    // ========== ATUALIZAÇÃO A PARTIR DO CATÁLOGO ==========
+
+    @Override
+    public void onRebuilt(CatalogCache.Snapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            if (indexedVersion < 0) return; // ainda não usado; será construído na primeira pesquisa
+            if (snapshot.getVersion() <= indexedVersion) return;
+            rebuild(snapshot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onUpserted(Map<String, Object> movie, CatalogCache.Snapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            if (indexedVersion < 0 || snapshot.getVersion() <= indexedVersion) return;
+            int id = (Integer) movie.get("id");
+            removeDoc(id);
+            addDoc(id, movie);
+            indexedVersion = snapshot.getVersion();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onDeleted(int movieId, CatalogCache.Snapshot snapshot) {
+        lock.writeLock().lock();
+        try {
+            if (indexedVersion < 0 || snapshot.getVersion() <= indexedVersion) return;
+            removeDoc(movieId);
+            indexedVersion = snapshot.getVersion();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureIndexed(CatalogCache.Snapshot snapshot) {
+        lock.readLock().lock();
+        try {
+            if (indexedVersion >= 0) return;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (indexedVersion >= 0) return;
+            rebuild(snapshot);
+
+            // Eventos publicados antes de termos o lock foram ignorados (indexedVersion < 0).
+            // Os seguintes esperam pelo lock e aplicam-se por cima; os anteriores já estão no
+            // snapshot publicado, por isso se este avançou reconstrói-se a partir dele.
+            CatalogCache.Snapshot latest = CatalogCache.getInstance().peek();
+            while (latest != null && latest.getVersion() > indexedVersion) {
+                rebuild(latest);
+                latest = CatalogCache.getInstance().peek();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Chamado com writeLock
+    private void rebuild(CatalogCache.Snapshot snapshot) {
+        postings.clear();
+        docTerms.clear();
+        docLengths.clear();
+        totalLength = 0;
+        for (Map<String, Object> movie : snapshot.getNewestFirst()) {
+            addDoc((Integer) movie.get("id"), movie);
+        }
+        indexedVersion = snapshot.getVersion();
+        rebuilds.increment();
+    }
+
+    private void addDoc(int id, Map<String, Object> movie) {
+        Map<String, Float> tf = new HashMap<>();
+        addField(tf, (String) movie.get("title"), TITLE_WEIGHT);
+        addField(tf, (String) movie.get("category"), CATEGORY_WEIGHT);
+        addField(tf, (String) movie.get("genre"), GENRE_WEIGHT);
+        addField(tf, (String) movie.get("description"), DESCRIPTION_WEIGHT);
+
+        float length = 0;
+        for (Map.Entry<String, Float> e : tf.entrySet()) {
+            postings.computeIfAbsent(e.getKey(), k -> new HashMap<>()).put(id, e.getValue());
+            length += e.getValue();
+        }
+        docTerms.put(id, tf);
+        docLengths.put(id, length);
+        totalLength += length;
+    }
+
+    private void removeDoc(int id) {
+        Map<String, Float> tf = docTerms.remove(id);
+        if (tf == null) return;
+        for (String term : tf.keySet()) {
+            Map<Integer, Float> docs = postings.get(term);
+            if (docs != null) {
+                docs.remove(id);
+                if (docs.isEmpty()) postings.remove(term);
+            }
+        }
+        Float length = docLengths.remove(id);
+        if (length != null) totalLength -= length;
+    }
+
+    private static void addField(Map<String, Float> tf, String text, float weight) {
+        for (String term : tokenize(text)) {
+            tf.merge(term, weight, Float::sum);
+        }
+    }
+
+    // ========== PONTUAÇÃO ==========
+
+    // Chamado com readLock. Um filme só é devolvido se corresponder a todos os termos da query.
+    private Map<Integer, Double> score(List<String> terms) {
+        int n = docTerms.size();
+        if (n == 0) return Collections.emptyMap();
+        double avgLength = totalLength / n;
+
+        Map<Integer, Double> scores = null;
+        for (int i = 0; i < terms.size(); i++) {
+            boolean last = i == terms.size() - 1;
+            Map<Integer, Double> termScores = new HashMap<>();
+
+            for (Map.Entry<String, Double> match : expand(terms.get(i), last).entrySet()) {
+                Map<Integer, Float> docs = postings.get(match.getKey());
+                double idf = Math.log(1 + (n - docs.size() + 0.5) / (docs.size() + 0.5));
+                for (Map.Entry<Integer, Float> d : docs.entrySet()) {
+                    double tf = d.getValue();
+                    double norm = tf + K1 * (1 - B + B * docLengths.get(d.getKey()) / avgLength);
+                    double s = match.getValue() * idf * tf * (K1 + 1) / norm;
+                    // Várias expansões do mesmo termo: conta a melhor
+                    termScores.merge(d.getKey(), s, Math::max);
+                }
+            }
+
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                Map<Integer, Double> merged = new HashMap<>();
+                for (Map.Entry<Integer, Double> e : scores.entrySet()) {
+                    Double s = termScores.get(e.getKey());
+                    if (s != null) merged.put(e.getKey(), e.getValue() + s);
+                }
+                scores = merged;
+            }
+            if (scores.isEmpty()) break;
+        }
+        return scores;
+    }
+
+    // Termos do índice que correspondem a um termo da query, com o fator de peso
+    private Map<String, Double> expand(String term, boolean allowPrefix) {
+        Map<String, Double> matches = new HashMap<>();
+        if (postings.containsKey(term)) {
+            matches.put(term, 1.0);
+        }
+
+        if (allowPrefix) {
+            int added = 0;
+            for (String candidate : postings.subMap(term, false, term + Character.MAX_VALUE, false).keySet()) {
+                if (added++ >= MAX_EXPANSIONS) break;
+                matches.putIfAbsent(candidate, PREFIX_FACTOR);
+            }
+        }
+
+        if (matches.isEmpty() && term.length() >= 4) {
+            int maxDistance = term.length() >= 8 ? 2 : 1;
+            // Candidatos com a mesma primeira letra e comprimento próximo
+            String from = term.substring(0, 1);
+            String to = from + Character.MAX_VALUE;
+            int added = 0;
+            for (String candidate : postings.subMap(from, true, to, false).keySet()) {
+                if (Math.abs(candidate.length() - term.length()) > maxDistance) continue;
+                if (editDistance(term, candidate, maxDistance) <= maxDistance) {
+                    matches.put(candidate, FUZZY_FACTOR);
+                    if (++added >= MAX_EXPANSIONS) break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    // Levenshtein com corte: devolve max + 1 assim que a distância excede max
+    private static int editDistance(String a, String b, int max) {
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) prev[j] = j;
+
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > max) return max + 1;
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[b.length()];
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) return Collections.emptyList();
+        String folded = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        List<String> tokens = new ArrayList<>();
+        for (String t : SEPARATORS.split(folded.toLowerCase(Locale.ROOT))) {
+            if (!t.isEmpty()) tokens.add(t);
+        }
+        return tokens;
+    }
+}
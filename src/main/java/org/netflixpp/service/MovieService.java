@@ -7,45 +7,159 @@ import java.util.*;
 
 public class MovieService {
 
-    private final ChunkManager chunkManager = new ChunkManager();
+    public static final int MAX_PAGE_SIZE = 100;
+
+    // Ordenações suportadas por getMoviesPage: coluna de ordenação + direção.
+    // O id entra sempre como desempate para que o cursor seja estável; cada ordenação
+    // tem o seu índice (coluna, id) em movies (ver Main.migrateMoviesForPaging).
+    private static final Map<String, String[]> PAGE_SORTS = Map.of(
+            "newest", new String[]{"m.created_at", "DESC"},
+            "title", new String[]{"m.title", "ASC"},
+            "year", new String[]{"m.year", "DESC"},
+            "views", new String[]{"m.views", "DESC"}
+    );
+
+    private final ChunkManager chunkManager = ChunkManager.getInstance();
+    private final CatalogCache catalog = CatalogCache.getInstance();
+    private final MovieDetailCache details = MovieDetailCache.getInstance();
 
     public List<Map<String, Object>> getAllMovies() throws SQLException {
-        return getMoviesWithQuery("SELECT * FROM movies ORDER BY created_at DESC");
+        return catalog.current().getNewestFirst();
+    }
+
+    /**
+     * Página de filmes ordenada e paginada na BD (keyset/seek pagination).
+     *
+     * @param sort   newest | title | year | views
+     * @param cursor cursor devolvido pela página anterior (opcional); tem prioridade sobre page
+     * @param page   página (1-based), usada apenas quando não há cursor
+     * @param limit  tamanho da página (1..MAX_PAGE_SIZE)
+     */
+    public Map<String, Object> getMoviesPage(String sort, String cursor, int page, int limit)
+            throws SQLException {
+
+        String sortKey = PAGE_SORTS.containsKey(sort) ? sort : "newest";
+        String[] order = PAGE_SORTS.get(sortKey);
+        String expr = order[0];
+        boolean desc = "DESC".equals(order[1]);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        int pageNumber = Math.max(1, page);
+
+        StringBuilder sql = new StringBuilder("SELECT m.* FROM movies m");
+
+        List<Object> params = new ArrayList<>();
+        PageCursor after = cursor != null && !cursor.isBlank() ? PageCursor.decode(cursor, sortKey) : null;
+        if (after != null) {
+            String cmp = desc ? "<" : ">";
+            sql.append(" WHERE (").append(expr).append(" ").append(cmp).append(" ?")
+                    .append(" OR (").append(expr).append(" = ? AND m.id ").append(cmp).append(" ?))");
+            params.add(after.value);
+            params.add(after.value);
+            params.add(after.id);
+        }
+
+        sql.append(" ORDER BY ").append(expr).append(" ").append(order[1])
+                .append(", m.id ").append(order[1])
+                .append(" LIMIT ?");
+        params.add(pageSize + 1); // +1 para saber se há página seguinte
+
+        if (after == null && pageNumber > 1) {
+            sql.append(" OFFSET ?");
+            params.add((pageNumber - 1) * pageSize);
+        }
+
+        List<Map<String, Object>> movies = new ArrayList<>();
+        try (Connection conn = DbConfig.getMariaDB();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> movie = extractMovieFromResultSet(rs);
+                    if ("views".equals(sortKey)) {
+                        movie.put("views", rs.getLong("views"));
+                    }
+                    movies.add(movie);
+                }
+            }
+        }
+
+        boolean hasMore = movies.size() > pageSize;
+        if (hasMore) {
+            movies = movies.subList(0, pageSize);
+        }
+
+        String nextCursor = null;
+        if (hasMore) {
+            Map<String, Object> last = movies.get(movies.size() - 1);
+            nextCursor = PageCursor.encode(sortKey, sortValue(sortKey, last), (Integer) last.get("id"));
+        }
+
+        int total = catalog.getMovieCount();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("movies", movies);
+        result.put("sort", sortKey);
+        result.put("limit", pageSize);
+        result.put("nextCursor", nextCursor);
+        result.put("hasMore", hasMore);
+        result.put("total", total);
+        result.put("pages", (int) Math.ceil((double) total / pageSize));
+        if (after == null) {
+            result.put("page", pageNumber);
+        }
+        return result;
+    }
+
+    private static Object sortValue(String sortKey, Map<String, Object> movie) {
+        switch (sortKey) {
+            case "title": return movie.get("title");
+            case "year": return movie.get("year");
+            case "views": return movie.get("views");
+            default: return movie.get("createdAt");
+        }
     }
 
     public List<Map<String, Object>> getFeaturedMovies() throws SQLException {
-        return getMoviesWithQuery(
-                "SELECT * FROM movies ORDER BY RAND() LIMIT 10");
+        return FeaturedRotation.getInstance().getFeatured();
+    }
+
+    /**
+     * Destaques com shuffle próprio: a mesma seed devolve o mesmo conjunto
+     * até à próxima rotação.
+     */
+    public List<Map<String, Object>> getFeaturedMovies(String seed) throws SQLException {
+        if (seed == null || seed.isBlank()) {
+            return getFeaturedMovies();
+        }
+        long value;
+        try {
+            value = Long.parseLong(seed);
+        } catch (NumberFormatException e) {
+            value = seed.hashCode();
+        }
+        return FeaturedRotation.getInstance().getFeatured(value);
     }
 
     public List<Map<String, Object>> getMoviesByCategory(String category) throws SQLException {
-        return getMoviesWithQuery(
-                "SELECT * FROM movies WHERE category = ? ORDER BY title", category);
+        return catalog.current().getByCategory(category);
     }
 
     public List<Map<String, Object>> getMoviesByGenre(String genre) throws SQLException {
-        return getMoviesWithQuery(
-                "SELECT * FROM movies WHERE genre = ? ORDER BY title", genre);
+        return catalog.current().getByGenre(genre);
     }
 
     public List<Map<String, Object>> getRecentMovies(int limit) throws SQLException {
-        return getMoviesWithQuery(
-                "SELECT * FROM movies ORDER BY created_at DESC LIMIT ?", limit);
+        return catalog.current().getRecent(limit);
     }
 
     public Map<String, Object> getMovieById(int id) throws SQLException {
-        try (Connection conn = DbConfig.getMariaDB();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT * FROM movies WHERE id = ?")) {
-
-            stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return extractMovieFromResultSet(rs);
-            }
-        }
-        return null;
+        Map<String, Object> movie = catalog.current().getById(id);
+        // Cópia mutável: o snapshot do catálogo é imutável
+        return movie != null ? new HashMap<>(movie) : null;
     }
 
     public Map<String, Object> getMovieWithDetails(int id) throws SQLException {
@@ -57,69 +171,34 @@ public class MovieService {
             movie.put("chunks", chunkInfo.get("chunks"));
             movie.put("chunkCount", chunkInfo.get("count"));
 
-            // Adicionar estatísticas de visualização
-            movie.put("views", getMovieViewCount(id));
-            movie.put("averageRating", getMovieAverageRating(id));
+            // Views e rating: cache por filme, carregada numa única query
+            details.fill(id, movie);
         }
         return movie;
     }
 
     public List<Map<String, Object>> searchMovies(String query) throws SQLException {
+        return searchMovies(query, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Pesquisa por relevância no índice invertido em memória (ver {@link MovieSearchIndex}).
+     */
+    public List<Map<String, Object>> searchMovies(String query, int limit) throws SQLException {
         if (query == null || query.trim().isEmpty()) {
             return getAllMovies();
         }
 
-        String searchTerm = "%" + query + "%";
-        try (Connection conn = DbConfig.getMariaDB();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT * FROM movies WHERE title LIKE ? OR description LIKE ? " +
-                             "OR category LIKE ? OR genre LIKE ? ORDER BY title")) {
-
-            for (int i = 1; i <= 4; i++) {
-                stmt.setString(i, searchTerm);
-            }
-
-            ResultSet rs = stmt.executeQuery();
-            List<Map<String, Object>> movies = new ArrayList<>();
-
-            while (rs.next()) {
-                movies.add(extractMovieFromResultSet(rs));
-            }
-
-            return movies;
-        }
+        int max = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return MovieSearchIndex.getInstance().search(query, max);
     }
 
     public List<String> getAllCategories() throws SQLException {
-        List<String> categories = new ArrayList<>();
-
-        try (Connection conn = DbConfig.getMariaDB();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                     "SELECT DISTINCT category FROM movies WHERE category IS NOT NULL ORDER BY category")) {
-
-            while (rs.next()) {
-                categories.add(rs.getString("category"));
-            }
-        }
-
-        return categories;
+        return catalog.current().getCategories();
     }
 
     public List<String> getAllGenres() throws SQLException {
-        List<String> genres = new ArrayList<>();
-
-        try (Connection conn = DbConfig.getMariaDB();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                     "SELECT DISTINCT genre FROM movies WHERE genre IS NOT NULL ORDER BY genre")) {
-
-            while (rs.next()) {
-                genres.add(rs.getString("genre"));
-            }
-        }
-
-        return genres;
+        return catalog.current().getGenres();
     }
 
     public int createMovie(String title, String description, String category,
@@ -140,7 +219,9 @@ public class MovieService {
 
             ResultSet rs = stmt.getGeneratedKeys();
             if (rs.next()) {
-                return rs.getInt(1);
+                int movieId = rs.getInt(1);
+                catalog.onMovieUpserted(movieId);
+                return movieId;
             }
 
             return -1;
@@ -193,7 +274,9 @@ public class MovieService {
                 stmt.setObject(i + 1, params.get(i));
             }
 
-            return stmt.executeUpdate() > 0;
+            boolean updated = stmt.executeUpdate() > 0;
+            if (updated) catalog.onMovieUpserted(id);
+            return updated;
         }
     }
 
@@ -203,7 +286,9 @@ public class MovieService {
                      "DELETE FROM movies WHERE id = ?")) {
 
             stmt.setInt(1, id);
-            return stmt.executeUpdate() > 0;
+            boolean deleted = stmt.executeUpdate() > 0;
+            if (deleted) catalog.onMovieDeleted(id);
+            return deleted;
         }
     }
 
@@ -216,123 +301,93 @@ public class MovieService {
             stmt.setString(2, path360);
             stmt.setInt(3, id);
 
-            return stmt.executeUpdate() > 0;
+            boolean updated = stmt.executeUpdate() > 0;
+            if (updated) catalog.onMovieUpserted(id);
+            return updated;
         }
     }
 
-    public void recordMovieView(int movieId, int userId) throws SQLException {
-        try (Connection conn = DbConfig.getMariaDB();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "INSERT INTO watch_history (user_id, movie_id) VALUES (?, ?) " +
-                             "ON DUPLICATE KEY UPDATE watched_at = CURRENT_TIMESTAMP, views = views + 1")) {
-
-            stmt.setInt(1, userId);
-            stmt.setInt(2, movieId);
-            stmt.executeUpdate();
-        }
+    /**
+     * Regista uma view de forma assíncrona (ver {@link ViewAggregator}).
+     * Devolve false se o buffer de views estiver cheio.
+     */
+    public boolean recordMovieView(int movieId, int userId) {
+        return ViewAggregator.getInstance().record(movieId, userId);
     }
 
-    public int getMovieViewCount(int movieId) throws SQLException {
-        try (Connection conn = DbConfig.getMariaDB();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT COUNT(*) as view_count FROM watch_history WHERE movie_id = ?")) {
-
-            stmt.setInt(1, movieId);
-            ResultSet rs = stmt.executeQuery();
+    /**
+     * Utilizadores distintos que viram o filme (linhas de watch_history).
+     */
+    public long getMovieViewCount(int movieId) throws SQLException {
+        return details.getViewers(movieId);
+    }
 
-            if (rs.next()) {
-                return rs.getInt("view_count");
-            }
-            return 0;
-        }
+    /**
+     * Total de reproduções do filme (soma de watch_history.views).
+     */
+    public long getMovieTotalViews(int movieId) throws SQLException {
+        return details.getTotalViews(movieId);
     }
 
     public double getMovieAverageRating(int movieId) throws SQLException {
-        try (Connection conn = DbConfig.getMariaDB();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT AVG(rating) as avg_rating FROM ratings WHERE movie_id = ?")) {
-
-            stmt.setInt(1, movieId);
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                return rs.getDouble("avg_rating");
-            }
-            return 0.0;
-        }
+        return details.getAverageRating(movieId);
     }
 
     public Map<String, Object> getMovieStatistics() throws SQLException {
-        Map<String, Object> stats = new HashMap<>();
-
-        try (Connection conn = DbConfig.getMariaDB();
-             Statement stmt = conn.createStatement()) {
-
-            // Total de filmes
-            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) as total FROM movies");
-            if (rs.next()) stats.put("totalMovies", rs.getInt("total"));
-
-            // Filmes por categoria
-            rs = stmt.executeQuery(
-                    "SELECT category, COUNT(*) as count FROM movies " +
-                            "WHERE category IS NOT NULL GROUP BY category ORDER BY count DESC");
-
-            List<Map<String, Object>> byCategory = new ArrayList<>();
-            while (rs.next()) {
-                Map<String, Object> item = new HashMap<>();
-                item.put("category", rs.getString("category"));
-                item.put("count", rs.getInt("count"));
-                byCategory.add(item);
-            }
-            stats.put("moviesByCategory", byCategory);
-
-            // Filmes por ano
-            rs = stmt.executeQuery(
-                    "SELECT year, COUNT(*) as count FROM movies " +
-                            "WHERE year IS NOT NULL GROUP BY year ORDER BY year DESC");
-
-            List<Map<String, Object>> byYear = new ArrayList<>();
-            while (rs.next()) {
-                Map<String, Object> item = new HashMap<>();
-                item.put("year", rs.getInt("year"));
-                item.put("count", rs.getInt("count"));
-                byYear.add(item);
-            }
-            stats.put("moviesByYear", byYear);
-
-            // Total de visualizações
-            rs = stmt.executeQuery("SELECT SUM(views) as total_views FROM watch_history");
-            if (rs.next()) stats.put("totalViews", rs.getInt("total_views"));
-
-        }
-
-        return stats;
+        // Contadores materializados (ver StatisticsEngine)
+        return StatisticsEngine.getInstance().getMovieStatistics();
     }
 
-    // Métodos privados auxiliares
-    private List<Map<String, Object>> getMoviesWithQuery(String query, Object... params)
-            throws SQLException {
-
-        List<Map<String, Object>> movies = new ArrayList<>();
+    /**
+     * Cursor opaco de paginação: ordenação + valor de ordenação + id da última linha.
+     */
+    private static final class PageCursor {
+        final Object value;
+        final int id;
 
-        try (Connection conn = DbConfig.getMariaDB();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        private PageCursor(Object value, int id) {
+            this.value = value;
+            this.id = id;
+        }
 
-            for (int i = 0; i < params.length; i++) {
-                stmt.setObject(i + 1, params[i]);
+        static String encode(String sortKey, Object value, int id) {
+            String raw;
+            if (value instanceof Timestamp) {
+                raw = String.valueOf(((Timestamp) value).getTime());
+            } else {
+                raw = String.valueOf(value);
             }
+            String token = sortKey + "|" + id + "|" + raw;
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(token.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        }
 
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                movies.add(extractMovieFromResultSet(rs));
+        static PageCursor decode(String cursor, String sortKey) {
+            try {
+                String token = new String(Base64.getUrlDecoder().decode(cursor),
+                        java.nio.charset.StandardCharsets.UTF_8);
+                String[] parts = token.split("\\|", 3);
+                if (parts.length != 3 || !parts[0].equals(sortKey)) {
+                    throw new IllegalArgumentException("Cursor does not match sort '" + sortKey + "'");
+                }
+                int id = Integer.parseInt(parts[1]);
+                Object value;
+                switch (sortKey) {
+                    case "title": value = parts[2]; break;
+                    case "year": value = Integer.parseInt(parts[2]); break;
+                    case "views": value = Long.parseLong(parts[2]); break;
+                    default: value = new Timestamp(Long.parseLong(parts[2])); break;
+                }
+                return new PageCursor(value, id);
+            } catch (IllegalArgumentException e) {
+                // inclui NumberFormatException e Base64 inválido
+                throw new IllegalArgumentException("Invalid cursor", e);
             }
         }
-
-        return movies;
     }
 
-    private Map<String, Object> extractMovieFromResultSet(ResultSet rs) throws SQLException {
+    // Métodos auxiliares
+    static Map<String, Object> extractMovieFromResultSet(ResultSet rs) throws SQLException {
         Map<String, Object> movie = new HashMap<>();
         movie.put("id", rs.getInt("id"));
         movie.put("title", rs.getString("title"));
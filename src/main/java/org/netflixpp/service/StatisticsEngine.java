@@ -0,0 +1,364 @@
+package org.netflixpp.service;
+
+import org.netflixpp.config.Config;
+import org.netflixpp.config.DbConfig;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Estatísticas materializadas (filmes por categoria/ano, utilizadores por role, total de views).
+ *
+ * Os contadores são mantidos incrementalmente: filmes via {@link CatalogCache.Listener},
+ * views pelos flushes do {@link ViewAggregator} e utilizadores pelos serviços que escrevem
+ * em users. Um reconcile periódico (STATS_RECONCILE_MS) volta a contar tudo na BD para
+ * corrigir alterações feitas fora da aplicação, e acerta também movies.views. Os pedidos
+ * são servidos da memória.
+ */
+public class StatisticsEngine implements CatalogCache.Listener {
+
+    private static volatile StatisticsEngine INSTANCE;
+
+    private final Object lock = new Object();
+
+    // Filmes: contribuição de cada filme, para desfazer em updates/deletes
+    private final Map<Integer, MovieKey> movieKeys = new HashMap<>();
+    private final Map<String, Integer> moviesByCategory = new HashMap<>(); // chave de CatalogCache.key
+    private final Map<String, String> categoryLabels = new HashMap<>();   // chave -> nome mostrado
+    private final Map<Integer, Integer> moviesByYear = new HashMap<>();
+    private long movieVersion = -1;
+
+    private final Map<String, Integer> usersByRole = new HashMap<>();
+    // Inserts em users com o read lock, recount com o write lock: cada utilizador novo é
+    // contado uma só vez, pelo SELECT do recount ou pelo incremento
+    private final ReentrantReadWriteLock usersGate = new ReentrantReadWriteLock();
+    private volatile long totalViews;
+
+    // Vistas imutáveis publicadas após cada alteração
+    private volatile List<Map<String, Object>> categoryView = List.of();
+    private volatile List<Map<String, Object>> yearView = List.of();
+    private volatile List<Map<String, Object>> roleView = List.of();
+    private volatile int totalMovies;
+    private volatile int totalUsers;
+
+    private volatile boolean loaded;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean usersReconcilePending = new AtomicBoolean();
+
+    private final LongAdder reconciles = new LongAdder();
+    private final LongAdder incrementalUpdates = new LongAdder();
+    private volatile long lastReconcileAt;
+    private volatile long lastReconcileDurationMs;
+
+    private record MovieKey(String category, int year) {}
+
+    private StatisticsEngine() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stats-reconcile");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Config.STATS_RECONCILE_MS;
+        scheduler.scheduleWithFixedDelay(this::reconcileQuietly, period, period, TimeUnit.MILLISECONDS);
+        CatalogCache.getInstance().addListener(this);
+    }
+
+    public static StatisticsEngine getInstance() {
+        if (INSTANCE == null) {
+            synchronized (StatisticsEngine.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new StatisticsEngine();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    // ========== LEITURA ==========
+
+    /**
+     * Mesmo formato que o antigo MovieService.getMovieStatistics.
+     */
+    public Map<String, Object> getMovieStatistics() throws SQLException {
+        ensureLoaded();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalMovies", totalMovies);
+        stats.put("moviesByCategory", categoryView);
+        stats.put("moviesByYear", yearView);
+        stats.put("totalViews", totalViews);
+        return stats;
+    }
+
+    public Map<String, Object> getUserStatistics() throws SQLException {
+        ensureLoaded();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalUsers", totalUsers);
+        stats.put("usersByRole", roleView);
+        return stats;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loaded", loaded);
+        stats.put("reconciles", reconciles.sum());
+        stats.put("incrementalUpdates", incrementalUpdates.sum());
+        stats.put("lastReconcileAt", lastReconcileAt > 0 ? new java.util.Date(lastReconcileAt) : null);
+        stats.put("lastReconcileDurationMs", lastReconcileDurationMs);
+        return stats;
+    }
+
+    private void ensureLoaded() throws SQLException {
+        if (loaded) return;
+        synchronized (this) {
+            if (!loaded) {
+                reconcile();
+            }
+        }
+    }
+
+    // ========== ATUALIZAÇÕES INCREMENTAIS ==========
+
+    @Override
+    public void onRebuilt(CatalogCache.Snapshot snapshot) {
+        synchronized (lock) {
+            applyCatalog(snapshot);
+        }
+    }
+
+    @Override
+    public void onUpserted(Map<String, Object> movie, CatalogCache.Snapshot snapshot) {
+        synchronized (lock) {
+            int id = (Integer) movie.get("id");
+            removeMovie(id);
+            addMovie(id, movie);
+            movieVersion = snapshot.getVersion();
+            publishMovies();
+        }
+        incrementalUpdates.increment();
+    }
+
+    @Override
+    public void onDeleted(int movieId, CatalogCache.Snapshot snapshot) {
+        synchronized (lock) {
+            removeMovie(movieId);
+            movieVersion = snapshot.getVersion();
+            publishMovies();
+        }
+        incrementalUpdates.increment();
+    }
+
+    /**
+     * Views escritas na BD pelo ViewAggregator (chamado com o flush em curso).
+     */
+    public void onViewsFlushed(long views) {
+        synchronized (lock) {
+            totalViews += views;
+        }
+        incrementalUpdates.increment();
+    }
+
+    /**
+     * Executa o INSERT em users (devolve as linhas inseridas) e conta-as na role dada, sem um
+     * recount de users a meio: um recount entre o INSERT e o incremento perderia o incremento.
+     */
+    public int insertUser(String role, Callable<Integer> insert) throws SQLException {
+        usersGate.readLock().lock();
+        try {
+            int inserted = insert.call();
+            if (inserted > 0) {
+                synchronized (lock) {
+                    usersByRole.merge(role != null ? role : "user", inserted, Integer::sum);
+                    publishUsers();
+                }
+                incrementalUpdates.increment();
+            }
+            return inserted;
+        } catch (SQLException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e);
+        } finally {
+            usersGate.readLock().unlock();
+        }
+    }
+
+    /**
+     * Role alterada ou utilizador apagado: recontar users (tabela pequena) em background.
+     */
+    public void onUsersChanged() {
+        if (usersReconcilePending.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                usersReconcilePending.set(false);
+                try {
+                    reconcileUsers();
+                } catch (SQLException e) {
+                    System.err.println("[STATS] Users recount failed: " + e.getMessage());
+                }
+            }, 500, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // ========== RECONCILE ==========
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            System.err.println("[STATS] Reconcile failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recalcula todos os contadores a partir da BD (filmes a partir do snapshot do catálogo).
+     */
+    public synchronized void reconcile() throws SQLException {
+        long start = System.currentTimeMillis();
+
+        // Fora do lock: current() pode reconstruir o snapshot e notificar onRebuilt
+        CatalogCache.Snapshot snapshot = CatalogCache.getInstance().current();
+        synchronized (lock) {
+            if (snapshot.getVersion() >= movieVersion) {
+                applyCatalog(snapshot);
+            }
+        }
+
+        reconcileUsers();
+
+        // Com o flush de views parado, para não contar o mesmo delta duas vezes
+        ViewAggregator.getInstance().withFlushPaused(() -> {
+            long views = queryLong("SELECT COALESCE(SUM(views), 0) AS total FROM watch_history");
+            synchronized (lock) {
+                totalViews = views;
+            }
+            // O total por filme (movies.views, ordenação por views) também diverge com
+            // histórico apagado ou utilizadores removidos
+            int drifted = update(ViewAggregator.RESYNC_MOVIE_VIEWS_SQL);
+            if (drifted > 0) {
+                System.out.println("[STATS] Resynced views of " + drifted + " movies");
+            }
+            return null;
+        });
+
+        loaded = true;
+        reconciles.increment();
+        lastReconcileAt = System.currentTimeMillis();
+        lastReconcileDurationMs = lastReconcileAt - start;
+    }
+
+    // Com os inserts de users parados até a contagem ser guardada (ver insertUser)
+    private void reconcileUsers() throws SQLException {
+        Map<String, Integer> counts = new HashMap<>();
+        usersGate.writeLock().lock();
+        try {
+            try (Connection conn = DbConfig.getMariaDB();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT role, COUNT(*) as count FROM users GROUP BY role")) {
+                while (rs.next()) {
+                    counts.put(rs.getString("role"), rs.getInt("count"));
+                }
+            }
+            synchronized (lock) {
+                usersByRole.clear();
+                usersByRole.putAll(counts);
+                publishUsers();
+            }
+        } finally {
+            usersGate.writeLock().unlock();
+        }
+    }
+
+    private static long queryLong(String sql) throws SQLException {
+        try (Connection conn = DbConfig.getMariaDB();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static int update(String sql) throws SQLException {
+        try (Connection conn = DbConfig.getMariaDB();
+             Statement stmt = conn.createStatement()) {
+            return stmt.executeUpdate(sql);
+        }
+    }
+
+    // ========== CONTADORES (chamados com lock) ==========
+
+    private void applyCatalog(CatalogCache.Snapshot snapshot) {
+        movieKeys.clear();
+        moviesByCategory.clear();
+        categoryLabels.clear();
+        moviesByYear.clear();
+        for (Map<String, Object> movie : snapshot.getNewestFirst()) {
+            addMovie((Integer) movie.get("id"), movie);
+        }
+        movieVersion = snapshot.getVersion();
+        publishMovies();
+    }
+
+    private void addMovie(int id, Map<String, Object> movie) {
+        String label = (String) movie.get("category");
+        String category = CatalogCache.key(label);
+        Object y = movie.get("year");
+        int year = y instanceof Integer ? (Integer) y : 0;
+        MovieKey key = new MovieKey(category, year);
+        movieKeys.put(id, key);
+        if (category != null) {
+            moviesByCategory.merge(category, 1, Integer::sum);
+            categoryLabels.putIfAbsent(category, label);
+        }
+        if (year != 0) moviesByYear.merge(year, 1, Integer::sum); // getInt devolve 0 para NULL
+    }
+
+    private void removeMovie(int id) {
+        MovieKey key = movieKeys.remove(id);
+        if (key == null) return;
+        if (key.category() != null && decrement(moviesByCategory, key.category())) {
+            categoryLabels.remove(key.category());
+        }
+        if (key.year() != 0) decrement(moviesByYear, key.year());
+    }
+
+    // Devolve true se a contagem chegou a zero (chave removida)
+    private static <K> boolean decrement(Map<K, Integer> counts, K key) {
+        return counts.computeIfPresent(key, (k, v) -> v > 1 ? v - 1 : null) == null;
+    }
+
+    private void publishMovies() {
+        List<Map<String, Object>> byCategory = new ArrayList<>();
+        moviesByCategory.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(e -> byCategory.add(Map.of("category", categoryLabels.get(e.getKey()),
+                        "count", e.getValue())));
+
+        List<Map<String, Object>> byYear = new ArrayList<>();
+        moviesByYear.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByKey().reversed())
+                .forEach(e -> byYear.add(Map.of("year", e.getKey(), "count", e.getValue())));
+
+        categoryView = Collections.unmodifiableList(byCategory);
+        yearView = Collections.unmodifiableList(byYear);
+        totalMovies = movieKeys.size();
+    }
+
+    private void publishUsers() {
+        List<Map<String, Object>> byRole = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, Integer> e : usersByRole.entrySet()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("role", e.getKey()); // role pode ser NULL na BD
+            item.put("count", e.getValue());
+            byRole.add(item);
+            total += e.getValue();
+        }
+        roleView = Collections.unmodifiableList(byRole);
+        totalUsers = total;
+    }
+}
@@ -0,0 +1,139 @@
+package org.netflixpp.service;
+
+import org.netflixpp.config.Config;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache LRU (por processo) de firebase_uid -> utilizador interno.
+ *
+ * Evita um SELECT em users por pedido autenticado. As escritas em users feitas pela
+ * aplicação invalidam a entrada (por id ou username); o TTL cobre alterações feitas
+ * diretamente na BD.
+ */
+public class UserCache {
+
+    private static volatile UserCache INSTANCE;
+
+    private static final class Entry {
+        final Map<String, Object> user;
+        final long loadedAt;
+
+        Entry(Map<String, Object> user, long loadedAt) {
+            this.user = user;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMs;
+    private final LinkedHashMap<String, Entry> entries;
+    private long generation; // incrementado (com o lock de entries) a cada invalidação
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private UserCache(int maxEntries, long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > UserCache.this.maxEntries;
+            }
+        };
+    }
+
+    public static UserCache getInstance() {
+        if (INSTANCE == null) {
+            synchronized (UserCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new UserCache(Config.USER_CACHE_MAX_ENTRIES, Config.USER_CACHE_TTL_MS);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Devolve uma cópia do utilizador em cache, ou null se não existir / tiver expirado.
+     */
+    public Map<String, Object> get(String firebaseUid) {
+        if (firebaseUid == null) return null;
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry e = entries.get(firebaseUid);
+            if (e != null && now - e.loadedAt < ttlMs) {
+                hits.increment();
+                return new HashMap<>(e.user);
+            }
+            if (e != null) entries.remove(firebaseUid);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Geração das invalidações; ler antes do SELECT em users e passar ao {@link #put}.
+     */
+    public long generation() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * Guarda o utilizador lido da BD, a menos que tenha havido uma invalidação desde
+     * {@code generation}: a linha pode ser anterior à escrita (ex.: role já alterada).
+     */
+    public void put(String firebaseUid, Map<String, Object> user, long generation) {
+        if (firebaseUid == null || user == null || ttlMs <= 0) return;
+        Entry e = new Entry(Collections.unmodifiableMap(new HashMap<>(user)), System.currentTimeMillis());
+        synchronized (entries) {
+            if (this.generation == generation) entries.put(firebaseUid, e);
+        }
+    }
+
+    public void invalidateUserId(int userId) {
+        removeIf(user -> Objects.equals(user.get("id"), userId));
+    }
+
+    public void invalidateUsername(String username) {
+        if (username == null) return;
+        removeIf(user -> username.equals(user.get("username")));
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            generation++;
+        }
+        invalidations.increment();
+    }
+
+    // Raro (escritas em users): um varrimento linear chega
+    private void removeIf(java.util.function.Predicate<Map<String, Object>> predicate) {
+        synchronized (entries) {
+            entries.values().removeIf(e -> predicate.test(e.user));
+            generation++;
+        }
+        invalidations.increment();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        long h = hits.sum();
+        long m = misses.sum();
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : Math.round(h * 10_000.0 / (h + m)) / 10_000.0);
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+}
@@ -64,7 +64,9 @@ public class UserService {
                 stmt.setObject(i + 1, params.get(i));
             }
 
-            return stmt.executeUpdate() > 0;
+            boolean updated = stmt.executeUpdate() > 0;
+            if (updated) UserCache.getInstance().invalidateUsername(username);
+            return updated;
         }
     }
 
@@ -138,7 +140,9 @@ public class UserService {
             stmt.setString(3, username);
             stmt.setInt(4, progress != null ? progress : 0);
 
-            return stmt.executeUpdate() > 0;
+            boolean changed = stmt.executeUpdate() > 0;
+            if (changed) refreshMovieViews(conn, movieId);
+            return changed;
         }
     }
 
@@ -152,7 +156,20 @@ public class UserService {
             stmt.setString(1, username);
             stmt.setInt(2, movieId);
 
-            return stmt.executeUpdate() > 0;
+            boolean removed = stmt.executeUpdate() > 0;
+            if (removed) refreshMovieViews(conn, movieId);
+            return removed;
+        }
+    }
+
+    // movies.views (ordenação por views) acompanha as alterações ao histórico feitas aqui
+    private static void refreshMovieViews(Connection conn, int movieId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE movies SET views = (SELECT COALESCE(SUM(views), 0) FROM watch_history " +
+                        "WHERE movie_id = ?) WHERE id = ?")) {
+            stmt.setInt(1, movieId);
+            stmt.setInt(2, movieId);
+            stmt.executeUpdate();
         }
     }
 
@@ -314,7 +331,9 @@ public class UserService {
             stmt.setString(3, username);
             stmt.setInt(4, rating);
 
-            return stmt.executeUpdate() > 0;
+            boolean rated = stmt.executeUpdate() > 0;
+            if (rated) MovieDetailCache.getInstance().onRatingChanged(movieId);
+            return rated;
         }
     }
 
@@ -324,7 +343,12 @@ public class UserService {
                      "DELETE FROM users WHERE username = ?")) {
 
             stmt.setString(1, username);
-            return stmt.executeUpdate() > 0;
+            boolean deleted = stmt.executeUpdate() > 0;
+            if (deleted) {
+                UserCache.getInstance().invalidateUsername(username);
+                StatisticsEngine.getInstance().onUsersChanged();
+            }
+            return deleted;
         }
     }
 
@@ -0,0 +1,422 @@
+package org.netflixpp.service;
+
+import org.netflixpp.config.Config;
+import org.netflixpp.config.DbConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Agregação assíncrona de visualizações (POST /movies/{id}/view).
+ *
+ * Cada view incrementa um contador em memória por (filme, utilizador) e é confirmada
+ * de imediato. Os deltas acumulados são escritos em watch_history em INSERTs multi-linha
+ * (ON DUPLICATE KEY UPDATE views = views + delta), periodicamente ou quando o número de
+ * pares pendentes atinge VIEW_FLUSH_BATCH_SIZE. O buffer é limitado a VIEW_BUFFER_MAX_KEYS
+ * pares: acima disso novas views são rejeitadas (e contadas como descartadas).
+ *
+ * Na mesma transação de cada lote é somado o delta por filme a movies.views (total de
+ * reproduções, indexado para a ordenação "views" da paginação). O reconcile das
+ * estatísticas corrige o que não passa por aqui (histórico apagado, utilizadores removidos).
+ *
+ * Um par que viole uma constraint (ex.: filme apagado antes do flush) faz falhar o INSERT
+ * do lote inteiro; o lote é então repetido linha a linha e só esse par é descartado, em vez
+ * de voltar ao buffer e bloquear todos os flushes seguintes.
+ */
+public class ViewAggregator {
+
+    /** Volta a calcular movies.views a partir de watch_history (só as linhas que divergem). */
+    public static final String RESYNC_MOVIE_VIEWS_SQL =
+            "UPDATE movies m LEFT JOIN (SELECT movie_id, SUM(views) AS views FROM watch_history " +
+            "GROUP BY movie_id) v ON v.movie_id = m.id " +
+            "SET m.views = COALESCE(v.views, 0) WHERE m.views <> COALESCE(v.views, 0)";
+
+    private static volatile ViewAggregator INSTANCE;
+
+    private final int batchSize;
+    private final int maxPendingKeys;
+
+    // Leitores = record(); escritor = troca do buffer no flush
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile ConcurrentHashMap<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    private final AtomicLong oldestPendingAt = new AtomicLong(0); // 0 = buffer vazio
+
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private volatile boolean shutdown;
+
+    // Métricas
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushedViews = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private volatile long lastFlushAt;
+    private volatile long lastFlushDurationMs;
+    private volatile long lastFlushLagMs;
+
+    private ViewAggregator() {
+        this.batchSize = Math.max(1, Config.VIEW_FLUSH_BATCH_SIZE);
+        this.maxPendingKeys = Math.max(batchSize, Config.VIEW_BUFFER_MAX_KEYS);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "view-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Config.VIEW_FLUSH_INTERVAL_MS;
+        flusher.scheduleWithFixedDelay(this::flushQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public static ViewAggregator getInstance() {
+        if (INSTANCE == null) {
+            synchronized (ViewAggregator.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ViewAggregator();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Regista uma view. Devolve false se o buffer estiver cheio (view descartada).
+     */
+    public boolean record(int movieId, int userId) {
+        if (shutdown) {
+            dropped.increment();
+            return false;
+        }
+
+        long key = ((long) movieId << 32) | (userId & 0xFFFFFFFFL);
+        int size;
+        swapLock.readLock().lock();
+        try {
+            LongAdder counter = pending.get(key);
+            if (counter == null) {
+                if (pending.size() >= maxPendingKeys) {
+                    dropped.increment();
+                    requestFlush();
+                    return false;
+                }
+                counter = pending.computeIfAbsent(key, k -> new LongAdder());
+            }
+            counter.increment();
+            oldestPendingAt.compareAndSet(0, System.currentTimeMillis());
+            size = pending.size();
+        } finally {
+            swapLock.readLock().unlock();
+        }
+
+        recorded.increment();
+        if (size >= batchSize) {
+            requestFlush();
+        }
+        return true;
+    }
+
+    // Flush antecipado (no máximo um agendado de cada vez)
+    private void requestFlush() {
+        if (!shutdown && flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("[VIEWS] Flush failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Escreve todos os deltas pendentes. Em caso de erro, os deltas voltam ao buffer.
+     */
+    public void flush() throws SQLException {
+        synchronized (flushLock) {
+            flushScheduled.set(false);
+
+            ConcurrentHashMap<Long, LongAdder> batch;
+            long oldest;
+            swapLock.writeLock().lock();
+            try {
+                if (pending.isEmpty()) return;
+                batch = pending;
+                pending = new ConcurrentHashMap<>();
+                oldest = oldestPendingAt.getAndSet(0);
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+
+            // Ordenar as chaves: mesma ordem de locks em InnoDB entre flushes
+            long[] keys = new long[batch.size()];
+            long[] deltas = new long[batch.size()];
+            int n = 0;
+            for (Map.Entry<Long, LongAdder> e : new TreeMap<>(batch).entrySet()) {
+                keys[n] = e.getKey();
+                deltas[n] = e.getValue().sum();
+                n++;
+            }
+
+            long start = System.currentTimeMillis();
+            int written = 0;
+            MovieDetailCache.getInstance().beginViewFlush();
+            try (Connection conn = DbConfig.getMariaDB()) {
+                conn.setAutoCommit(false); // um lote = uma transação (o pool repõe ao devolver)
+                for (int from = 0; from < n; from += batchSize) {
+                    int to = Math.min(n, from + batchSize);
+                    try {
+                        writeBatch(conn, keys, deltas, from, to);
+                        written = to;
+                    } catch (SQLException e) {
+                        if (!isConstraintViolation(e)) throw e;
+                        // Isolar a(s) linha(s) inválida(s); o INSERT falhado não escreveu nada
+                        for (int i = from; i < to; i++) {
+                            try {
+                                writeBatch(conn, keys, deltas, i, i + 1);
+                            } catch (SQLException rowError) {
+                                if (!isConstraintViolation(rowError)) throw rowError;
+                                reject(keys, deltas, i, rowError);
+                            }
+                            written = i + 1;
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                flushFailures.increment();
+                publish(keys, deltas, written); // lotes já escritos
+                requeue(keys, deltas, written, n, oldest);
+                throw e;
+            }
+
+            publish(keys, deltas, n);
+            flushes.increment();
+            lastFlushAt = System.currentTimeMillis();
+            lastFlushDurationMs = lastFlushAt - start;
+            lastFlushLagMs = oldest > 0 ? lastFlushAt - oldest : 0;
+        }
+    }
+
+    // SQLState 23xxx: a linha nunca vai ser aceite, repetir não adianta
+    private static boolean isConstraintViolation(SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("23"));
+    }
+
+    // Descarta o par keys[i] (delta a 0: não é publicado)
+    private void reject(long[] keys, long[] deltas, int i, SQLException e) {
+        System.err.println("[VIEWS] Dropping " + deltas[i] + " views of user " + (int) keys[i]
+                + " for movie " + (int) (keys[i] >>> 32) + ": " + e.getMessage());
+        rejected.add(deltas[i]);
+        deltas[i] = 0;
+    }
+
+    // Propaga os deltas escritos (keys[0..to)) para as métricas, cache de detalhe e estatísticas
+    private void publish(long[] keys, long[] deltas, int to) {
+        long views = 0;
+        int rows = 0;
+        Map<Integer, Long> perMovie = new HashMap<>();
+        for (int i = 0; i < to; i++) {
+            if (deltas[i] == 0) continue; // rejeitado
+            views += deltas[i];
+            rows++;
+            perMovie.merge((int) (keys[i] >>> 32), deltas[i], Long::sum);
+        }
+        if (rows == 0) return;
+        flushedViews.add(views);
+        flushedRows.add(rows);
+        MovieDetailCache.getInstance().onViewsFlushed(perMovie);
+        StatisticsEngine.getInstance().onViewsFlushed(views);
+    }
+
+    /**
+     * Executa a ação sem nenhum flush em curso (leituras consistentes de watch_history).
+     */
+    public <T> T withFlushPaused(Callable<T> action) throws SQLException {
+        synchronized (flushLock) {
+            try {
+                return action.call();
+            } catch (SQLException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException(e);
+            }
+        }
+    }
+
+    // Escreve keys[from..to) numa transação: ou entram as views e o total do filme, ou nada
+    private static void writeBatch(Connection conn, long[] keys, long[] deltas, int from, int to)
+            throws SQLException {
+        try {
+            // movies primeiro: o lock exclusivo da linha do filme já cobre o lock partilhado
+            // que a FK de watch_history pede (evita a promoção S -> X no mesmo lote)
+            addMovieViews(conn, keys, deltas, from, to);
+            insertViews(conn, keys, deltas, from, to);
+            conn.commit();
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            throw e;
+        }
+    }
+
+    // As chaves estão ordenadas, por isso as linhas do mesmo filme são contíguas
+    private static void addMovieViews(Connection conn, long[] keys, long[] deltas, int from, int to)
+            throws SQLException {
+        List<Integer> movies = new ArrayList<>();
+        List<Long> totals = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            int movieId = (int) (keys[i] >>> 32);
+            if (!movies.isEmpty() && movies.get(movies.size() - 1) == movieId) {
+                totals.set(totals.size() - 1, totals.get(totals.size() - 1) + deltas[i]);
+            } else {
+                movies.add(movieId);
+                totals.add(deltas[i]);
+            }
+        }
+
+        StringBuilder sql = new StringBuilder("UPDATE movies SET views = views + CASE id");
+        for (int i = 0; i < movies.size(); i++) sql.append(" WHEN ? THEN ?");
+        sql.append(" ELSE 0 END WHERE id IN (");
+        for (int i = 0; i < movies.size(); i++) sql.append(i == 0 ? "?" : ", ?");
+        sql.append(")");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int p = 1;
+            for (int i = 0; i < movies.size(); i++) {
+                stmt.setInt(p++, movies.get(i));
+                stmt.setLong(p++, totals.get(i));
+            }
+            for (int movieId : movies) {
+                stmt.setInt(p++, movieId);
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void insertViews(Connection conn, long[] keys, long[] deltas, int from, int to)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO watch_history (user_id, movie_id, views) VALUES ");
+        for (int i = from; i < to; i++) {
+            sql.append(i == from ? "(?, ?, ?)" : ", (?, ?, ?)");
+        }
+        sql.append(" ON DUPLICATE KEY UPDATE watched_at = CURRENT_TIMESTAMP, views = views + VALUES(views)");
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int p = 1;
+            for (int i = from; i < to; i++) {
+                stmt.setInt(p++, (int) keys[i]);           // user_id
+                stmt.setInt(p++, (int) (keys[i] >>> 32));  // movie_id
+                stmt.setLong(p++, deltas[i]);
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    // Devolve ao buffer os deltas ainda não escritos (respeitando o limite)
+    private void requeue(long[] keys, long[] deltas, int from, int to, long oldest) {
+        swapLock.readLock().lock();
+        try {
+            for (int i = from; i < to; i++) {
+                LongAdder counter = pending.get(keys[i]);
+                if (counter == null && pending.size() >= maxPendingKeys) {
+                    dropped.add(deltas[i]);
+                    continue;
+                }
+                if (counter == null) {
+                    counter = pending.computeIfAbsent(keys[i], k -> new LongAdder());
+                }
+                counter.add(deltas[i]);
+            }
+            if (oldest > 0) {
+                oldestPendingAt.accumulateAndGet(oldest, (cur, o) -> cur == 0 ? o : Math.min(cur, o));
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Pára o flush periódico e escreve o que falta (chamado no shutdown, antes de fechar o pool).
+     */
+    public void shutdown() {
+        shutdown = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("[VIEWS] Final flush failed, " + pendingViews() + " views lost: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Faz shutdown do agregador apenas se já tiver sido criado.
+     */
+    public static void shutdownIfStarted() {
+        ViewAggregator instance = INSTANCE;
+        if (instance != null) {
+            instance.shutdown();
+        }
+    }
+
+    private long pendingViews() {
+        swapLock.readLock().lock();
+        try {
+            long total = 0;
+            for (LongAdder a : pending.values()) total += a.sum();
+            return total;
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Métricas sem arrancar o flush periódico.
+     */
+    public static Map<String, Object> getStatsIfStarted() {
+        ViewAggregator instance = INSTANCE;
+        return instance != null ? instance.getStats() : Map.of("started", false);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long oldest = oldestPendingAt.get();
+        stats.put("pendingKeys", pending.size());
+        stats.put("pendingViews", pendingViews());
+        stats.put("lagMs", oldest > 0 ? System.currentTimeMillis() - oldest : 0);
+        stats.put("recorded", recorded.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("flushedViews", flushedViews.sum());
+        stats.put("flushedRows", flushedRows.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        stats.put("lastFlushAt", lastFlushAt > 0 ? new Date(lastFlushAt) : null);
+        stats.put("lastFlushDurationMs", lastFlushDurationMs);
+        stats.put("lastFlushLagMs", lastFlushLagMs);
+        return stats;
+    }
+}
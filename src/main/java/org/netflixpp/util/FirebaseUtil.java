@@ -4,15 +4,22 @@ import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
 import com.google.firebase.auth.FirebaseToken;
 import org.netflixpp.config.Config;
 
 import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 public class FirebaseUtil {
 
     private static volatile boolean initialized = false;
 
+    // Tokens já verificados, para não chamar o Firebase (checkRevoked) em cada pedido
+    private static final TokenCache CACHE = new TokenCache(Config.TOKEN_CACHE_MAX_ENTRIES);
+    private static volatile TokenVerifier verifier = defaultVerifier();
+
     private static void initIfNeeded() {
         if (!Config.FIREBASE_ENABLED) return; // feature flag
         if (initialized) return;
@@ -42,16 +49,99 @@ public class FirebaseUtil {
         }
     }
 
-    public static FirebaseToken verifyIdToken(String bearerToken) {
+    /**
+     * Verifica um header "Bearer &lt;token&gt;". Devolve null se o token for inválido
+     * ou se a autenticação estiver desativada.
+     *
+     * Resultados ficam em cache (chave = SHA-256 do token) até ao {@code exp} do token,
+     * no máximo TOKEN_CACHE_TTL_MS; a revogação é reconfirmada junto do Firebase a cada
+     * TOKEN_REVOCATION_CHECK_MS. Tokens inválidos ficam em cache negativa durante
+     * TOKEN_NEGATIVE_TTL_MS.
+     */
+    public static VerifiedToken verifyIdToken(String bearerToken) {
+        TokenVerifier v = verifier;
+        if (v == null) return null;
+        if (bearerToken == null || !bearerToken.startsWith("Bearer ")) return null;
+        String token = bearerToken.substring(7);
+        String key = HashUtil.calculateHash(token.getBytes(StandardCharsets.UTF_8));
+        long now = System.currentTimeMillis();
+
+        TokenCache.Entry cached = CACHE.get(key, now);
+        if (cached != null) {
+            if (cached.isNegative()) {
+                CACHE.negativeHits.increment();
+                return null;
+            }
+            if (now - cached.lastRevocationCheck < Config.TOKEN_REVOCATION_CHECK_MS) {
+                CACHE.hits.increment();
+                return cached.token;
+            }
+            CACHE.revocationChecks.increment();
+        } else {
+            CACHE.misses.increment();
+        }
+
         try {
-            if (!Config.FIREBASE_ENABLED) return null;
-            initIfNeeded();
-            if (bearerToken == null || !bearerToken.startsWith("Bearer ")) return null;
-            String token = bearerToken.substring(7);
-            return FirebaseAuth.getInstance().verifyIdToken(token, true);
+            VerifiedToken verified = v.verify(token, true);
+            long expiresAt = Math.min(verified.getExpiresAtMillis(), now + Config.TOKEN_CACHE_TTL_MS);
+            if (expiresAt > now) {
+                CACHE.put(key, new TokenCache.Entry(verified, expiresAt, now));
+            }
+            return verified;
+        } catch (TokenVerifier.InvalidTokenException e) {
+            CACHE.put(key, new TokenCache.Entry(null, now + Config.TOKEN_NEGATIVE_TTL_MS, now));
+            System.err.println("[FIREBASE][WARN] Token rejected: " + e.getMessage());
+            return null;
         } catch (Exception e) {
+            // Falha transitória (rede, etc.): não fica em cache negativa
             System.err.println("[FIREBASE][WARN] Token verification failed: " + e.getMessage());
             return null;
         }
     }
+
+    /**
+     * Substitui o verificador (usado pelos testes) e limpa a cache.
+     */
+    public static void setVerifier(TokenVerifier newVerifier) {
+        verifier = newVerifier;
+        CACHE.clear();
+    }
+
+    public static Map<String, Object> getTokenCacheStats() {
+        Map<String, Object> stats = CACHE.getStats();
+        TokenVerifier v = verifier;
+        stats.put("verifier", v == null ? "disabled" : v.getClass().getSimpleName());
+        return stats;
+    }
+
+    private static TokenVerifier defaultVerifier() {
+        return Config.FIREBASE_ENABLED ? new FirebaseTokenVerifier() : null;
+    }
+
+    static final class FirebaseTokenVerifier implements TokenVerifier {
+        @Override
+        public VerifiedToken verify(String idToken, boolean checkRevoked) throws Exception {
+            initIfNeeded();
+            FirebaseToken fb;
+            try {
+                fb = FirebaseAuth.getInstance().verifyIdToken(idToken, checkRevoked);
+            } catch (FirebaseAuthException e) {
+                // Com código de auth = token inválido/expirado/revogado; sem código = erro de rede/serviço
+                if (e.getAuthErrorCode() != null) {
+                    throw new InvalidTokenException(e.getMessage(), e);
+                }
+                throw e;
+            } catch (IllegalArgumentException e) {
+                throw new InvalidTokenException(e.getMessage(), e);
+            }
+
+            long expiresAt = System.currentTimeMillis() + Config.TOKEN_CACHE_TTL_MS;
+            Map<String, Object> claims = fb.getClaims();
+            Object exp = claims != null ? claims.get("exp") : null;
+            if (exp instanceof Number) {
+                expiresAt = ((Number) exp).longValue() * 1000L;
+            }
+            return new VerifiedToken(fb.getUid(), fb.getEmail(), fb.getName(), expiresAt);
+        }
+    }
 }
@@ -0,0 +1,102 @@
+package org.netflixpp.util;
+
+import com.google.auth.ServiceAccountSigner;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import org.netflixpp.config.Config;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Cliente GCS partilhado pelo processo: as credenciais são lidas e o Storage é criado uma
+ * única vez (o Storage é thread-safe). Usado pelo upload e pela assinatura de URLs.
+ */
+public final class GcsClient {
+
+    private static volatile GcsClient INSTANCE;
+
+    private final Storage storage;
+    private final ServiceAccountSigner signer;
+
+    private GcsClient(Storage storage) {
+        this.storage = storage;
+        this.signer = null;
+    }
+
+    private GcsClient() {
+        if (Config.GCS_EMULATOR_HOST != null && !Config.GCS_EMULATOR_HOST.isEmpty()) {
+            // Emulador (testes offline): sem credenciais nem assinatura de URLs
+            this.storage = StorageOptions.newBuilder()
+                    .setHost(Config.GCS_EMULATOR_HOST)
+                    .setProjectId("netflixpp-local")
+                    .setCredentials(NoCredentials.getInstance())
+                    .build()
+                    .getService();
+            this.signer = null;
+            System.out.println("[GCS] Using emulator at " + Config.GCS_EMULATOR_HOST);
+            return;
+        }
+
+        GoogleCredentials credentials;
+        try {
+            if (Config.GCS_CREDENTIALS_PATH != null && !Config.GCS_CREDENTIALS_PATH.isEmpty()) {
+                try (FileInputStream fis = new FileInputStream(Config.GCS_CREDENTIALS_PATH)) {
+                    credentials = GoogleCredentials.fromStream(fis);
+                }
+            } else {
+                credentials = GoogleCredentials.getApplicationDefault();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to initialize GCS credentials: " + e.getMessage(), e);
+        }
+
+        this.storage = StorageOptions.newBuilder()
+                .setCredentials(credentials)
+                .build()
+                .getService();
+
+        // Com a chave privada da service account a assinatura V4 é feita localmente;
+        // sem ela (ex.: credenciais da VM) o SDK assina via IAM signBlob, com um pedido de rede
+        if (credentials instanceof ServiceAccountSigner sa) {
+            this.signer = sa;
+        } else {
+            this.signer = null;
+            System.err.println("[GCS][WARN] Credentials have no private key; URL signing will use the IAM API");
+        }
+    }
+
+    public static GcsClient getInstance() {
+        if (INSTANCE == null) {
+            synchronized (GcsClient.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new GcsClient();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Substitui o cliente por outro Storage (usado pelos testes, com um Storage falso ou
+     * ligado ao emulador).
+     */
+    public static void setStorage(Storage storage) {
+        synchronized (GcsClient.class) {
+            INSTANCE = new GcsClient(storage);
+        }
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Signer local (service account com chave privada) ou null se não existir.
+     */
+    public ServiceAccountSigner getSigner() {
+        return signer;
+    }
+}
@@ -0,0 +1,211 @@
+package org.netflixpp.util;
+
+import com.google.api.gax.paging.Page;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.Storage.BlobField;
+import com.google.cloud.storage.Storage.BlobListOption;
+import org.netflixpp.config.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Plano de sincronização de ficheiros locais com um prefixo do bucket.
+ *
+ * Em vez de um {@code storage.get} por ficheiro, o prefixo é listado uma vez (paginado,
+ * só com nome, tamanho e CRC32C/MD5) e cada ficheiro é comparado com o objeto remoto:
+ * sem objeto -> upload (missing); tamanho ou checksum diferente -> upload (changed);
+ * igual -> skip. Objetos remotos sem ficheiro local só são reportados (remoteOnly).
+ *
+ * O plano pode ser só devolvido (dry-run) ou executado pelo {@link UploadScheduler}.
+ */
+public final class GcsSyncPlan {
+
+    private static final int LIST_PAGE_SIZE = 1000;
+
+    /** Um ficheiro local e o objeto de destino. */
+    public static final class Item {
+        private final File file;
+        private final String objectName;
+        private final String contentType;
+        private String action; // upload | skip
+        private String reason; // missing | changed:size | changed:crc32c | changed:md5 | unchanged
+
+        public Item(File file, String objectName, String contentType) {
+            this.file = file;
+            this.objectName = objectName;
+            this.contentType = contentType;
+        }
+
+        public File getFile() { return file; }
+        public String getObjectName() { return objectName; }
+        public String getAction() { return action; }
+        public String getReason() { return reason; }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("file", file.getName());
+            map.put("object", objectName);
+            map.put("bytes", file.length());
+            map.put("action", action);
+            map.put("reason", reason);
+            return map;
+        }
+    }
+
+    private final List<String> prefixes;
+    private final List<Item> items;
+    private final List<String> remoteOnly = new ArrayList<>();
+    private int listPages;
+    private long listedObjects;
+    private int checksummed;
+    private long planMillis;
+
+    private GcsSyncPlan(List<String> prefixes, List<Item> items) {
+        this.prefixes = prefixes;
+        this.items = items;
+    }
+
+    /**
+     * Lista os prefixos e compara com os ficheiros locais. Os prefixos devem cobrir todos os
+     * objetos dos itens (um item fora de todos os prefixos é tratado como missing).
+     */
+    public static GcsSyncPlan build(Collection<String> prefixes, List<Item> items) throws IOException {
+        long start = System.currentTimeMillis();
+        GcsSyncPlan plan = new GcsSyncPlan(new ArrayList<>(collapse(prefixes)), items);
+
+        Map<String, Blob> remote = new HashMap<>();
+        Storage storage = GcsClient.getInstance().getStorage();
+        for (String prefix : plan.prefixes) {
+            Page<Blob> page = storage.list(Config.GCS_BUCKET_NAME,
+                    BlobListOption.prefix(prefix),
+                    BlobListOption.pageSize(LIST_PAGE_SIZE),
+                    BlobListOption.fields(BlobField.NAME, BlobField.SIZE, BlobField.CRC32C, BlobField.MD5HASH));
+            while (page != null) {
+                plan.listPages++;
+                for (Blob blob : page.getValues()) {
+                    remote.put(blob.getName(), blob);
+                    plan.listedObjects++;
+                }
+                page = page.hasNextPage() ? page.getNextPage() : null;
+            }
+        }
+
+        for (Item item : items) {
+            Blob blob = remote.remove(item.objectName);
+            plan.compare(item, blob);
+        }
+        plan.remoteOnly.addAll(new TreeSet<>(remote.keySet()));
+        plan.planMillis = System.currentTimeMillis() - start;
+        return plan;
+    }
+
+    private void compare(Item item, Blob blob) throws IOException {
+        if (blob == null) {
+            item.action = "upload";
+            item.reason = "missing";
+            return;
+        }
+        Long size = blob.getSize();
+        if (size == null || size != item.file.length()) {
+            item.action = "upload";
+            item.reason = "changed:size";
+            return;
+        }
+
+        // Mesmo tamanho: confirmar pelo conteúdo (CRC32C existe sempre; MD5 só em uploads simples)
+        if (blob.getCrc32c() != null) {
+            checksummed++;
+            boolean same = blob.getCrc32c().equals(HashUtil.crc32cBase64(item.file.toPath()));
+            item.action = same ? "skip" : "upload";
+            item.reason = same ? "unchanged" : "changed:crc32c";
+        } else if (blob.getMd5() != null) {
+            checksummed++;
+            boolean same = blob.getMd5().equals(HashUtil.md5Base64(item.file.toPath()));
+            item.action = same ? "skip" : "upload";
+            item.reason = same ? "unchanged" : "changed:md5";
+        } else {
+            item.action = "skip";
+            item.reason = "unchanged";
+        }
+    }
+
+    /**
+     * Envia os itens marcados para upload no job dado e devolve o resultado de cada item
+     * (os inalterados com action=skipped), pela ordem do plano.
+     */
+    public List<Map<String, Object>> execute(UploadScheduler.Batch batch) {
+        List<CompletableFuture<Map<String, Object>>> pending = new ArrayList<>(items.size());
+        for (Item item : items) {
+            pending.add("upload".equals(item.action)
+                    ? batch.submit(item.file, item.objectName, item.contentType)
+                    : null);
+        }
+        batch.await();
+
+        List<Map<String, Object>> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            Map<String, Object> result = pending.get(i) != null
+                    ? new LinkedHashMap<>(pending.get(i).join())
+                    : item.toMap();
+            if (pending.get(i) == null) result.put("action", "skipped");
+            result.put("reason", item.reason);
+            results.add(result);
+        }
+        return results;
+    }
+
+    public List<Item> getItems() { return items; }
+
+    public Map<String, Object> getSummary() {
+        int upload = 0, missing = 0, changed = 0;
+        long uploadBytes = 0;
+        for (Item item : items) {
+            if (!"upload".equals(item.action)) continue;
+            upload++;
+            uploadBytes += item.file.length();
+            if ("missing".equals(item.reason)) missing++;
+            else changed++;
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("prefixes", prefixes);
+        summary.put("listPages", listPages);
+        summary.put("listedObjects", listedObjects);
+        summary.put("localFiles", items.size());
+        summary.put("toUpload", upload);
+        summary.put("missing", missing);
+        summary.put("changed", changed);
+        summary.put("unchanged", items.size() - upload);
+        summary.put("uploadBytes", uploadBytes);
+        summary.put("checksummed", checksummed);
+        summary.put("remoteOnly", remoteOnly.size());
+        summary.put("planMs", planMillis);
+        return summary;
+    }
+
+    /**
+     * Plano completo (dry-run): resumo, ação por ficheiro e objetos só remotos.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>(getSummary());
+        List<Map<String, Object>> list = new ArrayList<>(items.size());
+        for (Item item : items) list.add(item.toMap());
+        map.put("files", list);
+        map.put("remoteOnlyObjects", remoteOnly);
+        return map;
+    }
+
+    // Remove prefixos contidos noutros (ex.: "movies/movie_1/" cobre "movies/movie_1/360p/")
+    private static SortedSet<String> collapse(Collection<String> prefixes) {
+        SortedSet<String> out = new TreeSet<>();
+        for (String p : new TreeSet<>(prefixes)) {
+            if (out.isEmpty() || !p.startsWith(out.last())) out.add(p);
+        }
+        return out;
+    }
+}
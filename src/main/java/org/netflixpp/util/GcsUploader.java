@@ -1,44 +1,43 @@
 package org.netflixpp.util;
 
-import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
-import com.google.cloud.storage.Storage;
-import com.google.cloud.storage.StorageOptions;
+import com.google.cloud.storage.StorageException;
 import org.netflixpp.config.Config;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.Objects;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 public class GcsUploader {
 
+    // Leitura do ficheiro em blocos pequenos; o WriteChannel agrega até chunkSize
+    private static final int READ_BUFFER = 256 * 1024;
+    private static final int RECENT_UPLOADS = 20;
+
     private static volatile GcsUploader INSTANCE;
-    private final Storage storage;
     private final String bucket;
+    private final int chunkSize;
+
+    // Métricas
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+    private final LongAdder uploadNanos = new LongAdder();
+    private final LongAdder resumes = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+    private final Deque<Map<String, Object>> recent = new ArrayDeque<>();
 
     private GcsUploader() {
         this.bucket = Config.GCS_BUCKET_NAME;
-        try {
-            GoogleCredentials credentials;
-            if (Config.GCS_CREDENTIALS_PATH != null && !Config.GCS_CREDENTIALS_PATH.isEmpty()) {
-                try (FileInputStream fis = new FileInputStream(Config.GCS_CREDENTIALS_PATH)) {
-                    credentials = GoogleCredentials.fromStream(fis);
-                }
-            } else {
-                credentials = GoogleCredentials.getApplicationDefault();
-            }
-
-            this.storage = StorageOptions.newBuilder()
-                    .setCredentials(credentials)
-                    .build()
-                    .getService();
-
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to initialize GCS credentials: " + e.getMessage(), e);
-        }
+        // Uploads resumíveis exigem chunks múltiplos de 256KB
+        this.chunkSize = Math.max(1, Config.GCS_UPLOAD_CHUNK_SIZE / READ_BUFFER) * READ_BUFFER;
     }
 
     public static GcsUploader getInstance() {
@@ -52,46 +51,170 @@ public class GcsUploader {
         return INSTANCE;
     }
 
-    public void upload(File file, String objectName, String contentType) throws IOException {
+    /**
+     * Envia o ficheiro numa única tentativa (sem retoma). Quem precisa de repetir usa
+     * {@link #newSession} e volta a chamar {@link Session#run}.
+     */
+    public Map<String, Object> upload(File file, String objectName, String contentType) throws IOException {
+        return newSession(file, objectName, contentType).run();
+    }
+
+    public Session newSession(File file, String objectName, String contentType) {
         Objects.requireNonNull(file, "file");
         if (bucket == null || bucket.isEmpty()) {
             throw new IllegalStateException("GCS bucket name is not configured. Set env var GCS_BUCKET_NAME.");
         }
-        if (!file.exists()) {
-            throw new IOException("File not found: " + file);
+        return new Session(file, objectName, contentType);
+    }
+
+    /**
+     * Upload resumível de um ficheiro, em streaming a partir de um FileChannel: a memória
+     * usada é o buffer de leitura mais o chunk do WriteChannel (GCS_UPLOAD_CHUNK_SIZE),
+     * qualquer que seja o tamanho do ficheiro.
+     *
+     * Cada {@link #run} é uma tentativa, sem esperas nem retries: quem chama decide se e
+     * quando repetir (o {@link UploadScheduler}, com backoff). A cada chunkSize bytes escritos
+     * é guardado um checkpoint da sessão ({@link Checkpoint}); a tentativa seguinte restaura o
+     * último checkpoint e volta a ler o ficheiro desse offset, em vez de recomeçar do zero.
+     */
+    public final class Session {
+        private final File file;
+        private final String objectName;
+        private final BlobInfo blobInfo;
+        private Checkpoint checkpoint; // null = sessão ainda não aberta
+        private long failedAt;         // bytes escritos quando a tentativa anterior falhou
+        private int resumed;
+        private long resentBytes;
+        private long nanos;
+
+        private Session(File file, String objectName, String contentType) {
+            this.file = file;
+            this.objectName = objectName;
+            this.blobInfo = BlobInfo.newBuilder(BlobId.of(bucket, objectName))
+                    .setContentType(contentType != null ? contentType : "application/octet-stream")
+                    .build();
         }
 
-        byte[] data = Files.readAllBytes(file.toPath());
-        BlobId blobId = BlobId.of(bucket, objectName);
-        BlobInfo blobInfo = BlobInfo.newBuilder(blobId)
-                .setContentType(contentType != null ? contentType : "application/octet-stream")
-                .build();
-
-        int attempts = 0;
-        while (attempts < 3) {
-            try {
-                storage.create(blobInfo, data);
-                return;
-            } catch (com.google.cloud.storage.StorageException se) {
-                attempts++;
-                if (attempts >= 3) throw se;
-                try { Thread.sleep(300L * attempts); } catch (InterruptedException ignored) {}
+        /**
+         * Uma tentativa: abre a sessão (ou retoma do último checkpoint) e envia o resto do
+         * ficheiro. Devolve as métricas do upload (bytes, duração, MB/s, retomas).
+         */
+        public synchronized Map<String, Object> run() throws IOException {
+            if (!file.exists()) {
+                throw new FileNotFoundException("File not found: " + file);
+            }
+            long start = System.nanoTime();
+            long position = 0; // bytes aceites pelo WriteChannel atual
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = in.size();
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER, Math.max(1, size)));
+
+                WriteChannel writer;
+                if (checkpoint == null) {
+                    writer = GcsClient.getInstance().getStorage().writer(blobInfo);
+                    writer.setChunkSize(chunkSize);
+                    checkpoint = new Checkpoint(writer.capture(), 0);
+                } else {
+                    System.err.println("GCS upload of " + objectName + " failed at " + failedAt
+                            + " bytes, resuming from " + checkpoint.offset);
+                    writer = checkpoint.state.restore();
+                    resentBytes += failedAt - checkpoint.offset;
+                    resumed++;
+                    resumes.increment();
+                }
+                position = checkpoint.offset;
+
+                while (position < size) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), size - position));
+                    int n = in.read(buffer, position);
+                    if (n < 0) throw new IOException("File truncated during upload: " + file);
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        writer.write(buffer);
+                    }
+                    position += n;
+
+                    // Um checkpoint por chunk: não depende de quando o SDK envia o buffer
+                    if (position - checkpoint.offset >= chunkSize) {
+                        checkpoint = new Checkpoint(writer.capture(), position);
+                    }
+                }
+                writer.close();
+
+                nanos += System.nanoTime() - start;
+                uploads.increment();
+                uploadedBytes.add(size);
+                uploadNanos.add(nanos);
+
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("object", objectName);
+                stats.put("bytes", size);
+                stats.put("elapsedMs", nanos / 1_000_000);
+                stats.put("throughputMBps", throughput(size, nanos));
+                stats.put("resumes", resumed);
+                stats.put("resentBytes", resentBytes);
+                synchronized (recent) {
+                    if (recent.size() >= RECENT_UPLOADS) recent.removeFirst();
+                    recent.addLast(stats);
+                }
+                return stats;
+            } catch (IOException | RuntimeException e) {
+                nanos += System.nanoTime() - start;
+                failedAttempts.increment();
+                failedAt = position;
+                // Sessão expirada ou desconhecida no GCS: a próxima tentativa começa do zero
+                if (e instanceof StorageException se && (se.getCode() == 404 || se.getCode() == 410)) {
+                    checkpoint = null;
+                }
+                throw e;
             }
         }
-        // If we somehow exit the loop without returning or throwing
-        throw new com.google.cloud.storage.StorageException(500, "Failed to upload after retries");
     }
 
-    public boolean exists(String objectName) {
-        if (bucket == null || bucket.isEmpty()) {
-            throw new IllegalStateException("GCS bucket name is not configured. Set env var GCS_BUCKET_NAME.");
+    /**
+     * Estado capturado da sessão e o offset do ficheiro a que corresponde.
+     *
+     * O estado inclui a posição já confirmada pelo GCS e os bytes que o canal ainda tinha em
+     * buffer (o SDK reenvia-os ao restaurar), por isso o canal restaurado continua exatamente
+     * depois de {@code offset} bytes, seja qual for a política de buffer do canal.
+     */
+    private static final class Checkpoint {
+        final RestorableState<WriteChannel> state;
+        final long offset;
+
+        Checkpoint(RestorableState<WriteChannel> state, long offset) {
+            this.state = state;
+            this.offset = offset;
         }
-        BlobId id = BlobId.of(bucket, objectName);
-        try {
-            return storage.get(id) != null;
-        } catch (com.google.cloud.storage.StorageException se) {
-            // If we cannot determine, return false to attempt upload; caller may handle errors
-            return false;
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return Math.round(bytes * 1000.0 / 1.048576 / Math.max(1, nanos) * 10) / 10.0;
+    }
+
+    /**
+     * Métricas sem forçar a inicialização do cliente GCS.
+     */
+    public static Map<String, Object> getStatsIfStarted() {
+        GcsUploader instance = INSTANCE;
+        return instance != null ? instance.getStats() : Map.of("started", false);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long bytes = uploadedBytes.sum();
+        long nanos = uploadNanos.sum();
+        stats.put("chunkSize", chunkSize);
+        stats.put("uploads", uploads.sum());
+        stats.put("bytes", bytes);
+        stats.put("failedAttempts", failedAttempts.sum());
+        stats.put("resumes", resumes.sum());
+        // Média por upload (os uploads correm em paralelo; não é o débito agregado)
+        stats.put("avgThroughputMBps", throughput(bytes, nanos));
+        synchronized (recent) {
+            stats.put("recent", new ArrayList<>(recent));
         }
+        return stats;
     }
 }
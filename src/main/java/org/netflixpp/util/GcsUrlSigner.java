@@ -0,0 +1,170 @@
+package org.netflixpp.util;
+
+import com.google.auth.ServiceAccountSigner;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.Storage.SignUrlOption;
+import org.netflixpp.config.Config;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Assinatura V4 de URLs GCS com cache LRU por objeto.
+ *
+ * Um URL assinado é válido durante GCS_SIGNED_URL_MINUTES; fica em cache no máximo
+ * GCS_SIGNED_URL_CACHE_TTL_MS (sempre com pelo menos um minuto de validade de sobra), por
+ * isso o cliente nunca recebe um URL prestes a expirar. Os segmentos de uma reprodução
+ * HLS são pedidos por vários players ao mesmo tempo e quase sempre saem da cache.
+ */
+public class GcsUrlSigner {
+
+    /** URL assinado e o instante (epoch ms) em que deixa de ser válido. */
+    public static final class SignedUrl {
+        private final String url;
+        private final long expiresAt;
+
+        SignedUrl(String url, long expiresAt) {
+            this.url = url;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getUrl() { return url; }
+        public long getExpiresAt() { return expiresAt; }
+    }
+
+    private static final long MIN_REMAINING_MS = 60_000;
+
+    private static volatile GcsUrlSigner INSTANCE;
+
+    private final Storage storage;
+    private final ServiceAccountSigner signer;
+    private final String bucket;
+    private final long validityMs;
+    private final long cacheTtlMs;
+    private final int maxEntries;
+    private final Map<String, SignedUrl> entries;
+
+    // Métricas
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder signs = new LongAdder();
+    private final LongAdder signNanos = new LongAdder();
+
+    private GcsUrlSigner() {
+        GcsClient client = GcsClient.getInstance();
+        this.storage = client.getStorage();
+        this.signer = client.getSigner();
+        this.bucket = Config.GCS_BUCKET_NAME;
+        this.validityMs = TimeUnit.MINUTES.toMillis(Config.GCS_SIGNED_URL_MINUTES);
+        this.cacheTtlMs = Math.max(0, Math.min(Config.GCS_SIGNED_URL_CACHE_TTL_MS, validityMs - MIN_REMAINING_MS));
+        this.maxEntries = Config.GCS_SIGNED_URL_CACHE_MAX;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SignedUrl> eldest) {
+                if (size() > GcsUrlSigner.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static GcsUrlSigner getInstance() {
+        if (INSTANCE == null) {
+            synchronized (GcsUrlSigner.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new GcsUrlSigner();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Métricas sem forçar a inicialização do cliente GCS (que lê as credenciais).
+     */
+    public static Map<String, Object> getStatsIfStarted() {
+        GcsUrlSigner instance = INSTANCE;
+        return instance != null ? instance.getStats() : Map.of("started", false);
+    }
+
+    /**
+     * Devolve um URL GET assinado para o objeto (do bucket configurado), da cache se ainda
+     * estiver dentro do TTL.
+     */
+    public SignedUrl sign(String objectPath) {
+        long now = System.currentTimeMillis();
+        SignedUrl cached;
+        synchronized (entries) {
+            cached = entries.get(objectPath);
+        }
+        if (cached != null && cached.expiresAt - validityMs + cacheTtlMs > now) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        // Dois pedidos simultâneos para o mesmo objeto podem assinar ambos; é barato e evita lock
+        SignedUrl signed = signNow(objectPath, validityMs, now);
+        if (cacheTtlMs > 0) {
+            synchronized (entries) {
+                entries.put(objectPath, signed);
+            }
+        }
+        return signed;
+    }
+
+    /**
+     * Assina sempre (sem passar pela cache) com uma validade própria, para quem guarda os
+     * URLs noutro sítio (ex.: playlists assinadas).
+     */
+    public SignedUrl signUncached(String objectPath, long validityMs) {
+        return signNow(objectPath, validityMs, System.currentTimeMillis());
+    }
+
+    private SignedUrl signNow(String objectPath, long validityMs, long now) {
+        long start = System.nanoTime();
+        BlobInfo blob = BlobInfo.newBuilder(bucket, objectPath).build();
+        URL url = signer != null
+                ? storage.signUrl(blob, validityMs, TimeUnit.MILLISECONDS,
+                        SignUrlOption.withV4Signature(), SignUrlOption.signWith(signer))
+                : storage.signUrl(blob, validityMs, TimeUnit.MILLISECONDS,
+                        SignUrlOption.withV4Signature());
+        signNanos.add(System.nanoTime() - start);
+        signs.increment();
+        return new SignedUrl(url.toString(), now + validityMs);
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        long h = hits.sum();
+        long m = misses.sum();
+        stats.put("maxEntries", maxEntries);
+        stats.put("localSigning", signer != null);
+        stats.put("validityMs", validityMs);
+        stats.put("cacheTtlMs", cacheTtlMs);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : Math.round(h * 10_000.0 / (h + m)) / 10_000.0);
+        stats.put("evictions", evictions.sum());
+        long n = signs.sum();
+        stats.put("signs", n);
+        stats.put("avgSignMicros", n == 0 ? 0 : signNanos.sum() / n / 1000);
+        return stats;
+    }
+}
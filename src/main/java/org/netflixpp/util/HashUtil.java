@@ -1,8 +1,14 @@
 package org.netflixpp.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.util.Base64;
 import java.util.HexFormat;
+import java.util.zip.CRC32C;
 
 public class HashUtil {
 
@@ -39,4 +45,38 @@ public class HashUtil {
             throw new RuntimeException("SHA-256 error", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * CRC32C do ficheiro no formato dos metadados do GCS (base64 dos 4 bytes big-endian).
+     */
+    public static String crc32cBase64(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (in.read(buffer) > 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return Base64.getEncoder().encodeToString(
+                ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+
+    /**
+     * MD5 do ficheiro em base64 (formato do campo md5Hash do GCS).
+     */
+    public static String md5Base64(Path file) throws IOException {
+        try (InputStream is = new FileInputStream(file.toFile())) {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] buffer = new byte[64 * 1024];
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new RuntimeException("MD5 error", e);
+        }
+    }
+}
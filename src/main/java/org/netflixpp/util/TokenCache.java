@@ -0,0 +1,102 @@
+package org.netflixpp.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache LRU limitada de tokens verificados, indexada pelo hash SHA-256 do token.
+ *
+ * Entradas positivas expiram no máximo no {@code exp} do token; entradas negativas
+ * (tokens inválidos) expiram ao fim de um TTL curto.
+ */
+public class TokenCache {
+
+    static final class Entry {
+        final VerifiedToken token; // null = entrada negativa
+        final long expiresAt;
+        volatile long lastRevocationCheck;
+
+        Entry(VerifiedToken token, long expiresAt, long lastRevocationCheck) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+            this.lastRevocationCheck = lastRevocationCheck;
+        }
+
+        boolean isNegative() {
+            return token == null;
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+
+    // Métricas
+    final LongAdder hits = new LongAdder();
+    final LongAdder negativeHits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder revocationChecks = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    public TokenCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > TokenCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    Entry get(String key, long now) {
+        synchronized (entries) {
+            Entry e = entries.get(key);
+            if (e != null && now >= e.expiresAt) {
+                entries.remove(key);
+                return null;
+            }
+            return e;
+        }
+    }
+
+    void put(String key, Entry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    void remove(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        long h = hits.sum();
+        long n = negativeHits.sum();
+        long m = misses.sum();
+        long total = h + n + m;
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", h);
+        stats.put("negativeHits", n);
+        stats.put("misses", m);
+        stats.put("hitRate", total == 0 ? 0.0 : Math.round((h + n) * 10_000.0 / total) / 10_000.0);
+        stats.put("revocationChecks", revocationChecks.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+}
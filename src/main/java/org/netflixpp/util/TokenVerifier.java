@@ -0,0 +1,28 @@
+package org.netflixpp.util;
+
+/**
+ * Verificação de ID tokens. Em produção é o Firebase; os testes injetam outro via
+ * {@link FirebaseUtil#setVerifier}.
+ */
+public interface TokenVerifier {
+
+    /**
+     * @param idToken      token sem o prefixo "Bearer "
+     * @param checkRevoked se true, confirma junto do emissor que o token não foi revogado
+     * @throws InvalidTokenException se o token for definitivamente inválido (pode ficar em cache negativa)
+     * @throws Exception             em falhas transitórias (rede, etc.), que não devem ficar em cache
+     */
+    VerifiedToken verify(String idToken, boolean checkRevoked) throws Exception;
+
+    class InvalidTokenException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public InvalidTokenException(String message) {
+            super(message);
+        }
+
+        public InvalidTokenException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
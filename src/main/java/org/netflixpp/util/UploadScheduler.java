@@ -0,0 +1,352 @@
+package org.netflixpp.util;
+
+import com.google.cloud.storage.StorageException;
+import org.netflixpp.config.Config;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fila de uploads para o GCS partilhada pelo split de chunks, pela publicação HLS e pelo
+ * backfill.
+ *
+ * Os uploads correm num pool fixo (UPLOAD_THREADS) e cada bucket tem no máximo
+ * UPLOAD_BUCKET_CONCURRENCY uploads em curso; o resto espera numa fila por bucket sem
+ * ocupar threads. Falhas transitórias voltam à fila ao fim de um backoff exponencial com
+ * jitter (sem ocupar o slot do bucket durante a espera), até UPLOAD_MAX_ATTEMPTS; cada
+ * nova tentativa retoma a sessão resumível do {@link GcsUploader} no último checkpoint.
+ * É a única camada de retry dos uploads.
+ *
+ * Cada job (ex.: "hls movie_12") é um {@link Batch} com progresso e ETA, visível em
+ * GET /admin/uploads.
+ */
+public class UploadScheduler {
+
+    private static final int RECENT_BATCHES = 20;
+
+    private static volatile UploadScheduler INSTANCE;
+
+    private final ExecutorService pool;
+    private final ScheduledExecutorService retryTimer;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final Map<String, Batch> active = new ConcurrentHashMap<>();
+    private final Deque<Batch> finished = new ArrayDeque<>();
+    private final AtomicLong batchIds = new AtomicLong();
+
+    // Métricas
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder uploaded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    private UploadScheduler() {
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Config.UPLOAD_THREADS, r -> {
+            Thread t = new Thread(r, "gcs-upload-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "gcs-upload-retry");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static UploadScheduler getInstance() {
+        if (INSTANCE == null) {
+            synchronized (UploadScheduler.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new UploadScheduler();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Backoff exponencial com "full jitter": aleatório em [0, min(max, base * 2^(tentativa-1))].
+     * Evita que uploads que falharam ao mesmo tempo voltem todos ao mesmo tempo.
+     */
+    public static long backoffMs(int attempt) {
+        long cap = Config.UPLOAD_RETRY_BASE_MS << Math.min(20, Math.max(0, attempt - 1));
+        long bound = Math.max(1, Math.min(Config.UPLOAD_RETRY_MAX_MS, cap));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    public Batch newBatch(String label) {
+        Batch batch = new Batch("u" + batchIds.incrementAndGet(), label);
+        active.put(batch.id, batch);
+        return batch;
+    }
+
+    /**
+     * Um job de uploads: agrupa os ficheiros para o progresso/ETA e para esperar por todos.
+     */
+    public final class Batch {
+        private final String id;
+        private final String label;
+        private final long startedAt = System.currentTimeMillis();
+        private final List<CompletableFuture<Map<String, Object>>> results =
+                Collections.synchronizedList(new ArrayList<>());
+
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger batchUploaded = new AtomicInteger();
+        private final AtomicInteger batchFailed = new AtomicInteger();
+        private final AtomicInteger batchRetries = new AtomicInteger();
+        private final AtomicLong totalBytes = new AtomicLong();
+        private final AtomicLong doneBytes = new AtomicLong();
+        private final AtomicLong transferredBytes = new AtomicLong();
+        private volatile long finishedAt;
+
+        private Batch(String id, String label) {
+            this.id = id;
+            this.label = label;
+        }
+
+        public String getId() { return id; }
+
+        /**
+         * Põe um ficheiro na fila. O resultado nunca completa com exceção: falhas definitivas
+         * vêm com action=failed e a mensagem em error. Decidir o que enviar é do chamador
+         * (ver {@link GcsSyncPlan}).
+         */
+        public CompletableFuture<Map<String, Object>> submit(File file, String objectName, String contentType) {
+            Task task = new Task(this, file, objectName, contentType);
+            files.incrementAndGet();
+            totalBytes.addAndGet(task.size);
+            results.add(task.result);
+            tasks.increment();
+            enqueue(task);
+            return task.result;
+        }
+
+        /**
+         * Espera por todos os uploads submetidos e fecha o job. Devolve os resultados pela
+         * ordem de submissão.
+         */
+        public List<Map<String, Object>> await() {
+            List<CompletableFuture<Map<String, Object>>> snapshot;
+            synchronized (results) {
+                snapshot = new ArrayList<>(results);
+            }
+            List<Map<String, Object>> out = new ArrayList<>(snapshot.size());
+            for (CompletableFuture<Map<String, Object>> f : snapshot) {
+                out.add(f.join());
+            }
+            finish(this);
+            return out;
+        }
+
+        /**
+         * Fecha o job sem esperar: passa a concluído quando os uploads submetidos terminarem.
+         */
+        public void closeWhenDone() {
+            CompletableFuture<?>[] snapshot;
+            synchronized (results) {
+                snapshot = results.toArray(new CompletableFuture<?>[0]);
+            }
+            CompletableFuture.allOf(snapshot).thenRun(() -> finish(this));
+        }
+
+        private void completed(Task task, String action, String error) {
+            done.incrementAndGet();
+            doneBytes.addAndGet(task.size);
+            switch (action) {
+                case "uploaded" -> { batchUploaded.incrementAndGet(); uploaded.increment(); }
+                default -> { batchFailed.incrementAndGet(); failed.increment(); }
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("file", task.file.getName());
+            result.put("object", task.objectName);
+            result.put("bytes", task.size);
+            result.put("action", action);
+            result.put("attempts", task.attempts);
+            if (task.stats != null) {
+                result.put("throughputMBps", task.stats.get("throughputMBps"));
+                result.put("resumes", task.stats.get("resumes"));
+            }
+            if (error != null) result.put("error", error);
+            task.result.complete(result);
+        }
+
+        public Map<String, Object> toMap() {
+            long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+            long elapsed = Math.max(1, end - startedAt);
+            long total = totalBytes.get();
+            long processed = doneBytes.get();
+            long sent = transferredBytes.get();
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", id);
+            map.put("label", label);
+            map.put("state", finishedAt > 0 ? "DONE" : "RUNNING");
+            map.put("files", files.get());
+            map.put("done", done.get());
+            map.put("uploaded", batchUploaded.get());
+            map.put("failed", batchFailed.get());
+            map.put("retries", batchRetries.get());
+            map.put("totalBytes", total);
+            map.put("bytesDone", processed);
+            map.put("percent", total == 0 ? 100.0 : Math.round(processed * 1000.0 / total) / 10.0);
+            map.put("elapsedMs", elapsed);
+            map.put("throughputMBps", Math.round(sent / 1048.576 / elapsed * 10) / 10.0);
+            // ETA pelo ritmo até agora (ficheiros que falharam contam como processados)
+            if (finishedAt == 0 && processed > 0) {
+                map.put("etaSeconds", (total - processed) * elapsed / processed / 1000);
+            }
+            return map;
+        }
+    }
+
+    private static final class Task {
+        final Batch batch;
+        final File file;
+        final long size;
+        final String objectName;
+        final String contentType;
+        final CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+        int attempts;
+        GcsUploader.Session session; // mantida entre tentativas para retomar o upload
+        Map<String, Object> stats;
+
+        Task(Batch batch, File file, String objectName, String contentType) {
+            this.batch = batch;
+            this.file = file;
+            this.size = file.length();
+            this.objectName = objectName;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * Fila de um bucket: no máximo UPLOAD_BUCKET_CONCURRENCY tarefas no pool.
+     */
+    private static final class Lane {
+        final Queue<Task> pending = new ArrayDeque<>();
+        int running;
+    }
+
+    private void enqueue(Task task) {
+        Lane lane = lanes.computeIfAbsent(Config.GCS_BUCKET_NAME, b -> new Lane());
+        synchronized (lane) {
+            if (lane.running >= Config.UPLOAD_BUCKET_CONCURRENCY) {
+                lane.pending.add(task);
+                return;
+            }
+            lane.running++;
+        }
+        pool.execute(() -> run(lane, task));
+    }
+
+    private void run(Lane lane, Task task) {
+        try {
+            attempt(task);
+        } finally {
+            Task next;
+            synchronized (lane) {
+                next = lane.pending.poll();
+                if (next == null) lane.running--;
+            }
+            if (next != null) {
+                Task n = next;
+                pool.execute(() -> run(lane, n));
+            }
+        }
+    }
+
+    private void attempt(Task task) {
+        task.attempts++;
+        try {
+            if (task.session == null) {
+                task.session = GcsUploader.getInstance().newSession(task.file, task.objectName, task.contentType);
+            }
+            task.stats = task.session.run();
+            task.batch.transferredBytes.addAndGet(task.size);
+            bytes.add(task.size);
+            task.batch.completed(task, "uploaded", null);
+        } catch (Exception e) {
+            if (task.attempts < Config.UPLOAD_MAX_ATTEMPTS && isRetryable(e)) {
+                long delay = backoffMs(task.attempts);
+                retries.increment();
+                task.batch.batchRetries.incrementAndGet();
+                System.err.println("Upload of " + task.objectName + " failed (attempt " + task.attempts
+                        + "), retrying in " + delay + " ms: " + e.getMessage());
+                retryTimer.schedule(() -> enqueue(task), delay, TimeUnit.MILLISECONDS);
+            } else {
+                System.err.println("Upload of " + task.objectName + " failed: " + e.getMessage());
+                task.batch.completed(task, "failed", e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof FileNotFoundException || e instanceof NoSuchFileException) return false;
+        if (e instanceof StorageException se) {
+            int code = se.getCode();
+            return se.isRetryable() || code == 0 || code == 408 || code == 429 || code >= 500;
+        }
+        return e instanceof IOException;
+    }
+
+    private synchronized void finish(Batch batch) {
+        if (batch.finishedAt > 0) return;
+        batch.finishedAt = System.currentTimeMillis();
+        active.remove(batch.id);
+        synchronized (finished) {
+            if (finished.size() >= RECENT_BATCHES) finished.removeFirst();
+            finished.addLast(batch);
+        }
+    }
+
+    /**
+     * Jobs em curso e os últimos concluídos (mais recentes primeiro).
+     */
+    public List<Map<String, Object>> getBatches() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Batch b : active.values()) list.add(b.toMap());
+        synchronized (finished) {
+            Iterator<Batch> it = finished.descendingIterator();
+            while (it.hasNext()) list.add(it.next().toMap());
+        }
+        return list;
+    }
+
+    /**
+     * Métricas sem criar o pool.
+     */
+    public static Map<String, Object> getStatsIfStarted() {
+        UploadScheduler instance = INSTANCE;
+        return instance != null ? instance.getStats() : Map.of("started", false);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", Config.UPLOAD_THREADS);
+        stats.put("bucketConcurrency", Config.UPLOAD_BUCKET_CONCURRENCY);
+        Map<String, Object> queued = new LinkedHashMap<>();
+        lanes.forEach((bucket, lane) -> {
+            synchronized (lane) {
+                queued.put(bucket, Map.of("running", lane.running, "pending", lane.pending.size()));
+            }
+        });
+        stats.put("buckets", queued);
+        stats.put("activeBatches", active.size());
+        stats.put("tasks", tasks.sum());
+        stats.put("uploaded", uploaded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("retries", retries.sum());
+        stats.put("bytes", bytes.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,23 @@
+package org.netflixpp.util;
+
+/**
+ * Dados de um ID token já verificado (imutável, seguro para guardar em cache).
+ */
+public final class VerifiedToken {
+    private final String uid;
+    private final String email;
+    private final String name;
+    private final long expiresAtMillis; // claim "exp"
+
+    public VerifiedToken(String uid, String email, String name, long expiresAtMillis) {
+        this.uid = uid;
+        this.email = email;
+        this.name = name;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public String getUid() { return uid; }
+    public String getEmail() { return email; }
+    public String getName() { return name; }
+    public long getExpiresAtMillis() { return expiresAtMillis; }
+}
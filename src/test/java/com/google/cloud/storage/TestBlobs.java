@@ -0,0 +1,18 @@
+package com.google.cloud.storage;
+
+/**
+ * Blobs "listados" para os testes: o construtor de Blob e setSize são package-private no SDK.
+ */
+public final class TestBlobs {
+
+    private TestBlobs() {
+    }
+
+    public static Blob blob(Storage storage, String bucket, String name, long size, String crc32c, String md5) {
+        BlobInfo.BuilderImpl info = new BlobInfo.BuilderImpl(BlobId.of(bucket, name));
+        info.setSize(size);
+        info.setCrc32c(crc32c);
+        info.setMd5(md5);
+        return new Blob(storage, info);
+    }
+}
@@ -0,0 +1,110 @@
+package org.netflixpp.config;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    // Driver JDBC em memória: cada conexão só sabe se está fechada e o autocommit
+    static final class FakeDriver implements Driver {
+        final AtomicInteger opened = new AtomicInteger();
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) return null;
+            opened.incrementAndGet();
+            boolean[] closed = {false};
+            boolean[] autoCommit = {true};
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (p, m, args) -> switch (m.getName()) {
+                        case "close" -> { closed[0] = true; yield null; }
+                        case "isClosed" -> closed[0];
+                        case "isValid" -> !closed[0];
+                        case "getAutoCommit" -> autoCommit[0];
+                        case "setAutoCommit" -> { autoCommit[0] = (Boolean) args[0]; yield null; }
+                        case "equals" -> p == args[0];
+                        case "hashCode" -> System.identityHashCode(p);
+                        case "toString" -> "FakeConnection";
+                        default -> null;
+                    });
+        }
+
+        @Override public boolean acceptsURL(String url) { return url.startsWith("jdbc:fakepool:"); }
+        @Override public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) { return new DriverPropertyInfo[0]; }
+        @Override public int getMajorVersion() { return 1; }
+        @Override public int getMinorVersion() { return 0; }
+        @Override public boolean jdbcCompliant() { return false; }
+        @Override public Logger getParentLogger() { return Logger.getGlobal(); }
+    }
+
+    private static final FakeDriver DRIVER = new FakeDriver();
+
+    private ConnectionPool pool;
+
+    @BeforeAll
+    static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(DRIVER);
+    }
+
+    @AfterAll
+    static void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(DRIVER);
+    }
+
+    @BeforeEach
+    void setUp() {
+        pool = new ConnectionPool("jdbc:fakepool:test", "u", "p", 0, 1, 60_000, 200, 0, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void physicalConnectionIsReused() throws SQLException {
+        int before = DRIVER.opened.get();
+        pool.borrow().close();
+        pool.borrow().close();
+        assertEquals(1, DRIVER.opened.get() - before);
+    }
+
+    @Test
+    void staleHandleStaysClosedAfterReborrow() throws SQLException {
+        Connection first = pool.borrow();
+        first.close();
+
+        Connection second = pool.borrow();
+        assertNotSame(first, second);
+        assertTrue(first.isClosed());
+        assertFalse(second.isClosed());
+        assertThrows(SQLException.class, () -> first.setAutoCommit(false));
+
+        // Um close() atrasado do dono anterior não pode devolver a conexão do segundo
+        first.close();
+        assertFalse(second.isClosed());
+        assertThrows(SQLTransientConnectionException.class, pool::borrow);
+
+        second.close();
+        pool.borrow().close();
+    }
+
+    @Test
+    void borrowTimesOutWhenPoolIsExhausted() throws SQLException {
+        Connection held = pool.borrow();
+        assertThrows(SQLTransientConnectionException.class, pool::borrow);
+        held.close();
+        pool.borrow().close();
+    }
+}
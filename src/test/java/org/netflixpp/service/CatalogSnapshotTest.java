@@ -0,0 +1,79 @@
+package org.netflixpp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotTest {
+
+    private static final String[] CATEGORIES = {"Action", "action", "Drama", "Comedy", null};
+    private static final String[] GENRES = {"Sci-Fi", "sci-fi", "Horror", null};
+
+    private static Map<String, Object> movie(Random rnd, int id) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("id", id);
+        m.put("title", rnd.nextInt(10) == 0 ? null : "Title " + (char) ('a' + rnd.nextInt(5)));
+        m.put("category", CATEGORIES[rnd.nextInt(CATEGORIES.length)]);
+        m.put("genre", GENRES[rnd.nextInt(GENRES.length)]);
+        m.put("year", rnd.nextInt(6) == 0 ? null : 2000 + rnd.nextInt(4));
+        // Datas repetidas para exercitar o desempate por id
+        m.put("createdAt", rnd.nextInt(8) == 0 ? null : new Timestamp(1_000L * rnd.nextInt(20)));
+        return m;
+    }
+
+    private static void assertSameAs(CatalogCache.Snapshot expected, CatalogCache.Snapshot actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getNewestFirst(), actual.getNewestFirst());
+        assertEquals(expected.getCategories(), actual.getCategories());
+        assertEquals(expected.getGenres(), actual.getGenres());
+        for (String c : CATEGORIES) {
+            if (c != null) assertEquals(expected.getByCategory(c), actual.getByCategory(c), "category " + c);
+        }
+        for (String g : GENRES) {
+            if (g != null) assertEquals(expected.getByGenre(g), actual.getByGenre(g), "genre " + g);
+        }
+        for (int year = 2000; year < 2004; year++) {
+            assertEquals(expected.getByYear(year), actual.getByYear(year), "year " + year);
+        }
+    }
+
+    @Test
+    void patchesMatchAFullRebuild() {
+        Random rnd = new Random(42);
+        Map<Integer, Map<String, Object>> rows = new HashMap<>();
+        for (int id = 1; id <= 50; id++) rows.put(id, movie(rnd, id));
+
+        long version = 1;
+        CatalogCache.Snapshot patched = new CatalogCache.Snapshot(rows.values(), version);
+        for (int i = 0; i < 500; i++) {
+            int id = 1 + rnd.nextInt(70);
+            if (rnd.nextInt(4) == 0) {
+                rows.remove(id);
+                patched = patched.without(id, ++version);
+            } else {
+                Map<String, Object> row = movie(rnd, id);
+                rows.put(id, row);
+                patched = patched.with(row, ++version);
+            }
+            assertSameAs(new CatalogCache.Snapshot(rows.values(), version), patched);
+            assertEquals(version, patched.getVersion());
+        }
+    }
+
+    @Test
+    void emptyGroupsDisappearAfterTheLastMovieLeaves() {
+        Random rnd = new Random(7);
+        Map<String, Object> row = movie(rnd, 1);
+        row.put("category", "Western");
+        CatalogCache.Snapshot s = new CatalogCache.Snapshot(List.of(row), 1);
+        assertEquals(List.of("Western"), s.getCategories());
+
+        CatalogCache.Snapshot after = s.without(1, 2);
+        assertTrue(after.getCategories().isEmpty());
+        assertTrue(after.getByCategory("western").isEmpty());
+        assertEquals(1, s.size(), "o snapshot anterior não muda");
+    }
+}
@@ -0,0 +1,74 @@
+package org.netflixpp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCacheTest {
+
+    private final UserCache cache = UserCache.getInstance();
+
+    private static Map<String, Object> user(int id, String username, String role) {
+        Map<String, Object> user = new HashMap<>();
+        user.put("id", id);
+        user.put("username", username);
+        user.put("role", role);
+        return user;
+    }
+
+    @Test
+    void putStoresTheRowWhenNothingWasInvalidated() {
+        long generation = cache.generation();
+        cache.put("uid-fresh", user(101, "fresh", "user"), generation);
+
+        Map<String, Object> cached = cache.get("uid-fresh");
+        assertNotNull(cached);
+        assertEquals("user", cached.get("role"));
+    }
+
+    @Test
+    void rowReadBeforeAnInvalidationIsNotCached() throws Exception {
+        CountDownLatch selected = new CountDownLatch(1);
+        CountDownLatch demoted = new CountDownLatch(1);
+
+        // Pedido autenticado: lê a linha (ainda admin) e só depois a guarda
+        Thread lookup = new Thread(() -> {
+            long generation = cache.generation();
+            Map<String, Object> row = user(202, "demoted", "admin");
+            selected.countDown();
+            try {
+                assertTrue(demoted.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cache.put("uid-demoted", row, generation);
+        });
+        lookup.start();
+
+        // Entretanto um admin retira-lhe a role e invalida a entrada
+        assertTrue(selected.await(5, TimeUnit.SECONDS));
+        cache.invalidateUserId(202);
+        demoted.countDown();
+        lookup.join(5_000);
+
+        assertNull(cache.get("uid-demoted"), "a linha anterior à invalidação não pode ficar em cache");
+
+        // A leitura seguinte (depois da invalidação) volta a ser guardada
+        long generation = cache.generation();
+        cache.put("uid-demoted", user(202, "demoted", "user"), generation);
+        assertEquals("user", cache.get("uid-demoted").get("role"));
+    }
+
+    @Test
+    void invalidateAllAlsoDropsInFlightRows() {
+        long generation = cache.generation();
+        cache.invalidateAll();
+        cache.put("uid-all", user(303, "all", "admin"), generation);
+        assertNull(cache.get("uid-all"));
+    }
+}
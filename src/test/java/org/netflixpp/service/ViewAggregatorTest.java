@@ -0,0 +1,255 @@
+package org.netflixpp.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ViewAggregatorTest {
+
+    /**
+     * BD em memória com só o que o flush usa: watch_history com a FK para movies e o total
+     * movies.views. Escritas com autocommit desligado só ficam visíveis no commit.
+     * Aceita os URLs jdbc:mariadb: do DbConfig (o driver real é retirado durante o teste).
+     */
+    static final class FakeDb implements Driver {
+        final Set<Integer> movies = new HashSet<>();
+        final Map<Integer, Long> movieViews = new HashMap<>(); // movies.views
+        final Map<List<Integer>, Long> watchHistory = new HashMap<>(); // [user, movie] -> views
+        volatile boolean unavailable; // falha transitória (ligação perdida)
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) return null;
+            List<Runnable> uncommitted = new ArrayList<>();
+            boolean[] autoCommit = {true};
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (p, m, args) -> switch (m.getName()) {
+                        case "prepareStatement" -> statement((String) args[0], write -> {
+                            if (autoCommit[0]) apply(List.of(write));
+                            else uncommitted.add(write);
+                        });
+                        case "isValid" -> true;
+                        case "getAutoCommit" -> autoCommit[0];
+                        case "setAutoCommit" -> {
+                            autoCommit[0] = (Boolean) args[0];
+                            yield null;
+                        }
+                        case "commit" -> {
+                            apply(uncommitted);
+                            uncommitted.clear();
+                            yield null;
+                        }
+                        case "rollback" -> {
+                            uncommitted.clear();
+                            yield null;
+                        }
+                        case "equals" -> p == args[0];
+                        case "hashCode" -> System.identityHashCode(p);
+                        case "toString" -> "FakeDbConnection";
+                        default -> defaultValue(m);
+                    });
+        }
+
+        private PreparedStatement statement(String sql, Consumer<Runnable> write) {
+            List<Object> params = new ArrayList<>();
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (p, m, args) -> switch (m.getName()) {
+                        case "setInt", "setLong" -> {
+                            int index = (Integer) args[0];
+                            while (params.size() < index) params.add(null);
+                            params.set(index - 1, args[1]);
+                            yield null;
+                        }
+                        case "executeUpdate" -> executeUpdate(sql, params, write);
+                        case "executeQuery" -> throw new SQLException("Not supported by FakeDb: " + sql);
+                        default -> defaultValue(m);
+                    });
+        }
+
+        private synchronized int executeUpdate(String sql, List<Object> params,
+                                               Consumer<Runnable> write) throws SQLException {
+            if (unavailable) throw new SQLException("Connection lost", "08S01");
+            if (sql.startsWith("UPDATE movies SET views = views + CASE id")) {
+                return addMovieViews(params, write);
+            }
+            if (sql.startsWith("INSERT INTO watch_history")) {
+                return insertViews(params, write);
+            }
+            throw new SQLException("Not supported by FakeDb: " + sql);
+        }
+
+        // (id, delta)... seguidos dos ids do WHERE id IN; filmes inexistentes são ignorados
+        private int addMovieViews(List<Object> params, Consumer<Runnable> write) {
+            int movieCount = params.size() / 3;
+            Map<Integer, Long> deltas = new HashMap<>();
+            for (int i = 0; i < 2 * movieCount; i += 2) {
+                int movieId = (Integer) params.get(i);
+                if (movies.contains(movieId)) deltas.put(movieId, ((Number) params.get(i + 1)).longValue());
+            }
+            write.accept(() -> deltas.forEach((id, delta) -> movieViews.merge(id, delta, Long::sum)));
+            return deltas.size();
+        }
+
+        // INSERT multi-linha atómico: uma linha inválida falha o statement inteiro
+        private int insertViews(List<Object> params, Consumer<Runnable> write)
+                throws SQLException {
+            for (int i = 0; i < params.size(); i += 3) {
+                if (!movies.contains((Integer) params.get(i + 1))) {
+                    throw new SQLIntegrityConstraintViolationException(
+                            "Cannot add or update a child row: a foreign key constraint fails", "23000", 1452);
+                }
+            }
+            List<Object> rows = new ArrayList<>(params);
+            write.accept(() -> {
+                for (int i = 0; i < rows.size(); i += 3) {
+                    List<Integer> key = List.of((Integer) rows.get(i), (Integer) rows.get(i + 1));
+                    watchHistory.merge(key, ((Number) rows.get(i + 2)).longValue(), Long::sum);
+                }
+            });
+            return params.size() / 3;
+        }
+
+        private synchronized void apply(List<Runnable> writes) {
+            writes.forEach(Runnable::run);
+        }
+
+        synchronized long movieViews(int movieId) {
+            return movieViews.getOrDefault(movieId, 0L);
+        }
+
+        synchronized Long views(int userId, int movieId) {
+            return watchHistory.get(List.of(userId, movieId));
+        }
+
+        private static Object defaultValue(Method m) {
+            Class<?> type = m.getReturnType();
+            if (type == boolean.class) return false;
+            if (type == int.class) return 0;
+            if (type == long.class) return 0L;
+            return null;
+        }
+
+        @Override public boolean acceptsURL(String url) { return url.startsWith("jdbc:mariadb:"); }
+        @Override public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) { return new DriverPropertyInfo[0]; }
+        @Override public int getMajorVersion() { return 1; }
+        @Override public int getMinorVersion() { return 0; }
+        @Override public boolean jdbcCompliant() { return false; }
+        @Override public Logger getParentLogger() { return Logger.getGlobal(); }
+    }
+
+    private static final FakeDb DB = new FakeDb();
+    private static final List<Driver> REAL_DRIVERS = new ArrayList<>();
+
+    private final ViewAggregator aggregator = ViewAggregator.getInstance();
+
+    @BeforeAll
+    static void installFakeDb() throws Exception {
+        // Carrega o DbConfig (regista o driver MariaDB) e troca o driver pelo FakeDb
+        Class.forName("org.netflixpp.config.DbConfig");
+        for (Driver d : Collections.list(DriverManager.getDrivers())) {
+            if (d.getClass().getName().startsWith("org.mariadb")) {
+                DriverManager.deregisterDriver(d);
+                REAL_DRIVERS.add(d);
+            }
+        }
+        DriverManager.registerDriver(DB);
+    }
+
+    @AfterAll
+    static void restoreDrivers() throws SQLException {
+        DriverManager.deregisterDriver(DB);
+        for (Driver d : REAL_DRIVERS) DriverManager.registerDriver(d);
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DB.unavailable = false;
+        DB.movies.addAll(List.of(1, 2, 3));
+        aggregator.flush(); // buffer vazio entre testes
+    }
+
+    private long rejected() {
+        return ((Number) aggregator.getStats().get("rejected")).longValue();
+    }
+
+    @Test
+    void unknownMovieDoesNotBlockValidViews() throws SQLException {
+        long rejectedBefore = rejected();
+        long movie1Before = DB.movieViews(1), movie2Before = DB.movieViews(2);
+        assertTrue(aggregator.record(1, 10));
+        assertTrue(aggregator.record(1, 10));
+        assertTrue(aggregator.record(999_999, 10)); // filme inexistente entre pares válidos
+        assertTrue(aggregator.record(2, 11));
+
+        aggregator.flush();
+
+        assertEquals(2L, DB.views(10, 1));
+        assertEquals(1L, DB.views(11, 2));
+        assertNull(DB.views(10, 999_999));
+        assertEquals(2, DB.movieViews(1) - movie1Before);
+        assertEquals(1, DB.movieViews(2) - movie2Before);
+        assertEquals(0, DB.movieViews(999_999));
+        assertEquals(1, rejected() - rejectedBefore);
+        assertEquals(0, aggregator.getStats().get("pendingKeys"));
+
+        // O par rejeitado não volta ao buffer: o flush seguinte escreve normalmente
+        assertTrue(aggregator.record(1, 10));
+        aggregator.flush();
+        assertEquals(3L, DB.views(10, 1));
+        assertEquals(3, DB.movieViews(1) - movie1Before);
+    }
+
+    @Test
+    void movieDeletedBeforeTheFlushIsDropped() throws SQLException {
+        DB.movies.add(4);
+        assertTrue(aggregator.record(4, 20));
+        assertTrue(aggregator.record(3, 20));
+        DB.movies.remove(4);
+
+        aggregator.flush();
+
+        assertNull(DB.views(20, 4));
+        assertEquals(1L, DB.views(20, 3));
+        assertEquals(0, DB.movieViews(4));
+    }
+
+    @Test
+    void transientFailureKeepsTheViewsForTheNextFlush() throws SQLException {
+        long movieBefore = DB.movieViews(3);
+        DB.unavailable = true;
+        assertTrue(aggregator.record(3, 30));
+        assertThrows(SQLException.class, aggregator::flush);
+        assertNull(DB.views(30, 3));
+        assertEquals(movieBefore, DB.movieViews(3));
+
+        DB.unavailable = false;
+        aggregator.flush();
+        assertEquals(1L, DB.views(30, 3));
+        assertEquals(1, DB.movieViews(3) - movieBefore);
+    }
+
+    @Test
+    void rejectedBatchDoesNotCountTheMovieViewsTwice() throws SQLException {
+        // O UPDATE de movies.views do lote falhado é desfeito com o INSERT; o retry linha a
+        // linha volta a somar só as linhas aceites
+        long movie1Before = DB.movieViews(1), movie3Before = DB.movieViews(3);
+        assertTrue(aggregator.record(1, 40));
+        assertTrue(aggregator.record(3, 40));
+        assertTrue(aggregator.record(999_998, 40));
+
+        aggregator.flush();
+
+        assertEquals(1, DB.movieViews(1) - movie1Before);
+        assertEquals(1, DB.movieViews(3) - movie3Before);
+    }
+}
@@ -0,0 +1,193 @@
+package org.netflixpp.util;
+
+import com.google.api.gax.paging.Page;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import com.google.cloud.storage.StorageOptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * Storage em memória para os testes de upload: só implementa {@code writer} (sessões
+ * resumíveis com capture/restore), {@code list} e {@code getOptions}; o resto lança
+ * UnsupportedOperationException.
+ *
+ * Como o canal do SDK, cada sessão guarda os bytes recebidos em buffer e envia-os num pedido
+ * quando o buffer chega a chunkSize (todos os bytes em buffer, não alinhados ao chunk).
+ * {@link #failRequests} decide que pedidos falham com 503 (pelo número global do pedido) e
+ * {@link #failTimes} faz os primeiros N pedidos de um objeto falharem.
+ */
+final class FakeStorage {
+
+    private static final StorageOptions OPTIONS = StorageOptions.newBuilder()
+            .setProjectId("netflixpp-test")
+            .setCredentials(NoCredentials.getInstance())
+            .build();
+
+    /** Objetos finalizados: nome -> conteúdo. */
+    final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    /** Blobs devolvidos por list(), por ordem, em páginas de pageSize. */
+    final List<Blob> listing = new ArrayList<>();
+    int pageSize = Integer.MAX_VALUE;
+
+    final AtomicInteger requests = new AtomicInteger();
+    final AtomicInteger sessions = new AtomicInteger();
+    final AtomicInteger restores = new AtomicInteger();
+    final AtomicInteger concurrent = new AtomicInteger();
+    final AtomicInteger maxConcurrent = new AtomicInteger();
+    final Map<String, Integer> failTimes = new ConcurrentHashMap<>();
+    volatile IntPredicate failRequests = n -> false;
+    volatile long requestDelayMs;
+
+    Storage storage() {
+        return (Storage) Proxy.newProxyInstance(Storage.class.getClassLoader(), new Class<?>[]{Storage.class},
+                (p, m, args) -> switch (m.getName()) {
+                    case "writer" -> newSession((BlobInfo) args[0]);
+                    case "list" -> page(0);
+                    case "getOptions" -> OPTIONS;
+                    case "equals" -> p == args[0];
+                    case "hashCode" -> System.identityHashCode(p);
+                    case "toString" -> "FakeStorage";
+                    default -> throw new UnsupportedOperationException(m.getName());
+                });
+    }
+
+    private WriteChannel newSession(BlobInfo info) {
+        sessions.incrementAndGet();
+        started();
+        return new Channel(new Session(info.getName()), 0, new byte[0]);
+    }
+
+    // Canais em uso (abertos ou restaurados e ainda sem falhar nem terminar)
+    private void started() {
+        int now = concurrent.incrementAndGet();
+        maxConcurrent.accumulateAndGet(now, Math::max);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Page<Blob> page(int from) {
+        int to = (int) Math.min(listing.size(), (long) from + pageSize);
+        List<Blob> values = listing.subList(from, to);
+        return (Page<Blob>) Proxy.newProxyInstance(Page.class.getClassLoader(), new Class<?>[]{Page.class},
+                (p, m, args) -> switch (m.getName()) {
+                    case "getValues", "iterateAll" -> values;
+                    case "hasNextPage" -> to < listing.size();
+                    case "getNextPage" -> to < listing.size() ? page(to) : null;
+                    case "getNextPageToken" -> to < listing.size() ? String.valueOf(to) : "";
+                    default -> throw new UnsupportedOperationException(m.getName());
+                });
+    }
+
+    /** Bytes guardados "no servidor" para uma sessão resumível. */
+    private final class Session {
+        final String name;
+        final ByteArrayOutputStream committed = new ByteArrayOutputStream();
+
+        Session(String name) {
+            this.name = name;
+        }
+
+        void put(long offset, byte[] data, boolean last) throws StorageException {
+            if (requestDelayMs > 0) {
+                try {
+                    Thread.sleep(requestDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this) {
+                putNow(offset, data, last);
+            }
+        }
+
+        private void putNow(long offset, byte[] data, boolean last) throws StorageException {
+            int n = requests.incrementAndGet();
+            boolean fail = failRequests.test(n);
+            // Um objeto só tem uma sessão ativa de cada vez: get + merge sem corrida
+            if (failTimes.getOrDefault(name, 0) > 0) {
+                failTimes.merge(name, -1, Integer::sum);
+                fail = true;
+            }
+            if (fail) {
+                concurrent.decrementAndGet();
+                throw new StorageException(503, "injected failure on request " + n);
+            }
+            // Como no GCS, bytes já persistidos podem ser reenviados (são ignorados), buracos não
+            long skip = committed.size() - offset;
+            if (skip < 0 || skip > data.length) {
+                throw new StorageException(400, "offset " + offset + " does not match committed " + committed.size());
+            }
+            committed.write(data, (int) skip, data.length - (int) skip);
+            if (last) {
+                objects.put(name, committed.toByteArray());
+                concurrent.decrementAndGet();
+            }
+        }
+    }
+
+    private final class Channel implements WriteChannel {
+        final Session session;
+        long position;        // bytes confirmados pelo "servidor"
+        byte[] buffer;        // bytes em buffer por enviar
+        int chunkSize = 2 * 1024 * 1024;
+        boolean open = true;
+
+        Channel(Session session, long position, byte[] buffer) {
+            this.session = session;
+            this.position = position;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int n = src.remaining();
+            byte[] grown = Arrays.copyOf(buffer, buffer.length + n);
+            src.get(grown, buffer.length, n);
+            buffer = grown;
+            if (buffer.length >= chunkSize) flush(false);
+            return n;
+        }
+
+        private void flush(boolean last) {
+            session.put(position, buffer, last);
+            position += buffer.length;
+            buffer = new byte[0];
+        }
+
+        @Override
+        public void close() {
+            if (!open) return;
+            flush(true);
+            open = false;
+        }
+
+        @Override public boolean isOpen() { return open; }
+        @Override public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+
+        @Override
+        public RestorableState<WriteChannel> capture() {
+            long pos = position;
+            byte[] snapshot = buffer.clone();
+            int size = chunkSize;
+            return () -> {
+                restores.incrementAndGet();
+                started();
+                Channel restored = new Channel(session, pos, snapshot.clone());
+                restored.chunkSize = size;
+                return restored;
+            };
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.netflixpp.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FirebaseUtilTest {
+
+    private StubTokenVerifier stub;
+
+    @BeforeEach
+    void setUp() {
+        stub = new StubTokenVerifier();
+        FirebaseUtil.setVerifier(stub);
+    }
+
+    @AfterEach
+    void tearDown() {
+        FirebaseUtil.setVerifier(null);
+    }
+
+    @Test
+    void verifiedTokenIsServedFromCache() {
+        VerifiedToken first = FirebaseUtil.verifyIdToken("Bearer stub:u1:a@b.c:Ana");
+        VerifiedToken second = FirebaseUtil.verifyIdToken("Bearer stub:u1:a@b.c:Ana");
+
+        assertNotNull(first);
+        assertEquals("u1", first.getUid());
+        assertEquals("a@b.c", first.getEmail());
+        assertSame(first, second);
+        assertEquals(1, stub.calls.get());
+    }
+
+    @Test
+    void invalidTokenIsCachedNegatively() {
+        assertNull(FirebaseUtil.verifyIdToken("Bearer not-a-stub"));
+        assertNull(FirebaseUtil.verifyIdToken("Bearer not-a-stub"));
+        assertEquals(1, stub.calls.get());
+    }
+
+    @Test
+    void missingBearerPrefixIsRejectedWithoutVerifying() {
+        assertNull(FirebaseUtil.verifyIdToken("stub:u1"));
+        assertNull(FirebaseUtil.verifyIdToken(null));
+        assertEquals(0, stub.calls.get());
+    }
+
+    @Test
+    void noVerifierMeansNoAuthentication() {
+        FirebaseUtil.setVerifier(null);
+        assertNull(FirebaseUtil.verifyIdToken("Bearer stub:u1"));
+    }
+}
@@ -0,0 +1,101 @@
+package org.netflixpp.util;
+
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.TestBlobs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.netflixpp.config.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GcsSyncPlanTest {
+
+    private static final String PREFIX = "movies/movie_7/1080p/hls/";
+
+    @TempDir
+    Path dir;
+
+    private FakeStorage fake;
+    private Storage storage;
+
+    @BeforeEach
+    void setUp() {
+        fake = new FakeStorage();
+        fake.pageSize = 2; // força várias páginas
+        storage = fake.storage();
+        GcsClient.setStorage(storage);
+    }
+
+    private File file(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8)).toFile();
+    }
+
+    private void remote(String name, long size, String crc32c, String md5) {
+        fake.listing.add(TestBlobs.blob(storage, Config.GCS_BUCKET_NAME, PREFIX + name, size, crc32c, md5));
+    }
+
+    private GcsSyncPlan.Item item(File f) {
+        return new GcsSyncPlan.Item(f, PREFIX + f.getName(), "video/mp2t");
+    }
+
+    @Test
+    void classifiesEveryFileAgainstTheListing() throws IOException {
+        File same = file("seg0.ts", "same content");
+        File resized = file("seg1.ts", "grew since last upload");
+        File edited = file("seg2.ts", "edited");
+        File editedMd5 = file("seg3.ts", "edited too");
+        File missing = file("seg4.ts", "new");
+
+        remote("seg0.ts", same.length(), HashUtil.crc32cBase64(same.toPath()), null);
+        remote("seg1.ts", 3, "AAAAAA==", null);
+        remote("seg2.ts", edited.length(), "AAAAAA==", null);
+        remote("seg3.ts", editedMd5.length(), null, "1B2M2Y8AsgTpgAmY7PhCfg==");
+        remote("old.ts", 10, "AAAAAA==", null);
+
+        List<GcsSyncPlan.Item> items = List.of(item(same), item(resized), item(edited), item(editedMd5), item(missing));
+        GcsSyncPlan plan = GcsSyncPlan.build(List.of(PREFIX), items);
+
+        assertEquals(List.of("unchanged", "changed:size", "changed:crc32c", "changed:md5", "missing"),
+                items.stream().map(GcsSyncPlan.Item::getReason).toList());
+        assertEquals(List.of("skip", "upload", "upload", "upload", "upload"),
+                items.stream().map(GcsSyncPlan.Item::getAction).toList());
+
+        Map<String, Object> summary = plan.getSummary();
+        assertEquals(3, summary.get("listPages"));
+        assertEquals(5L, summary.get("listedObjects"));
+        assertEquals(4, summary.get("toUpload"));
+        assertEquals(1, summary.get("missing"));
+        assertEquals(3, summary.get("changed"));
+        assertEquals(1, summary.get("remoteOnly"));
+        assertEquals(List.of(PREFIX + "old.ts"), plan.toMap().get("remoteOnlyObjects"));
+    }
+
+    @Test
+    void executeUploadsOnlyWhatThePlanMarked() throws IOException {
+        File same = file("a.ts", "a");
+        File missing = file("b.ts", "b");
+        remote("a.ts", same.length(), HashUtil.crc32cBase64(same.toPath()), null);
+
+        GcsSyncPlan plan = GcsSyncPlan.build(List.of(PREFIX), List.of(item(same), item(missing)));
+        List<Map<String, Object>> results = plan.execute(UploadScheduler.getInstance().newBatch("test sync"));
+
+        assertEquals("skipped", results.get(0).get("action"));
+        assertEquals("uploaded", results.get(1).get("action"));
+        assertEquals("missing", results.get(1).get("reason"));
+        assertEquals(Set.of(PREFIX + "b.ts"), fake.objects.keySet());
+    }
+
+    @Test
+    void nestedPrefixesAreListedOnce() throws IOException {
+        GcsSyncPlan plan = GcsSyncPlan.build(List.of("movies/movie_7/", PREFIX, "movies/movie_8/"), List.of());
+        assertEquals(List.of("movies/movie_7/", "movies/movie_8/"), plan.getSummary().get("prefixes"));
+    }
+}
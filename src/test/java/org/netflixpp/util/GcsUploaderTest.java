@@ -0,0 +1,83 @@
+package org.netflixpp.util;
+
+import com.google.cloud.storage.StorageException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GcsUploaderTest {
+
+    @TempDir
+    Path dir;
+
+    private FakeStorage fake;
+
+    @BeforeEach
+    void setUp() {
+        fake = new FakeStorage();
+        GcsClient.setStorage(fake.storage());
+    }
+
+    private File randomFile(String name, int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return Files.write(dir.resolve(name), data).toFile();
+    }
+
+    @Test
+    void uploadsWholeFileInSeveralRequests() throws IOException {
+        File file = randomFile("a.bin", 9 * 1024 * 1024 + 123);
+
+        Map<String, Object> stats = GcsUploader.getInstance().upload(file, "t/a.bin", null);
+
+        assertArrayEquals(Files.readAllBytes(file.toPath()), fake.objects.get("t/a.bin"));
+        assertEquals(file.length(), stats.get("bytes"));
+        assertEquals(0, stats.get("resumes"));
+        assertTrue(fake.requests.get() > 1);
+    }
+
+    @Test
+    void sessionResumesFromLastCheckpointAfterFailedRequest() throws IOException {
+        File file = randomFile("b.bin", 10 * 1024 * 1024 + 4567);
+        fake.failRequests = n -> n == 3;
+
+        GcsUploader.Session session = GcsUploader.getInstance().newSession(file, "t/b.bin", null);
+        assertThrows(StorageException.class, session::run);
+        assertNull(fake.objects.get("t/b.bin"));
+
+        // A tentativa seguinte (feita pelo UploadScheduler) retoma a mesma sessão
+        Map<String, Object> stats = session.run();
+
+        assertArrayEquals(Files.readAllBytes(file.toPath()), fake.objects.get("t/b.bin"));
+        assertEquals(1, stats.get("resumes"));
+        assertEquals(1, fake.sessions.get());
+        assertEquals(1, fake.restores.get());
+        // Só se reenvia desde o último checkpoint, não o ficheiro todo
+        assertTrue((long) stats.get("resentBytes") < file.length() / 2);
+    }
+
+    @Test
+    void uploadIsSingleAttempt() throws IOException {
+        File file = randomFile("c.bin", 1024);
+        fake.failRequests = n -> n == 1;
+
+        assertThrows(StorageException.class, () -> GcsUploader.getInstance().upload(file, "t/c.bin", null));
+        assertEquals(1, fake.requests.get());
+    }
+
+    @Test
+    void emptyFileIsUploaded() throws IOException {
+        File file = randomFile("empty.bin", 0);
+        GcsUploader.getInstance().upload(file, "t/empty.bin", null);
+        assertArrayEquals(new byte[0], fake.objects.get("t/empty.bin"));
+    }
+}
@@ -0,0 +1,36 @@
+package org.netflixpp.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashUtilTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void crc32cMatchesCheckValueInGcsFormat() throws IOException {
+        // Valor de verificação do CRC32C para "123456789": 0xE3069283, big-endian em base64
+        Path file = Files.write(dir.resolve("check.txt"), "123456789".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("4waSgw==", HashUtil.crc32cBase64(file));
+    }
+
+    @Test
+    void crc32cOfEmptyFile() throws IOException {
+        Path file = Files.write(dir.resolve("empty.txt"), new byte[0]);
+        assertEquals("AAAAAA==", HashUtil.crc32cBase64(file));
+    }
+
+    @Test
+    void md5InGcsFormat() throws IOException {
+        Path file = Files.write(dir.resolve("abc.txt"), "abc".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("kAFQmDzST7DWlj99KOF/cg==", HashUtil.md5Base64(file));
+    }
+}
@@ -0,0 +1,34 @@
+package org.netflixpp.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verificador local, sem rede, para os testes (injetado com {@link FirebaseUtil#setVerifier}).
+ *
+ * Aceita tokens no formato {@code stub:<uid>[:<email>[:<name>]]}; qualquer outro
+ * formato é rejeitado. Conta as chamadas para os testes da cache.
+ */
+public class StubTokenVerifier implements TokenVerifier {
+
+    private static final String PREFIX = "stub:";
+    private static final long VALIDITY_MS = 60 * 60 * 1000; // 1h, como os tokens Firebase
+
+    final AtomicInteger calls = new AtomicInteger();
+
+    @Override
+    public VerifiedToken verify(String idToken, boolean checkRevoked) throws InvalidTokenException {
+        calls.incrementAndGet();
+        if (idToken == null || !idToken.startsWith(PREFIX)) {
+            throw new InvalidTokenException("Not a stub token");
+        }
+
+        String[] parts = idToken.substring(PREFIX.length()).split(":", 3);
+        if (parts[0].isBlank()) {
+            throw new InvalidTokenException("Missing uid");
+        }
+
+        String email = parts.length > 1 && !parts[1].isBlank() ? parts[1] : null;
+        String name = parts.length > 2 && !parts[2].isBlank() ? parts[2] : null;
+        return new VerifiedToken(parts[0], email, name, System.currentTimeMillis() + VALIDITY_MS);
+    }
+}
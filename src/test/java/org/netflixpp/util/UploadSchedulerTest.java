@@ -0,0 +1,107 @@
+package org.netflixpp.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.netflixpp.config.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadSchedulerTest {
+
+    @TempDir
+    Path dir;
+
+    private FakeStorage fake;
+
+    @BeforeEach
+    void setUp() {
+        fake = new FakeStorage();
+        fake.requestDelayMs = 5;
+        GcsClient.setStorage(fake.storage());
+    }
+
+    private File randomFile(String name, int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(name.hashCode()).nextBytes(data);
+        return Files.write(dir.resolve(name), data).toFile();
+    }
+
+    @Test
+    void retriesTransientFailuresWithinBucketConcurrency() throws IOException {
+        UploadScheduler.Batch batch = UploadScheduler.getInstance().newBatch("test retries");
+        int files = 4 * Config.UPLOAD_BUCKET_CONCURRENCY;
+        for (int i = 0; i < files; i++) {
+            String object = "sched/retry_" + i + ".bin";
+            if (i % 4 == 0) fake.failTimes.put(object, 1);
+            batch.submit(randomFile("r" + i, 64 * 1024), object, null);
+        }
+
+        List<Map<String, Object>> results = batch.await();
+
+        assertEquals(files, results.size());
+        for (Map<String, Object> r : results) {
+            assertEquals("uploaded", r.get("action"), String.valueOf(r));
+        }
+        assertEquals(files, fake.objects.size());
+        assertEquals(files / 4, batch.toMap().get("retries"));
+        assertTrue(fake.maxConcurrent.get() <= Config.UPLOAD_BUCKET_CONCURRENCY,
+                "max concurrent uploads " + fake.maxConcurrent.get());
+    }
+
+    @Test
+    void retryResumesTheSameSession() throws IOException {
+        File file = randomFile("big", 10 * 1024 * 1024 + 1);
+        fake.failRequests = n -> n == 2;
+
+        UploadScheduler.Batch batch = UploadScheduler.getInstance().newBatch("test resume");
+        batch.submit(file, "sched/big.bin", null);
+        Map<String, Object> result = batch.await().get(0);
+
+        assertEquals("uploaded", result.get("action"));
+        assertEquals(2, result.get("attempts"));
+        assertEquals(1, result.get("resumes"));
+        assertEquals(1, fake.sessions.get());
+        assertArrayEquals(Files.readAllBytes(file.toPath()), fake.objects.get("sched/big.bin"));
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() throws IOException {
+        fake.failTimes.put("sched/bad.bin", Integer.MAX_VALUE);
+
+        UploadScheduler.Batch batch = UploadScheduler.getInstance().newBatch("test give up");
+        batch.submit(randomFile("bad", 1024), "sched/bad.bin", null);
+        Map<String, Object> result = batch.await().get(0);
+
+        assertEquals("failed", result.get("action"));
+        assertEquals(Config.UPLOAD_MAX_ATTEMPTS, result.get("attempts"));
+        // Uma só camada de retry: um pedido por tentativa
+        assertEquals(Config.UPLOAD_MAX_ATTEMPTS, fake.requests.get());
+    }
+
+    @Test
+    void missingFileFailsWithoutRetry() {
+        UploadScheduler.Batch batch = UploadScheduler.getInstance().newBatch("test missing");
+        batch.submit(dir.resolve("nope.bin").toFile(), "sched/nope.bin", null);
+        Map<String, Object> result = batch.await().get(0);
+
+        assertEquals("failed", result.get("action"));
+        assertEquals(1, result.get("attempts"));
+    }
+
+    @Test
+    void backoffStaysWithinCap() {
+        for (int attempt = 1; attempt < 30; attempt++) {
+            long delay = UploadScheduler.backoffMs(attempt);
+            assertTrue(delay >= 0 && delay <= Config.UPLOAD_RETRY_MAX_MS, "attempt " + attempt + ": " + delay);
+        }
+    }
+}